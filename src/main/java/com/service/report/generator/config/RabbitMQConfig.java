@@ -1,16 +1,23 @@
 package com.service.report.generator.config;
 
 import com.service.report.generator.properties.amqp.AMQPConfigProperties;
+import com.service.report.generator.properties.amqp.AMQPListenerProperties;
+import com.service.report.generator.tag.JobPriority;
 import lombok.RequiredArgsConstructor;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 @Configuration
 @RequiredArgsConstructor
@@ -22,6 +29,10 @@ public class RabbitMQConfig {
     public Queue standardQueue() {
         return new Queue(amqpConfiguration.getQueue().getStandard());
     }
+    @Bean("priorityQueue")
+    public Queue priorityQueue() {
+        return new Queue(amqpConfiguration.getQueue().getPriority());
+    }
     @Bean("mailerQueue")
     public Queue mailerQueue() {
         return new Queue(amqpConfiguration.getQueue().getMailer());
@@ -36,6 +47,13 @@ public class RabbitMQConfig {
                 .to(exchange)
                 .with(amqpConfiguration.getRoutingKey().getStandard());
     }
+    @Bean("priorityBinding")
+    public Binding priorityBinding(@Qualifier("priorityQueue") Queue queue, @Qualifier("exchange") TopicExchange exchange) {
+        return BindingBuilder
+                .bind(queue)
+                .to(exchange)
+                .with(amqpConfiguration.getRoutingKey().getPriority());
+    }
     @Bean("mailerBinding")
     Binding mailerBinding(@Qualifier("mailerQueue") Queue queue, @Qualifier("exchange") TopicExchange exchange) {
         return BindingBuilder
@@ -46,6 +64,38 @@ public class RabbitMQConfig {
 
 
 
+    /**
+     * Delayed retries: one queue per lane and failed attempt, holding its jobs for the backoff of that attempt before
+     * dead-lettering them back to the queue of their lane, so a failed priority job is not retried behind the standard
+     * backlog. A queue per attempt keeps every message of a queue on the same TTL, as RabbitMQ only expires messages at
+     * the head of a queue. Jobs failing their last attempt go to the dead-letter queue of their lane.
+     */
+    @Bean("retryDeclarables")
+    public Declarables retryDeclarables(@Qualifier("exchange") TopicExchange exchange) {
+        DirectExchange retryExchange = new DirectExchange(amqpConfiguration.getRetryExchange());
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(retryExchange);
+
+        for (JobPriority lane : JobPriority.values()) {
+            for (int attempt = 1; attempt < amqpConfiguration.getRetryLimit(); attempt++) {
+                Queue retryQueue = QueueBuilder.durable(amqpConfiguration.getRetryQueue(lane, attempt))
+                        .ttl((int) Math.min(Integer.MAX_VALUE, amqpConfiguration.getRetryDelay(attempt)))
+                        .deadLetterExchange(exchange.getName())
+                        .deadLetterRoutingKey(amqpConfiguration.getLaneRoutingKey(lane))
+                        .build();
+                declarables.add(retryQueue);
+                declarables.add(BindingBuilder.bind(retryQueue).to(retryExchange).with(retryQueue.getName()));
+            }
+
+            Queue deadLetterQueue = QueueBuilder.durable(amqpConfiguration.getDeadLetterQueue(lane)).build();
+            declarables.add(deadLetterQueue);
+            declarables.add(BindingBuilder.bind(deadLetterQueue).to(retryExchange).with(deadLetterQueue.getName()));
+        }
+        return new Declarables(declarables);
+    }
+
+
+
     @Bean("exchange")
     public TopicExchange exchange() {
         return new TopicExchange(amqpConfiguration.getExchange());
@@ -59,6 +109,57 @@ public class RabbitMQConfig {
         return new Jackson2JsonMessageConverter();
     }
 
+    /**
+     * Listener containers of the standard queue, which scale between the configured numbers of consumers and may hand
+     * job ids to the listener in batches. Settings not covered here still come from the spring.rabbitmq properties.
+     */
+    @Bean("standardListenerContainerFactory")
+    public SimpleRabbitListenerContainerFactory standardListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Qualifier("converter") MessageConverter converter
+    ) {
+        return createListenerContainerFactory(amqpConfiguration.getListener(), configurer, connectionFactory, converter);
+    }
+
+    /**
+     * Listener containers of the priority queue, whose consumers are never taken by the jobs of the standard queue.
+     */
+    @Bean("priorityListenerContainerFactory")
+    public SimpleRabbitListenerContainerFactory priorityListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Qualifier("converter") MessageConverter converter
+    ) {
+        return createListenerContainerFactory(amqpConfiguration.getPriorityListener(), configurer, connectionFactory, converter);
+    }
+
+    private static SimpleRabbitListenerContainerFactory createListenerContainerFactory(
+            AMQPListenerProperties listener,
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            MessageConverter converter
+    ) {
+        int concurrency = Math.max(1, listener.getConcurrency());
+        int batchSize = Math.max(1, listener.getBatchSize());
+
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setMessageConverter(converter);
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(Math.max(concurrency, listener.getMaxConcurrency()));
+        // A consumer needs at least a whole batch in flight to fill it
+        factory.setPrefetchCount(Math.max(batchSize, listener.getPrefetch()));
+        // The listener always takes a list; a batch size of 1 delivers single job ids
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(listener.getBatchReceiveTimeout().toMillis());
+        return factory;
+    }
+
+
+
     @Bean("template")
     public AmqpTemplate template(ConnectionFactory connectionFactory, @Qualifier("converter") MessageConverter converter) {
         final RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
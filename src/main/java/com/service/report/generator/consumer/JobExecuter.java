@@ -1,18 +1,29 @@
 package com.service.report.generator.consumer;
 
 import com.service.report.generator.entity.JobModel;
-import com.service.report.generator.experimental.ImplProvider;
-import com.service.report.generator.repository.JobRepository;
+import com.service.report.generator.entity.FileDataModel;
+import com.service.report.generator.experimental.ResultProvider;
+import com.service.report.generator.properties.amqp.AMQPConfigProperties;
+import com.service.report.generator.properties.amqp.AMQPListenerProperties;
+import com.service.report.generator.properties.report.ReportConfigProperties;
+import com.service.report.generator.service.JobAdmissionController;
+import com.service.report.generator.service.JobProcessor;
 import com.service.report.generator.service.ReportGeneratorServiceImpl;
 import com.service.report.generator.tag.JobStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @Service
@@ -21,7 +32,12 @@ import org.springframework.transaction.annotation.Transactional;
 public class JobExecuter {
 
     private final ReportGeneratorServiceImpl reportGeneratorService;
-    private final JobRepository jobRepository;
+    private final JobProcessor jobProcessor;
+    private final JobAdmissionController jobAdmissionController;
+    private final AMQPConfigProperties amqpConfigProperties;
+    private final ReportConfigProperties reportConfigProperties;
+    private ExecutorService jobExecutor;
+    private ExecutorService priorityJobExecutor;
 
     private static final String DEFAULT_JOB_LOGGER_MESSAGE = "Executing job ({}) --- {}";
 
@@ -38,41 +54,153 @@ public class JobExecuter {
     }
 
 
-    @RabbitListener(queues = "#{standardQueue.getName()}")
-    @Transactional(isolation = Isolation.SERIALIZABLE, propagation = Propagation.REQUIRED)
-    public void executeStandardJobs(Long jobId) {
+    /**
+     * Sizes the pools running the reports of each lane on this instance: the configured cap, or as many reports as
+     * there are processors and as fit in the heap with the join memory budget of each.
+     */
+    @PostConstruct
+    public void initialize() {
+        jobExecutor = createJobExecutor("standard", amqpConfigProperties.getListener());
+        priorityJobExecutor = createJobExecutor("priority", amqpConfigProperties.getPriorityListener());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        priorityJobExecutor.shutdownNow();
+    }
 
-        executor(jobId, (job) ->{
-            log.info("Started job("+job.getJobUid()+") execution");
-            String outputFileName = reportGeneratorService.executeReportGeneration(job);
-            log.info("Job("+job.getJobUid()+") executed successfully.");
+    private ExecutorService createJobExecutor(String lane, AMQPListenerProperties listener) {
+        int maxConcurrentJobs = listener.getMaxConcurrentJobs();
+        if (0 >= maxConcurrentJobs) {
+            long jobMemory = Math.max(1, reportConfigProperties.getJoin().getMemoryBudget().toBytes());
+            long fittingJobs = Runtime.getRuntime().maxMemory() / jobMemory;
+            maxConcurrentJobs = (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), fittingJobs));
+        }
+
+        AtomicInteger worker = new AtomicInteger();
+        log.info("Executing up to {} {} report(s) at once.", maxConcurrentJobs, lane);
+        return Executors.newFixedThreadPool(maxConcurrentJobs, runnable -> {
+            Thread thread = new Thread(runnable, "report-" + lane + "-" + worker.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         });
+    }
 
-        // TODO
+
+
+    /**
+     * Executes a batch of delivered jobs on the report pool, which caps the reports running at once on this instance
+     * whatever the number of consumers. The batch is acknowledged once all its jobs are done.
+     */
+    @RabbitListener(queues = "#{standardQueue.getName()}", containerFactory = "standardListenerContainerFactory")
+    public void executeStandardJobs(List<Long> jobIds) {
+        executeJobs(jobIds, jobExecutor, false);
+    }
+
+    /**
+     * Executes a batch of delivered high priority jobs on the pool of the priority lane, so they never wait for the
+     * reports of the standard lane to finish.
+     */
+    @RabbitListener(queues = "#{priorityQueue.getName()}", containerFactory = "priorityListenerContainerFactory")
+    public void executePriorityJobs(List<Long> jobIds) {
+        executeJobs(jobIds, priorityJobExecutor, true);
+    }
+
+    private void executeJobs(List<Long> jobIds, ExecutorService executorService, boolean priority) {
+
+        List<Future<?>> executions = jobIds.stream()
+                .<Future<?>>map(jobId -> executorService.submit(() -> {
+                    executeAdmitted(jobId, priority);
+                    return null;
+                }))
+                .toList();
+
+        for (Future<?> execution : executions) {
+            try {
+                execution.get();
+            } catch (InterruptedException e) {
+                // Started jobs left unfinished are reclaimed once their lease expires, the others are published again
+                // once their dispatch deadline passes
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.error("Job execution failed unexpectedly.", e.getCause());
+            }
+        }
     }
 
 
 
 
-    @Transactional(isolation = Isolation.SERIALIZABLE, propagation = Propagation.REQUIRED)
-    public void executor(Long jobId, ImplProvider<JobModel> implProvider) {
-        JobModel job = jobRepository.findById(jobId).orElse(null);
+    /**
+     * Executes a delivered report job once its estimated memory fits in the budget of this instance. A job which does
+     * not fit within the admission timeout is handed back to the queue, where another instance may take it.
+     */
+    private void executeAdmitted(Long jobId, boolean priority) throws InterruptedException {
+        long footprint;
+        try {
+            footprint = reportGeneratorService.estimateReportMemory(jobId);
+        } catch (RuntimeException e) {
+            // The execution reports the unreadable job
+            footprint = 0;
+        }
+
+        if (!jobAdmissionController.admit(footprint, priority)) {
+            info(jobId, "Not enough memory for ~" + footprint + " bytes, returning the job to the queue.");
+            jobProcessor.requeueJob(jobId);
+            return;
+        }
+
+        try {
+            executor(jobId, (job) ->{
+                log.info("Started job("+job.getJobUid()+") execution");
+                FileDataModel outputFile = reportGeneratorService.executeReportGeneration(job);
+                log.info("Job("+job.getJobUid()+") executed successfully.");
+                return outputFile;
+            });
+        } finally {
+            jobAdmissionController.release(footprint);
+        }
+    }
+
+
+
+    /**
+     * Executes a delivered job under its lease. The job row is not locked while the job runs, so the lease can be
+     * renewed; a delivery of a job already started elsewhere is dropped. The outcome and output file are only recorded
+     * while the job is still leased to this instance; otherwise the output file is deleted. An {@link Error} thrown by
+     * the job is rethrown once the job is recorded as failed.
+     */
+    public void executor(Long jobId, ResultProvider<JobModel, FileDataModel> implProvider) {
+        JobModel job = jobProcessor.startJob(jobId);
         if (null ==  job) {
-            error(jobId, "Job is missing while executing.");
+            error(jobId, "Job is missing, not claimed or already started while executing.");
             return;
         }
 
         info(jobId, JobStatus.RUNNING);
+        FileDataModel outputFile = null;
         try {
-            implProvider.execute(job);// EXECUTION
+            outputFile = implProvider.execute(job);// EXECUTION
             job.setStatus(JobStatus.SUCCESS);
+            job.setAttempts(job.getAttempts() + 1);
             info(job.getId(), JobStatus.SUCCESS);
-        } catch (Exception exception) {
+        } catch (Throwable throwable) {
+            // Errors fail the job too, so it is never finished while still RUNNING
             job.setStatus(JobStatus.FAILED);
             job.setAttempts(job.getAttempts() + 1);
-            error(job.getId(), JobStatus.FAILED.name() + "\n" + ExceptionUtils.getStackTrace(exception));
+            error(job.getId(), JobStatus.FAILED.name() + "\n" + ExceptionUtils.getStackTrace(throwable));
+            if (throwable instanceof Error e)
+                throw e;
         } finally {
-            jobRepository.save(job);
+            if (!jobProcessor.finishJob(job, outputFile)) {
+                error(job.getId(), "Job lease was lost while executing, its outcome is dropped.");
+                if (null != outputFile)
+                    reportGeneratorService.deleteLocallySavedFiles(List.of(outputFile.getFilePath()));
+            } else if (JobStatus.RETRYING == job.getStatus()) {
+                info(job.getId(), "Retrying after attempt " + job.getAttempts() + ".");
+            }
         }
 
 
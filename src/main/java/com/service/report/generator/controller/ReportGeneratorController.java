@@ -7,19 +7,23 @@ import com.service.report.generator.dto.JwtTokenResponse;
 import com.service.report.generator.dto.TokenValidationResponse;
 import com.service.report.generator.dto.payload.LoginRequest;
 import com.service.report.generator.service.ReportGeneratorService;
+import com.service.report.generator.tag.OutputCompression;
 import com.service.report.generator.tag.UserRole;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.time.LocalTime;
 
 
@@ -39,6 +43,8 @@ public class ReportGeneratorController {
      * @param mainfile The main file to be uploaded (required).
      * @param reference1 An optional reference file 1.
      * @param reference2 An optional reference file 2.
+     * @param sorted Whether all the files are sorted on their join key.
+     * @param compression The compression of the generated report.
      * @param validationResponse The token validation response containing user details.
      * @return ResponseEntity containing the API response with status and message.
      */
@@ -89,13 +95,492 @@ public class ReportGeneratorController {
             )
             @RequestParam(name = "ref-2", required = false) MultipartFile reference2,
 
+            @Parameter(
+                    name = "sorted",
+                    description = "Whether the main and reference files are all sorted on the national identifier, " +
+                            "so they can be joined by streaming them in lockstep.",
+                    required = false
+            )
+            @RequestParam(name = "sorted", required = false, defaultValue = "false") boolean sorted,
+
+            @Parameter(
+                    name = "compression",
+                    description = "Compression of the generated report: NONE for a plain CSV file, or GZIP for a gzip-compressed one.",
+                    required = false
+            )
+            @RequestParam(name = "compression", required = false, defaultValue = "NONE") OutputCompression compression,
+
             @Parameter(
                     description = "Token validation response containing user details.",
                     required = true
             )
             TokenValidationResponse validationResponse
     ){
-        APIResponse<?> response = reportGeneratorService.uploadFile(mainfile,reference1,reference2, validationResponse);
+        APIResponse<?> response = reportGeneratorService.uploadFile(mainfile,reference1,reference2, sorted, compression, validationResponse);
+
+        return new ResponseEntity<>(
+                response,
+                HttpStatus.OK
+        );
+    }
+
+
+
+
+    /**
+     * Uploads one input file by streaming the request body straight to disk, without buffering it in memory or in a
+     * temporary file. The returned file identifier is then used to schedule a report.
+     *
+     * @param fileName The original name of the file, whose extension gives its format.
+     * @param contentHash The SHA-256 hash of the file, if known to the client.
+     * @param request The HTTP request whose body is the content of the file.
+     * @param validationResponse The token validation response containing user details.
+     * @return ResponseEntity containing the API response with the identifier, size, hash and row count of the file.
+     */
+    @PutMapping(path = "/files", consumes = MediaType.ALL_VALUE)
+    @Operation(
+            summary = "STREAM INPUT FILE",
+            description = "Uploads one input file by streaming the request body straight to disk.\n\n" +
+                    "Access Control:\n" +
+                    "This endpoint requires a valid token validation response for authorization.\n\n" +
+                    "Endpoint Workflow:\n" +
+                    "1. When a request is made to this endpoint, the server validates the extension of the given file name.\n" +
+                    "2. The server writes the request body to the document directory as it arrives.\n" +
+                    "3. The SHA-256 hash, size and row count of the file are computed while it is written, and saved with the file.\n" +
+                    "4. When a file with the same content is already stored, it is reused and the new copy is discarded.\n" +
+                    "5. The identifier of the file is returned in an APIResponse, to be passed to the schedule endpoint.\n",
+            tags = {"UPLOAD"}
+    )
+    @ApiResponses({
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(
+                    responseCode = "200",
+                    description = "File stored successfully.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = APIResponse.class)
+                    )
+            )
+    })
+    @Auditor(allowedRoles = UserRole.ADMIN)
+    public ResponseEntity<?> uploadInputFile(
+            @Parameter(
+                    name = "name",
+                    description = "The original name of the file, such as input.csv or input.csv.gz.",
+                    required = true
+            )
+            @RequestParam(name = "name") String fileName,
+
+            @Parameter(
+                    name = "sha256",
+                    description = "Optional SHA-256 hash of the file, in hexadecimal. When an identical file is already stored, " +
+                            "it is reused and the request body is not read; otherwise the uploaded content must match it.",
+                    required = false
+            )
+            @RequestParam(name = "sha256", required = false) String contentHash,
+
+            HttpServletRequest request,
+
+            @Parameter(
+                    description = "Token validation response containing user details.",
+                    required = true
+            )
+            TokenValidationResponse validationResponse
+    ) throws IOException {
+        APIResponse<?> response = reportGeneratorService.uploadInputFile(
+                fileName,
+                request.getContentType(),
+                contentHash,
+                request.getInputStream(),
+                validationResponse
+        );
+
+        return new ResponseEntity<>(
+                response,
+                HttpStatus.OK
+        );
+    }
+
+
+
+
+    /**
+     * Starts a resumable upload of one input file, to be sent in numbered chunks.
+     *
+     * @param fileName The original name of the file, whose extension gives its format.
+     * @param fileSize The size of the complete file in bytes.
+     * @param chunkSize The size of every chunk but the last one, if not the configured size.
+     * @param validationResponse The token validation response containing user details.
+     * @return ResponseEntity containing the API response with the upload identifier and chunk layout.
+     */
+    @PostMapping(path = "/uploads")
+    @Operation(
+            summary = "START CHUNKED UPLOAD",
+            description = "Starts a resumable upload of one input file, to be sent in numbered chunks.\n\n" +
+                    "Access Control:\n" +
+                    "This endpoint requires a valid token validation response for authorization.\n\n" +
+                    "Endpoint Workflow:\n" +
+                    "1. When a request is made to this endpoint, the server validates the file name and sizes.\n" +
+                    "2. The server preallocates the file at its full size and opens an upload session.\n" +
+                    "3. The upload identifier, chunk size and chunk count are returned in an APIResponse.\n",
+            tags = {"UPLOAD"}
+    )
+    @ApiResponses({
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(
+                    responseCode = "200",
+                    description = "Upload session started.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = APIResponse.class)
+                    )
+            )
+    })
+    @Auditor(allowedRoles = UserRole.ADMIN)
+    public ResponseEntity<?> startUpload(
+            @Parameter(
+                    name = "name",
+                    description = "The original name of the file, such as input.csv or input.csv.gz.",
+                    required = true
+            )
+            @RequestParam(name = "name") String fileName,
+
+            @Parameter(
+                    name = "size",
+                    description = "The size of the complete file in bytes.",
+                    required = true
+            )
+            @RequestParam(name = "size") long fileSize,
+
+            @Parameter(
+                    name = "chunk-size",
+                    description = "Optional size of every chunk but the last one, in bytes.",
+                    required = false
+            )
+            @RequestParam(name = "chunk-size", required = false) Long chunkSize,
+
+            @Parameter(
+                    description = "Token validation response containing user details.",
+                    required = true
+            )
+            TokenValidationResponse validationResponse
+    ){
+        APIResponse<?> response = reportGeneratorService.startUpload(fileName, fileSize, chunkSize, validationResponse);
+
+        return new ResponseEntity<>(
+                response,
+                HttpStatus.OK
+        );
+    }
+
+
+
+
+    /**
+     * Stores one chunk of an upload. Chunks may be sent in any order and in parallel, and sent again after a failure.
+     *
+     * @param uploadUid The identifier of the upload.
+     * @param chunkIndex The zero-based number of the chunk.
+     * @param request The HTTP request whose body is the content of the chunk.
+     * @param validationResponse The token validation response containing user details.
+     * @return ResponseEntity containing the API response with status and message.
+     */
+    @PutMapping(path = "/uploads/{uploadUid}/chunks/{chunkIndex}", consumes = MediaType.ALL_VALUE)
+    @Operation(
+            summary = "UPLOAD CHUNK",
+            description = "Stores one chunk of an upload at its offset in the file.\n\n" +
+                    "Access Control:\n" +
+                    "This endpoint requires a valid token validation response for authorization.\n\n" +
+                    "Endpoint Workflow:\n" +
+                    "1. When a request is made to this endpoint, the server checks that the upload is open and the chunk number is in range.\n" +
+                    "2. The server writes the request body at the offset of the chunk; the body must hold exactly the bytes of the chunk.\n" +
+                    "3. The chunk is recorded as received and an APIResponse is returned.\n",
+            tags = {"UPLOAD"}
+    )
+    @ApiResponses({
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(
+                    responseCode = "200",
+                    description = "Chunk stored.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = APIResponse.class)
+                    )
+            )
+    })
+    @Auditor(allowedRoles = UserRole.ADMIN)
+    public ResponseEntity<?> uploadChunk(
+            @Parameter(
+                    name = "uploadUid",
+                    description = "The identifier of the upload.",
+                    required = true
+            )
+            @PathVariable(value = "uploadUid") String uploadUid,
+
+            @Parameter(
+                    name = "chunkIndex",
+                    description = "The zero-based number of the chunk.",
+                    required = true
+            )
+            @PathVariable(value = "chunkIndex") int chunkIndex,
+
+            HttpServletRequest request,
+
+            @Parameter(
+                    description = "Token validation response containing user details.",
+                    required = true
+            )
+            TokenValidationResponse validationResponse
+    ) throws IOException {
+        APIResponse<?> response = reportGeneratorService.uploadChunk(uploadUid, chunkIndex, request.getInputStream());
+
+        return new ResponseEntity<>(
+                response,
+                HttpStatus.OK
+        );
+    }
+
+
+
+
+    /**
+     * Describes an upload, with the chunks still missing, so that an interrupted upload can be resumed.
+     *
+     * @param uploadUid The identifier of the upload.
+     * @return ResponseEntity containing the API response with the upload session.
+     */
+    @GetMapping(path = "/uploads/{uploadUid}")
+    @Operation(
+            summary = "UPLOAD STATUS",
+            description = "Describes an upload, with the chunks still missing.\n\n" +
+                    "Access Control:\n" +
+                    "This endpoint requires a valid token validation response for authorization.\n\n" +
+                    "Endpoint Workflow:\n" +
+                    "1. When a request is made to this endpoint, the server looks up the upload session.\n" +
+                    "2. The server lists the chunks not received yet, which the client sends to resume the upload.\n" +
+                    "3. The APIResponse is returned in a ResponseEntity with HTTP status OK (200).\n",
+            tags = {"UPLOAD"}
+    )
+    @ApiResponses({
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(
+                    responseCode = "200",
+                    description = "Status of the upload.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = APIResponse.class)
+                    )
+            )
+    })
+    @Auditor(allowedRoles = UserRole.ADMIN)
+    public ResponseEntity<?> getUploadStatus(
+            @Parameter(
+                    name = "uploadUid",
+                    description = "The identifier of the upload.",
+                    required = true
+            )
+            @PathVariable(value = "uploadUid") String uploadUid
+    ){
+        APIResponse<?> response = reportGeneratorService.getUploadStatus(uploadUid);
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(response);
+    }
+
+
+
+
+    /**
+     * Completes an upload once every chunk is stored and, unless told otherwise, schedules a report with the file as
+     * main file.
+     *
+     * @param uploadUid The identifier of the upload.
+     * @param contentHash The SHA-256 hash of the file, if known to the client.
+     * @param schedule Whether a report is scheduled for the file.
+     * @param reference1Id The identifier of an optional reference file 1.
+     * @param reference2Id The identifier of an optional reference file 2.
+     * @param sorted Whether all the files are sorted on their join key.
+     * @param compression The compression of the generated report.
+     * @param validationResponse The token validation response containing user details.
+     * @return ResponseEntity containing the API response with the stored file.
+     */
+    @PostMapping(path = "/uploads/{uploadUid}/commit")
+    @Operation(
+            summary = "COMMIT CHUNKED UPLOAD",
+            description = "Completes an upload once every chunk is stored, and schedules a report for it.\n\n" +
+                    "Access Control:\n" +
+                    "This endpoint requires a valid token validation response for authorization.\n\n" +
+                    "Endpoint Workflow:\n" +
+                    "1. When a request is made to this endpoint, the server checks that no chunk is missing.\n" +
+                    "2. The server computes the SHA-256 hash and row count of the file and checks the hash given by the client, if any.\n" +
+                    "3. The file is saved as an input file, reusing an identical stored file if there is one.\n" +
+                    "4. Unless schedule is false, a job for report generation is scheduled with the file as main file.\n" +
+                    "5. The stored file is returned in an APIResponse.\n",
+            tags = {"UPLOAD"}
+    )
+    @ApiResponses({
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(
+                    responseCode = "200",
+                    description = "Upload committed.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = APIResponse.class)
+                    )
+            )
+    })
+    @Auditor(allowedRoles = UserRole.ADMIN)
+    public ResponseEntity<?> commitUpload(
+            @Parameter(
+                    name = "uploadUid",
+                    description = "The identifier of the upload.",
+                    required = true
+            )
+            @PathVariable(value = "uploadUid") String uploadUid,
+
+            @Parameter(
+                    name = "sha256",
+                    description = "Optional SHA-256 hash of the complete file, in hexadecimal.",
+                    required = false
+            )
+            @RequestParam(name = "sha256", required = false) String contentHash,
+
+            @Parameter(
+                    name = "schedule",
+                    description = "Whether a report is scheduled with the file as main file. Reference files are committed with false.",
+                    required = false
+            )
+            @RequestParam(name = "schedule", required = false, defaultValue = "true") boolean schedule,
+
+            @Parameter(
+                    name = "ref-1",
+                    description = "Optional identifier of reference file 1.",
+                    required = false
+            )
+            @RequestParam(name = "ref-1", required = false) Long reference1Id,
+
+            @Parameter(
+                    name = "ref-2",
+                    description = "Optional identifier of reference file 2.",
+                    required = false
+            )
+            @RequestParam(name = "ref-2", required = false) Long reference2Id,
+
+            @Parameter(
+                    name = "sorted",
+                    description = "Whether the main and reference files are all sorted on the national identifier, " +
+                            "so they can be joined by streaming them in lockstep.",
+                    required = false
+            )
+            @RequestParam(name = "sorted", required = false, defaultValue = "false") boolean sorted,
+
+            @Parameter(
+                    name = "compression",
+                    description = "Compression of the generated report: NONE for a plain CSV file, or GZIP for a gzip-compressed one.",
+                    required = false
+            )
+            @RequestParam(name = "compression", required = false, defaultValue = "NONE") OutputCompression compression,
+
+            @Parameter(
+                    description = "Token validation response containing user details.",
+                    required = true
+            )
+            TokenValidationResponse validationResponse
+    ){
+        APIResponse<?> response = reportGeneratorService.commitUpload(
+                uploadUid,
+                contentHash,
+                schedule,
+                reference1Id,
+                reference2Id,
+                sorted,
+                compression,
+                validationResponse
+        );
+
+        return new ResponseEntity<>(
+                response,
+                HttpStatus.OK
+        );
+    }
+
+
+
+
+    /**
+     * Schedules a report for input files uploaded beforehand through the streaming upload endpoint.
+     *
+     * @param mainFileId The identifier of the main file (required).
+     * @param reference1Id The identifier of an optional reference file 1.
+     * @param reference2Id The identifier of an optional reference file 2.
+     * @param sorted Whether all the files are sorted on their join key.
+     * @param compression The compression of the generated report.
+     * @param validationResponse The token validation response containing user details.
+     * @return ResponseEntity containing the API response with status and message.
+     */
+    @PostMapping(path = "/schedule")
+    @Operation(
+            summary = "SCHEDULE REPORT",
+            description = "Schedules a report for input files uploaded beforehand.\n\n" +
+                    "Access Control:\n" +
+                    "This endpoint requires a valid token validation response for authorization.\n\n" +
+                    "Endpoint Workflow:\n" +
+                    "1. When a request is made to this endpoint, the server checks that every given file is a stored CSV input file.\n" +
+                    "2. The server schedules a job for report generation on these files.\n" +
+                    "3. The APIResponse is returned in a ResponseEntity with HTTP status OK (200).\n",
+            tags = {"SCHEDULE"}
+    )
+    @ApiResponses({
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(
+                    responseCode = "200",
+                    description = "Job for report generation scheduled.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = APIResponse.class)
+                    )
+            )
+    })
+    @Auditor(allowedRoles = UserRole.ADMIN)
+    public ResponseEntity<?> scheduleReport(
+            @Parameter(
+                    name = "main",
+                    description = "The identifier of the main file. This file is mandatory.",
+                    required = true
+            )
+            @RequestParam(name = "main") Long mainFileId,
+
+            @Parameter(
+                    name = "ref-1",
+                    description = "Optional identifier of reference file 1.",
+                    required = false
+            )
+            @RequestParam(name = "ref-1", required = false) Long reference1Id,
+
+            @Parameter(
+                    name = "ref-2",
+                    description = "Optional identifier of reference file 2.",
+                    required = false
+            )
+            @RequestParam(name = "ref-2", required = false) Long reference2Id,
+
+            @Parameter(
+                    name = "sorted",
+                    description = "Whether the main and reference files are all sorted on the national identifier, " +
+                            "so they can be joined by streaming them in lockstep.",
+                    required = false
+            )
+            @RequestParam(name = "sorted", required = false, defaultValue = "false") boolean sorted,
+
+            @Parameter(
+                    name = "compression",
+                    description = "Compression of the generated report: NONE for a plain CSV file, or GZIP for a gzip-compressed one.",
+                    required = false
+            )
+            @RequestParam(name = "compression", required = false, defaultValue = "NONE") OutputCompression compression,
+
+            @Parameter(
+                    description = "Token validation response containing user details.",
+                    required = true
+            )
+            TokenValidationResponse validationResponse
+    ){
+        APIResponse<?> response = reportGeneratorService.scheduleReport(mainFileId, reference1Id, reference2Id, sorted, compression, validationResponse);
 
         return new ResponseEntity<>(
                 response,
@@ -264,4 +749,43 @@ public class ReportGeneratorController {
 
 
 
+
+    /**
+     * Lists the report pipelines currently running, with the depth of the queue in front of each stage.
+     *
+     * @return ResponseEntity containing the API response with one entry per running pipeline.
+     */
+    @GetMapping(path = "/pipeline/status")
+    @Operation(
+            summary = "PIPELINE STATUS",
+            description = "Lists the report pipelines currently running, with the depth of the queue in front of each stage.\n\n" +
+                    "Access Control:\n" +
+                    "This endpoint requires a valid token validation response for authorization.\n\n" +
+                    "Endpoint Workflow:\n" +
+                    "1. When a request is made to this endpoint, the server collects the counters of every running pipeline.\n" +
+                    "2. For each pipeline it reports the batches queued for the transform workers, the workers busy and the batches waiting to be written.\n" +
+                    "3. The APIResponse is returned in a ResponseEntity with HTTP status OK (200).\n",
+            tags = {"REPORT"}
+    )
+    @ApiResponses({
+            @io.swagger.v3.oas.annotations.responses.ApiResponse(
+                    responseCode = "200",
+                    description = "Status of the running pipelines.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = APIResponse.class)
+                    )
+            )
+    })
+    @Auditor(allowedRoles = UserRole.ADMIN)
+    public ResponseEntity<?> getPipelineStatus(){
+        APIResponse<?> response = reportGeneratorService.getPipelineStatus();
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(response);
+    }
+
+
+
 }
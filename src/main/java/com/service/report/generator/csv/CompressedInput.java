@@ -0,0 +1,76 @@
+package com.service.report.generator.csv;
+
+import com.service.report.generator.exception.InvalidDataException;
+import com.service.report.generator.tag.FileCompression;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Opens stored input files, decompressing them on the calling thread according to their extension: gzip files, and
+ * zip files holding a single entry.
+ */
+public final class CompressedInput {
+
+    private CompressedInput() {
+    }
+
+    /**
+     * @param filePath The path of the file.
+     * @return The decompressed content of the file.
+     * @throws InvalidDataException if a zip file holds no entry, or more than one once read to the end.
+     */
+    public static InputStream open(Path filePath) throws IOException {
+        InputStream inputStream = Files.newInputStream(filePath);
+        try {
+            return switch (FileCompression.of(filePath.toString())) {
+                case GZIP -> new GZIPInputStream(inputStream, 1 << 16);
+                case ZIP -> openSingleEntry(new ZipInputStream(new BufferedInputStream(inputStream, 1 << 16)));
+                case NONE -> inputStream;
+            };
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    private static InputStream openSingleEntry(ZipInputStream zipInputStream) throws IOException {
+        ZipEntry entry = zipInputStream.getNextEntry();
+        while (null != entry && entry.isDirectory())
+            entry = zipInputStream.getNextEntry();
+        if (null == entry)
+            throw new InvalidDataException("The zip file holds no file.");
+
+        // Reads the single entry, and fails at its end if another entry follows
+        return new FilterInputStream(zipInputStream) {
+            @Override
+            public int read() throws IOException {
+                int value = super.read();
+                return -1 == value ? checkLastEntry() : value;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int count = super.read(bytes, offset, length);
+                return -1 == count ? checkLastEntry() : count;
+            }
+
+            private int checkLastEntry() throws IOException {
+                ZipEntry next;
+                while (null != (next = zipInputStream.getNextEntry())) {
+                    if (!next.isDirectory())
+                        throw new InvalidDataException("The zip file holds more than one file.");
+                }
+                return -1;
+            }
+        };
+    }
+
+}
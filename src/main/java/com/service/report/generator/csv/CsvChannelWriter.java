@@ -0,0 +1,110 @@
+package com.service.report.generator.csv;
+
+import com.service.report.generator.tag.OutputCompression;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes CSV records to a file through a large direct buffer, so the file is written in multi-megabyte chunks
+ * rather than with one system call per record. With gzip compression, the encoded records are instead compressed
+ * block by block on several threads. Not thread-safe.
+ */
+public final class CsvChannelWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final CsvRowEncoder encoder;
+    private final boolean sync;
+    private final ParallelGzipOutput gzipOutput;
+
+    /**
+     * @param file The file to be written; it is created or truncated.
+     * @param charset The charset of the output.
+     * @param bufferSize The number of bytes buffered between writes.
+     * @param sync Whether the content is forced to the storage device when the writer is closed.
+     */
+    public CsvChannelWriter(Path file, Charset charset, int bufferSize, boolean sync) throws IOException {
+        this(file, charset, bufferSize, sync, OutputCompression.NONE, 0, 0);
+    }
+
+    /**
+     * @param file The file to be written; it is created or truncated.
+     * @param charset The charset of the output.
+     * @param bufferSize The number of bytes buffered between writes, or per compressed block.
+     * @param sync Whether the content is forced to the storage device when the writer is closed.
+     * @param compression The compression of the file.
+     * @param threads The number of compressing threads.
+     * @param level The deflate compression level.
+     */
+    public CsvChannelWriter(
+            Path file,
+            Charset charset,
+            int bufferSize,
+            boolean sync,
+            OutputCompression compression,
+            int threads,
+            int level
+    ) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.encoder = new CsvRowEncoder(charset);
+        this.sync = sync;
+        if (OutputCompression.GZIP == compression) {
+            this.buffer = null;
+            this.gzipOutput = new ParallelGzipOutput(channel, bufferSize, threads, level);
+        } else {
+            this.buffer = ByteBuffer.allocateDirect(Math.max(1 << 12, bufferSize));
+            this.gzipOutput = null;
+        }
+    }
+
+    public void writeRecord(Object[] values) throws IOException {
+        encoder.encode(values);
+        byte[] bytes = encoder.buffer();
+        int length = encoder.length();
+
+        if (null != gzipOutput) {
+            gzipOutput.write(bytes, 0, length);
+            return;
+        }
+
+        int offset = 0;
+        while (offset < length) {
+            if (!buffer.hasRemaining())
+                flush();
+
+            int count = Math.min(buffer.remaining(), length - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (channel) {
+            if (null != gzipOutput) {
+                try (gzipOutput) {
+                    gzipOutput.finish();
+                }
+            } else {
+                flush();
+            }
+
+            if (sync)
+                channel.force(true);
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.service.report.generator.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a CSV byte stream into chunks of whole records, so that the chunks can be parsed independently.
+ * <p>
+ * A chunk ends at the first record separator outside a quoted field once it holds at least the target number of bytes.
+ * Records may be separated by {@code \n}, {@code \r\n} or a lone {@code \r}, so files with classic Mac line endings
+ * are chunked too.
+ * As in {@code CSVFormat.DEFAULT}, a double quote only opens a quoted field at the start of a field, and inside one a
+ * doubled quote is an escaped quote, so line breaks inside quoted fields never split a record. The bytes
+ * {@code "}, {@code ,}, {@code \r} and {@code \n} are assumed to always stand for themselves, which holds for UTF-8
+ * and single-byte ASCII-compatible charsets.
+ * Not thread-safe.
+ */
+public final class CsvChunker implements Closeable {
+
+    private final InputStream inputStream;
+    private final int chunkSize;
+    private byte[] buffer;
+    private int start;
+    private int scan;
+    private int limit;
+    private boolean inQuotes;
+    // A quote closed the quoted field, unless the next byte is a quote too
+    private boolean quotePending;
+    private boolean atFieldStart = true;
+    private boolean eof;
+
+    /**
+     * @param inputStream The CSV content; it is closed with the chunker.
+     * @param chunkSize The target number of bytes per chunk.
+     */
+    public CsvChunker(InputStream inputStream, int chunkSize) {
+        this.inputStream = inputStream;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.buffer = new byte[Math.max(1 << 16, this.chunkSize + (this.chunkSize >> 2))];
+    }
+
+    /**
+     * @return The bytes of the first record, or null if the stream is empty. Must be called before {@link #next()}.
+     */
+    public byte[] readHeader() throws IOException {
+        return next(1);
+    }
+
+    /**
+     * @return The next chunk of whole records, or null at the end of the stream.
+     */
+    public byte[] next() throws IOException {
+        return next(chunkSize);
+    }
+
+    private byte[] next(int minimumSize) throws IOException {
+        while (true) {
+            for (; scan < limit; scan++) {
+                byte current = buffer[scan];
+                if (inQuotes) {
+                    if ('"' == current) {
+                        inQuotes = false;
+                        quotePending = true;
+                    }
+                    continue;
+                }
+                if (quotePending) {
+                    quotePending = false;
+                    if ('"' == current) {
+                        inQuotes = true;
+                        continue;
+                    }
+                }
+
+                if ('"' == current && atFieldStart) {
+                    inQuotes = true;
+                    atFieldStart = false;
+                } else if (',' == current) {
+                    atFieldStart = true;
+                } else if ('\r' == current) {
+                    atFieldStart = true;
+                    // Whether the record ends here or at a following line feed is known once the next byte is read
+                    if (scan + 1 == limit && !eof)
+                        break;
+                    if ((scan + 1 == limit || '\n' != buffer[scan + 1]) && scan - start + 1 >= minimumSize)
+                        return cut(++scan);
+                } else if ('\n' == current) {
+                    atFieldStart = true;
+                    if (scan - start + 1 >= minimumSize)
+                        return cut(++scan);
+                } else {
+                    atFieldStart = false;
+                }
+            }
+
+            if (eof)
+                return start < limit ? cut(limit) : null;
+            fill();
+        }
+    }
+
+    private byte[] cut(int end) {
+        byte[] chunk = Arrays.copyOfRange(buffer, start, end);
+        start = end;
+        return chunk;
+    }
+
+    private void fill() throws IOException {
+        // Move the unfinished chunk to the front, growing the buffer only when the chunk fills it
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            limit -= start;
+            scan -= start;
+            start = 0;
+        }
+        if (limit == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+        int read = inputStream.read(buffer, limit, buffer.length - limit);
+        if (read < 0)
+            eof = true;
+        else
+            limit += read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.service.report.generator.csv;
+
+import com.service.report.generator.exception.InvalidDataException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the header of a CSV file from a bounded prefix of its content, so that a malformed file can be rejected
+ * without reading it whole.
+ */
+public final class CsvHeaderSniffer {
+
+    // Delimiters other than the comma that betray a file exported with another separator
+    private static final char[] FOREIGN_DELIMITERS = {';', '\t', '|'};
+
+    private CsvHeaderSniffer() {
+    }
+
+    /**
+     * @param inputStream The content of the file; at most the given number of bytes are read, and it is not closed.
+     * @param maxBytes The number of bytes the header must fit in.
+     * @param charset The charset of the content.
+     * @return The column names of the header.
+     * @throws InvalidDataException if the file is empty, its header does not fit in the prefix, a column name is
+     *                              blank, or the file is not comma-separated.
+     */
+    public static String[] sniff(InputStream inputStream, int maxBytes, Charset charset) throws IOException {
+        byte[] prefix = inputStream.readNBytes(maxBytes);
+        boolean truncated = prefix.length == maxBytes && -1 != inputStream.read();
+
+        String[] header = null;
+        byte[] record;
+        CsvTokenizer tokenizer = new CsvTokenizer(charset);
+        try (CsvChunker chunker = new CsvChunker(new ByteArrayInputStream(prefix), 1)) {
+            while (null == header && null != (record = chunker.readHeader())) {
+                // The last record of a truncated prefix may be cut in the middle
+                if (truncated && '\n' != record[record.length - 1] && '\r' != record[record.length - 1])
+                    throw new InvalidDataException("The header of the file does not fit in its first " + maxBytes + " bytes.");
+
+                tokenizer.reset(record, 0, record.length);
+                if (tokenizer.next())
+                    header = tokenizer.toArray();
+            }
+        }
+
+        if (null == header)
+            throw new InvalidDataException("The file has no header.");
+
+        if (1 == header.length) {
+            for (char delimiter : FOREIGN_DELIMITERS) {
+                if (0 <= header[0].indexOf(delimiter))
+                    throw new InvalidDataException("The file must be comma-separated, but its header is separated by (" + printable(delimiter) + ").");
+            }
+        }
+
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].isBlank())
+                throw new InvalidDataException("The name of column (" + (i + 1) + ") is missing in the header.");
+        }
+        return header;
+    }
+
+    private static String printable(char delimiter) {
+        return '\t' == delimiter ? "tab" : String.valueOf(delimiter);
+    }
+
+}
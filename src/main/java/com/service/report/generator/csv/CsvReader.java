@@ -0,0 +1,59 @@
+package com.service.report.generator.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Streams the records of a CSV file through a {@link CsvTokenizer}, one window of whole records at a time.
+ * Not thread-safe.
+ */
+public final class CsvReader implements Closeable {
+
+    private static final int WINDOW_SIZE = 1 << 20;
+
+    private final CsvChunker chunker;
+    private final CsvTokenizer tokenizer;
+
+    /**
+     * @param inputStream The CSV content; it is closed with the reader.
+     * @param charset The charset of the content.
+     */
+    public CsvReader(InputStream inputStream, Charset charset) {
+        this.chunker = new CsvChunker(inputStream, WINDOW_SIZE);
+        this.tokenizer = new CsvTokenizer(charset);
+    }
+
+    /**
+     * @return The fields of the first record, or null if there is none. Must be called before {@link #next()}.
+     */
+    public String[] readHeader() throws IOException {
+        byte[] header;
+        while (null != (header = chunker.readHeader())) {
+            tokenizer.reset(header, 0, header.length);
+            if (tokenizer.next())
+                return tokenizer.toArray();
+        }
+        return null;
+    }
+
+    /**
+     * @return The tokenizer positioned on the next record, or null at the end of the file.
+     */
+    public CsvTokenizer next() throws IOException {
+        while (!tokenizer.next()) {
+            byte[] window = chunker.next();
+            if (null == window)
+                return null;
+            tokenizer.reset(window, 0, window.length);
+        }
+        return tokenizer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunker.close();
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.service.report.generator.csv;
+
+/**
+ * Counts the records of a CSV byte stream as it is fed, with the quoting rules of {@link CsvChunker}: line breaks
+ * inside quoted fields do not end a record, and empty lines are not records.
+ * Not thread-safe.
+ */
+public final class CsvRecordCounter {
+
+    private long records;
+    private boolean inQuotes;
+    // A quote closed the quoted field, unless the next byte is a quote too
+    private boolean quotePending;
+    private boolean atFieldStart = true;
+    // Whether the current record holds anything besides line breaks
+    private boolean recordStarted;
+
+    public void update(byte[] bytes, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            byte current = bytes[i];
+            if (inQuotes) {
+                if ('"' == current) {
+                    inQuotes = false;
+                    quotePending = true;
+                }
+                continue;
+            }
+            if (quotePending) {
+                quotePending = false;
+                if ('"' == current) {
+                    inQuotes = true;
+                    continue;
+                }
+            }
+
+            // The line feed of a \r\n pair ends an empty record, which is not counted
+            if ('\n' == current || '\r' == current) {
+                if (recordStarted)
+                    records++;
+                recordStarted = false;
+                atFieldStart = true;
+            } else {
+                recordStarted = true;
+                if ('"' == current && atFieldStart)
+                    inQuotes = true;
+                atFieldStart = ',' == current;
+            }
+        }
+    }
+
+    /**
+     * @return The number of records fed so far, including a last record without a line break.
+     */
+    public long count() {
+        return recordStarted || inQuotes || quotePending ? records + 1 : records;
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.service.report.generator.csv;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Encodes records into a reusable byte buffer with the quoting of {@code CSVFormat.DEFAULT} and
+ * {@code QuoteMode.MINIMAL}: a value is quoted when it contains a delimiter, quote or line break, starts with a
+ * character up to {@code #}, ends with a space or control character, or is the empty first value of a record.
+ * Missing values are written as empty, unquoted fields, and records end with {@code \r\n}.
+ * Not thread-safe.
+ */
+public final class CsvRowEncoder {
+
+    private static final byte QUOTE = '"';
+    private static final byte DELIMITER = ',';
+    private static final char COMMENT = '#';
+
+    private final Charset charset;
+    // Whether characters below 0x80 encode to a single byte of the same value
+    private final boolean asciiCompatible;
+    private byte[] buffer = new byte[1 << 12];
+    private int length;
+
+    public CsvRowEncoder(Charset charset) {
+        this.charset = charset;
+        this.asciiCompatible = StandardCharsets.UTF_8.equals(charset)
+                || StandardCharsets.US_ASCII.equals(charset)
+                || StandardCharsets.ISO_8859_1.equals(charset);
+    }
+
+    /**
+     * Replaces the content of the buffer with one encoded record.
+     * @param values The values of the record; each is written using {@link Object#toString()}.
+     */
+    public void encode(Object[] values) {
+        length = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (0 < i)
+                append(DELIMITER);
+            if (null != values[i])
+                appendValue(values[i].toString(), 0 == i);
+        }
+        append((byte) '\r');
+        append((byte) '\n');
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    private void appendValue(String value, boolean first) {
+        if (!needsQuotes(value, first)) {
+            appendText(value);
+            return;
+        }
+
+        append(QUOTE);
+        if (value.indexOf('"') < 0) {
+            appendText(value);
+        } else {
+            appendText(value.replace("\"", "\"\""));
+        }
+        append(QUOTE);
+    }
+
+    private static boolean needsQuotes(String value, boolean first) {
+        if (value.isEmpty())
+            return first;
+
+        if (value.charAt(0) <= COMMENT)
+            return true;
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ('\n' == c || '\r' == c || '"' == c || ',' == c)
+                return true;
+        }
+        return value.charAt(value.length() - 1) <= ' ';
+    }
+
+    private void appendText(String value) {
+        int size = value.length();
+        if (asciiCompatible) {
+            ensureCapacity(size);
+            int i = 0;
+            for (; i < size; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80)
+                    break;
+                buffer[length + i] = (byte) c;
+            }
+            if (i == size) {
+                length += size;
+                return;
+            }
+        }
+
+        byte[] bytes = value.getBytes(charset);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void append(byte value) {
+        ensureCapacity(1);
+        buffer[length++] = value;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + additional));
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.service.report.generator.csv;
+
+import com.service.report.generator.transformer.FieldSource;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits CSV records held in a byte array into fields without copying them.
+ * <p>
+ * Each call to {@link #next()} records the start and end offsets of the fields of one record; a field is only decoded
+ * into a String when it is read, so columns that are never read cost nothing beyond the scan. The grammar follows
+ * {@code CSVFormat.DEFAULT}: comma delimiters, double quote encapsulation with {@code ""} as an escaped quote,
+ * {@code \n}, {@code \r\n} or {@code \r} record separators, and empty lines ignored.
+ * <p>
+ * The tokenizer is reused for every record and only reads the current one, so it is not thread-safe, and a row
+ * obtained from it must not be retained once {@link #next()} is called again.
+ */
+public final class CsvTokenizer implements FieldSource {
+
+    private static final byte QUOTE = '"';
+    private static final byte DELIMITER = ',';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final Charset charset;
+    private byte[] data;
+    private int position;
+    private int limit;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] escaped = new boolean[16];
+    private int count;
+
+    public CsvTokenizer(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Positions the tokenizer before the first record of a window.
+     * @param data The bytes holding whole records.
+     * @param offset The start of the window.
+     * @param limit The end of the window, exclusive.
+     */
+    public void reset(byte[] data, int offset, int limit) {
+        this.data = data;
+        this.position = offset;
+        this.limit = limit;
+        this.count = 0;
+    }
+
+    /**
+     * Advances to the next record of the window.
+     * @return false when the window holds no further record.
+     * @throws IllegalStateException if the record is malformed.
+     */
+    public boolean next() {
+        // Skip empty lines
+        while (position < limit && (LF == data[position] || CR == data[position]))
+            position++;
+
+        count = 0;
+        if (position >= limit)
+            return false;
+
+        int p = position;
+        while (true) {
+            if (p < limit && QUOTE == data[p]) {
+                int start = ++p;
+                boolean hasEscapes = false;
+                while (true) {
+                    if (p >= limit)
+                        throw new IllegalStateException("EOF reached before the encapsulated token was finished.");
+                    if (QUOTE == data[p]) {
+                        if (p + 1 < limit && QUOTE == data[p + 1]) {
+                            hasEscapes = true;
+                            p += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    p++;
+                }
+                add(start, p, hasEscapes);
+
+                // Only a delimiter or the end of the record may follow the closing quote
+                p++;
+                if (p < limit && DELIMITER != data[p] && CR != data[p] && LF != data[p])
+                    throw new IllegalStateException("Invalid character between an encapsulated token and a delimiter.");
+            } else {
+                int start = p;
+                while (p < limit && DELIMITER != data[p] && CR != data[p] && LF != data[p])
+                    p++;
+                add(start, p, false);
+            }
+
+            if (p < limit && DELIMITER == data[p]) {
+                p++;
+                continue;
+            }
+
+            if (p < limit && CR == data[p])
+                p++;
+            if (p < limit && LF == data[p])
+                p++;
+            position = p;
+            return true;
+        }
+    }
+
+    /**
+     * @return The number of fields of the current record.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException if the current record has no such field.
+     */
+    @Override
+    public String get(int column) {
+        if (column < 0 || column >= count)
+            throw new ArrayIndexOutOfBoundsException("Index for field " + column + " out of bounds for a record of " + count + " fields.");
+
+        int start = starts[column];
+        int length = ends[column] - start;
+        if (!escaped[column])
+            return new String(data, start, length, charset);
+
+        // Collapse each escaped quote pair
+        byte[] value = new byte[length];
+        int size = 0;
+        for (int i = start; i < ends[column]; i++) {
+            value[size++] = data[i];
+            if (QUOTE == data[i])
+                i++;
+        }
+        return new String(value, 0, size, charset);
+    }
+
+    /**
+     * @return The field, or null if the current record has no such field.
+     */
+    public String getOrNull(int column) {
+        return column < count ? get(column) : null;
+    }
+
+    /**
+     * @return Every field of the current record, decoded.
+     */
+    public String[] toArray() {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++)
+            values[i] = get(i);
+        return values;
+    }
+
+    private void add(int start, int end, boolean hasEscapes) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+            escaped = Arrays.copyOf(escaped, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        escaped[count++] = hasEscapes;
+    }
+
+}
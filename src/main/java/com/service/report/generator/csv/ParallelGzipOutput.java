@@ -0,0 +1,161 @@
+package com.service.report.generator.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip-compresses a byte stream on several threads.
+ * <p>
+ * The stream is cut into fixed-size blocks and each block is compressed into a complete gzip member of its own, so
+ * blocks can be compressed independently and the members written back in order. A concatenation of gzip members is
+ * itself a valid gzip file (RFC 1952) which standard tools and {@code GZIPInputStream} read as one stream.
+ * Not thread-safe.
+ */
+final class ParallelGzipOutput implements Closeable {
+
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b,  // Magic number
+            Deflater.DEFLATED,  // Compression method
+            0,                  // Flags
+            0, 0, 0, 0,         // Modification time
+            0,                  // Extra flags
+            (byte) 0xff         // Unknown operating system
+    };
+    private static final int TRAILER_LENGTH = 8;
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+    private final FileChannel channel;
+    private final int blockSize;
+    private final int level;
+    private final int maxInFlight;
+    private final ExecutorService executor;
+    private final Deque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+    private byte[] block;
+    private int length;
+    private boolean written;
+
+    /**
+     * @param channel The channel the compressed stream is written to.
+     * @param blockSize The number of uncompressed bytes per gzip member.
+     * @param threads The number of compressing threads.
+     * @param level The deflate compression level.
+     */
+    ParallelGzipOutput(FileChannel channel, int blockSize, int threads, int level) {
+        this.channel = channel;
+        this.blockSize = Math.max(1 << 12, blockSize);
+        this.level = level;
+        this.maxInFlight = 2 * Math.max(1, threads);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), threadFactory());
+        this.block = new byte[this.blockSize];
+    }
+
+    void write(byte[] bytes, int offset, int count) throws IOException {
+        while (count > 0) {
+            int copied = Math.min(count, blockSize - length);
+            System.arraycopy(bytes, offset, block, length, copied);
+            length += copied;
+            offset += copied;
+            count -= copied;
+
+            if (length == blockSize)
+                submitBlock();
+        }
+    }
+
+    /**
+     * Compresses the remaining bytes and writes every pending member.
+     */
+    void finish() throws IOException {
+        // An empty stream still needs one member to be a valid gzip file
+        if (length > 0 || !written)
+            submitBlock();
+        while (!pending.isEmpty())
+            writeMember(pending.poll());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] data = block;
+        int size = length;
+        pending.add(executor.submit(() -> compress(data, size, level)));
+        written = true;
+        block = new byte[blockSize];
+        length = 0;
+
+        if (pending.size() >= maxInFlight)
+            writeMember(pending.poll());
+    }
+
+    private void writeMember(Future<ByteBuffer> member) throws IOException {
+        ByteBuffer compressed;
+        try {
+            compressed = member.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing the output.");
+        } catch (ExecutionException e) {
+            throw new IOException("Compressing the output failed.", e.getCause());
+        }
+
+        while (compressed.hasRemaining())
+            channel.write(compressed);
+    }
+
+    private static ByteBuffer compress(byte[] data, int size, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, size);
+            deflater.finish();
+
+            byte[] output = new byte[HEADER.length + size + (size >> 3) + 64];
+            System.arraycopy(HEADER, 0, output, 0, HEADER.length);
+            int position = HEADER.length;
+            while (!deflater.finished()) {
+                if (output.length - position < TRAILER_LENGTH + 64)
+                    output = Arrays.copyOf(output, output.length * 2);
+                position += deflater.deflate(output, position, output.length - position - TRAILER_LENGTH);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, size);
+            position = writeIntLE(output, position, (int) crc.getValue());
+            position = writeIntLE(output, position, size);
+            return ByteBuffer.wrap(output, 0, position);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int writeIntLE(byte[] output, int position, int value) {
+        output[position] = (byte) value;
+        output[position + 1] = (byte) (value >>> 8);
+        output[position + 2] = (byte) (value >>> 16);
+        output[position + 3] = (byte) (value >>> 24);
+        return position + 4;
+    }
+
+    private static ThreadFactory threadFactory() {
+        int pool = POOL_NUMBER.incrementAndGet();
+        AtomicInteger worker = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "report-gzip-" + pool + "-" + worker.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
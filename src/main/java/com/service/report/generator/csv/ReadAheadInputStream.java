@@ -0,0 +1,138 @@
+package com.service.report.generator.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads another stream ahead on a background thread, so that expensive reads such as decompression overlap with
+ * the work of the consumer. The source is read into a fixed set of blocks which are handed over in order and
+ * recycled once consumed, bounding the memory held ahead of the consumer.
+ * Not thread-safe.
+ */
+public final class ReadAheadInputStream extends InputStream {
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private final BlockingQueue<byte[]> free;
+    private final BlockingQueue<Block> filled;
+    private final Thread reader;
+    private Block current;
+    private int position;
+    private boolean closed;
+
+    /**
+     * @param source The stream to read ahead; it is closed with this stream.
+     * @param blockSize The number of bytes per block.
+     * @param blocks The number of blocks read ahead of the consumer.
+     */
+    public ReadAheadInputStream(InputStream source, int blockSize, int blocks) {
+        int count = Math.max(1, blocks);
+        // One more block is held by the consumer
+        this.free = new ArrayBlockingQueue<>(count + 1);
+        this.filled = new ArrayBlockingQueue<>(count + 2);
+        for (int i = 0; i <= count; i++)
+            free.add(new byte[Math.max(1 << 12, blockSize)]);
+
+        this.reader = new Thread(() -> readAhead(source), "report-read-ahead-" + THREAD_NUMBER.incrementAndGet());
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return current.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (0 == length)
+            return 0;
+        if (!fill())
+            return -1;
+
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current.data, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return null == current || current.length < 0 ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+
+        // The reader owns the source and closes it when it stops
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the input.");
+        }
+    }
+
+    /**
+     * Moves to the next block once the current one is consumed.
+     * @return false at the end of the stream.
+     */
+    private boolean fill() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed.");
+
+        while (null == current || (current.length >= 0 && position == current.length)) {
+            if (null != current)
+                free.add(current.data);
+
+            try {
+                current = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading the input.");
+            }
+            position = 0;
+        }
+
+        if (current.error instanceof RuntimeException e)
+            throw e;
+        if (null != current.error)
+            throw new IOException(current.error.getMessage(), current.error);
+        return current.length >= 0;
+    }
+
+    private void readAhead(InputStream source) {
+        try (source) {
+            while (true) {
+                byte[] data = free.take();
+                int length = source.readNBytes(data, 0, data.length);
+                if (0 == length) {
+                    filled.put(Block.END);
+                    return;
+                }
+                filled.put(new Block(data, length, null));
+            }
+        } catch (InterruptedException e) {
+            // Closed by the consumer
+        } catch (Throwable e) {
+            if (!Thread.currentThread().isInterrupted())
+                filled.offer(new Block(null, -1, e));
+        }
+    }
+
+    private record Block(byte[] data, int length, Throwable error) {
+
+        private static final Block END = new Block(null, -1, null);
+    }
+
+}
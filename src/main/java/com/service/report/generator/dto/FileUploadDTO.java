@@ -0,0 +1,21 @@
+package com.service.report.generator.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FileUploadDTO {
+
+    private Long fileId;
+    private String fileName;
+    private Long fileSize;
+    private String contentHash;
+    // Data rows below the header; unknown for compressed files
+    private Long rowCount;
+
+}
@@ -1,5 +1,7 @@
 package com.service.report.generator.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.service.report.generator.tag.OutputCompression;
 import lombok.*;
 
 import java.util.List;
@@ -9,6 +11,11 @@ import java.util.List;
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class ListDTO {
     List<Long> id;
+    // Whether the files are sorted on their join key
+    Boolean sorted;
+    // Compression of the generated output file, for the OUTPUT entry of a job
+    OutputCompression compression;
 }
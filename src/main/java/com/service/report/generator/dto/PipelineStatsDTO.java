@@ -0,0 +1,25 @@
+package com.service.report.generator.dto;
+
+import lombok.*;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PipelineStatsDTO {
+
+    private String name;
+    private Instant startedAt;
+    private long bytesRead;
+    private long rowsWritten;
+    private long batchesRead;
+    private long batchesWritten;
+    private int readQueueDepth;
+    private int readQueueCapacity;
+    private int activeWorkers;
+    private int writeQueueDepth;
+
+}
@@ -0,0 +1,17 @@
+package com.service.report.generator.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StoredFileDTO {
+
+    private long size;
+    private String contentHash;
+    // Number of CSV records, including the header, or null when they were not counted
+    private Long recordCount;
+
+}
@@ -0,0 +1,28 @@
+package com.service.report.generator.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.service.report.generator.tag.UploadStatus;
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UploadSessionDTO {
+
+    private String uploadUid;
+    private String fileName;
+    private Long fileSize;
+    private Integer chunkSize;
+    private Integer chunkCount;
+    private UploadStatus status;
+    // Chunks still to be sent, for resuming the upload
+    private List<Integer> missingChunks;
+    // Identifier of the file created on commit
+    private Long fileId;
+
+}
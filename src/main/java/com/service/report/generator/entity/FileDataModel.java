@@ -13,7 +13,9 @@ import org.hibernate.annotations.Comment;
 @AllArgsConstructor
 @Entity
 @Comment("The files table stores information about various files uploaded into the system, providing details on each files metadata and facilitating efficient file management and retrieval.")
-@Table(name = "files")
+@Table(name = "files",
+        indexes = @Index(name = "idx_fil_hash", columnList = "fil_hash")
+)
 public class FileDataModel extends Auditable{
 
     @Id
@@ -42,4 +44,24 @@ public class FileDataModel extends Auditable{
     @Column(name = "fil_ctg", nullable = false)
     private FileCategory fileCategory;
 
+    @Comment("This column stores the SHA-256 hash of the file content, computed while the file is uploaded.")
+    @Column(name = "fil_hash", length = 64)
+    private String contentHash;
+
+    @Comment("This column stores the size of the file in bytes.")
+    @Column(name = "fil_size")
+    private Long fileSize;
+
+    @Comment("This column stores the number of data rows below the header of an uncompressed CSV file.")
+    @Column(name = "fil_rows")
+    private Long rowCount;
+
+    @Comment("This column stores the number of columns in the header of an input CSV file.")
+    @Column(name = "fil_columns")
+    private Integer columnCount;
+
+    @Comment("This column stores the position of the reference key column in the header of an input CSV file, if present.")
+    @Column(name = "fil_key_col")
+    private Integer keyColumnIndex;
+
 }
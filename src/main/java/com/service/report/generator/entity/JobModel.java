@@ -1,6 +1,7 @@
 package com.service.report.generator.entity;
 
 
+import com.service.report.generator.tag.JobPriority;
 import com.service.report.generator.tag.JobStatus;
 import com.service.report.generator.tag.JobType;
 import com.service.report.generator.tag.ScheduleType;
@@ -20,7 +21,11 @@ import java.time.Instant;
 @AllArgsConstructor
 @Entity
 @Table(name = "job",
-        indexes = @Index(name = "idx_job_uid", columnList = "job_uid")
+        indexes = {
+                @Index(name = "idx_job_uid", columnList = "job_uid"),
+                @Index(name = "idx_job_ready", columnList = "job_status, sdl_at, job_attempts"),
+                @Index(name = "idx_job_lease", columnList = "job_status, job_lease_expires_at")
+        }
 )
 public class JobModel extends Auditable{
 
@@ -63,4 +68,20 @@ public class JobModel extends Auditable{
     @Column(name = "sdl_type", nullable = false)
     private ScheduleType scheduleType;
 
+    // Jobs created before priorities existed have none and run as NORMAL
+    @Builder.Default
+    @Column(name = "job_priority")
+    private JobPriority priority = JobPriority.NORMAL;
+
+    // The lease columns are only changed through the lease queries of JobRepository, so saving a job read before a
+    // lease renewal never rolls the lease back
+    @Column(name = "job_lease_owner", insertable = false, updatable = false)
+    private Long leaseOwner;
+
+    @Column(name = "job_lease_expires_at", insertable = false, updatable = false)
+    private Instant leaseExpiresAt;
+
+    @Column(name = "job_started_at", insertable = false, updatable = false)
+    private Instant startedAt;
+
 }
@@ -0,0 +1,38 @@
+package com.service.report.generator.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * A job message waiting to be published to RabbitMQ. It is written in the same transaction as the job state change
+ * it announces, and deleted once the broker confirmed it.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "outbox")
+public class OutboxMessageModel {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "obx_id")
+    private Long id;
+
+    @Column(name = "obx_exchange", nullable = false)
+    private String exchange;
+
+    @Column(name = "obx_routing_key", nullable = false)
+    private String routingKey;
+
+    @Column(name = "obx_job_id", nullable = false)
+    private Long jobId;
+
+    @Column(name = "obx_created_at", nullable = false)
+    private Instant createdAt;
+
+}
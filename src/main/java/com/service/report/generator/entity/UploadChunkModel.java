@@ -0,0 +1,35 @@
+package com.service.report.generator.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "upload_chunk",
+        uniqueConstraints = @UniqueConstraint(name = "uk_upc_chunk", columnNames = {"ups_id", "upc_index"})
+)
+public class UploadChunkModel {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "upc_id")
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "ups_id", nullable = false)
+    private UploadSessionModel uploadSession;
+
+    @Column(name = "upc_index", nullable = false)
+    private int chunkIndex;
+
+    // When the chunk was first received, which keeps an upload still sending chunks from expiring
+    @Column(name = "upc_received_at")
+    private Instant receivedAt;
+
+}
@@ -0,0 +1,60 @@
+package com.service.report.generator.entity;
+
+import com.service.report.generator.tag.UploadStatus;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+import org.hibernate.annotations.Comment;
+
+@Getter
+@Setter
+@SuperBuilder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Comment("The upload_session table tracks files uploaded in numbered chunks, so that an interrupted upload can be resumed.")
+@Table(name = "upload_session",
+        indexes = @Index(name = "idx_ups_uid", columnList = "ups_uid")
+)
+public class UploadSessionModel extends Auditable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "ups_id")
+    private Long id;
+
+    @Column(name = "ups_uid", unique = true, nullable = false)
+    private String uploadUid;
+
+    @Comment("This column stores the original name of file given by user.")
+    @Column(name = "ups_origin", nullable = false)
+    private String fileOriginal;
+
+    @Comment("This column stores the name of the file being written.")
+    @Column(name = "ups_name", nullable = false)
+    private String fileName;
+
+    @Comment("This column stores the path of the file being written.")
+    @Column(name = "ups_path", nullable = false)
+    private String filePath;
+
+    @Comment("This column stores the size of the complete file in bytes.")
+    @Column(name = "ups_size", nullable = false)
+    private long fileSize;
+
+    @Comment("This column stores the size of every chunk but the last one, in bytes.")
+    @Column(name = "ups_chunk_size", nullable = false)
+    private int chunkSize;
+
+    @Comment("This column stores the number of chunks of the file.")
+    @Column(name = "ups_chunks", nullable = false)
+    private int chunkCount;
+
+    @Column(name = "ups_status", nullable = false)
+    private UploadStatus status;
+
+    @Comment("This column stores the identifier of the file created on commit.")
+    @Column(name = "ups_file_id")
+    private Long fileId;
+
+}
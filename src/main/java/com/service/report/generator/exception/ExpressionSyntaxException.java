@@ -0,0 +1,12 @@
+package com.service.report.generator.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class ExpressionSyntaxException extends BaseException {
+    public ExpressionSyntaxException(String expression, int position) {
+        super(HttpStatus.BAD_REQUEST, buildErrorMessage(expression, position));
+    }
+    private static String buildErrorMessage(String expression, int position) {
+        return "Unsupported expression (" + expression + ") at position " + position + ".";
+    }
+}
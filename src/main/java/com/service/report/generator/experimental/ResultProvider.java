@@ -0,0 +1,6 @@
+package com.service.report.generator.experimental;
+
+@FunctionalInterface
+public interface ResultProvider<T, R> {
+    R execute(T t) throws Exception;
+}
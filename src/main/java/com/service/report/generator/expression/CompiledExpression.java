@@ -0,0 +1,232 @@
+package com.service.report.generator.expression;
+
+/**
+ * Arithmetic expression parsed once by {@link ExpressionCompiler} into a tree of nodes that is evaluated
+ * directly against primitive doubles. Evaluation allocates nothing and the expression is safe to share between threads.
+ */
+public final class CompiledExpression {
+
+    private final Node root;
+    private final int[] placeholders;
+
+    CompiledExpression(Node root, int[] placeholders) {
+        this.root = root;
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * @return The distinct `<>>>N<<<>` placeholder numbers, in operand slot order.
+     */
+    public int[] getPlaceholders() {
+        return placeholders.clone();
+    }
+
+    public int getOperandCount() {
+        return placeholders.length;
+    }
+
+    /**
+     * Evaluates the expression.
+     * @param operands The operand values, indexed by slot (see {@link #getPlaceholders()}).
+     * @return The result of the expression.
+     */
+    public double evaluate(double[] operands) {
+        return root.evaluate(operands);
+    }
+
+
+
+    abstract static class Node {
+        abstract double evaluate(double[] operands);
+
+        boolean isConstant() {
+            return false;
+        }
+    }
+
+    static final class Constant extends Node {
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        double evaluate(double[] operands) {
+            return value;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+    }
+
+    static final class Operand extends Node {
+        private final int slot;
+
+        Operand(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        double evaluate(double[] operands) {
+            return operands[slot];
+        }
+    }
+
+    static final class Negate extends Node {
+        private final Node operand;
+
+        Negate(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        double evaluate(double[] operands) {
+            return -operand.evaluate(operands);
+        }
+    }
+
+    static final class Add extends Node {
+        private final Node left;
+        private final Node right;
+
+        Add(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double evaluate(double[] operands) {
+            return left.evaluate(operands) + right.evaluate(operands);
+        }
+    }
+
+    static final class Subtract extends Node {
+        private final Node left;
+        private final Node right;
+
+        Subtract(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double evaluate(double[] operands) {
+            return left.evaluate(operands) - right.evaluate(operands);
+        }
+    }
+
+    static final class Multiply extends Node {
+        private final Node left;
+        private final Node right;
+
+        Multiply(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double evaluate(double[] operands) {
+            return left.evaluate(operands) * right.evaluate(operands);
+        }
+    }
+
+    static final class Divide extends Node {
+        private final Node left;
+        private final Node right;
+
+        Divide(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double evaluate(double[] operands) {
+            return left.evaluate(operands) / right.evaluate(operands);
+        }
+    }
+
+    static final class Remainder extends Node {
+        private final Node left;
+        private final Node right;
+
+        Remainder(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double evaluate(double[] operands) {
+            return left.evaluate(operands) % right.evaluate(operands);
+        }
+    }
+
+    static final class Min extends Node {
+        private final Node[] arguments;
+
+        Min(Node[] arguments) {
+            this.arguments = arguments;
+        }
+
+        @Override
+        double evaluate(double[] operands) {
+            double result = Double.POSITIVE_INFINITY;
+            for (Node argument : arguments)
+                result = Math.min(result, argument.evaluate(operands));
+            return result;
+        }
+    }
+
+    static final class Max extends Node {
+        private final Node[] arguments;
+
+        Max(Node[] arguments) {
+            this.arguments = arguments;
+        }
+
+        @Override
+        double evaluate(double[] operands) {
+            double result = Double.NEGATIVE_INFINITY;
+            for (Node argument : arguments)
+                result = Math.max(result, argument.evaluate(operands));
+            return result;
+        }
+    }
+
+    /**
+     * Rounds to the nearest integer like JavaScript's {@code Math.round}: halves round towards positive infinity, and
+     * values between -0.5 and 0 round to -0.
+     */
+    static final class Round extends Node {
+        private final Node operand;
+
+        Round(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        double evaluate(double[] operands) {
+            double value = operand.evaluate(operands);
+            double floor = Math.floor(value);
+            // Unlike floor(value + 0.5), this is exact for the largest double below 0.5 and for large values
+            double rounded = value - floor >= 0.5d ? floor + 1 : floor;
+            return 0 == rounded && value < 0 ? -0.0d : rounded;
+        }
+    }
+
+    static final class Abs extends Node {
+        private final Node operand;
+
+        Abs(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        double evaluate(double[] operands) {
+            return Math.abs(operand.evaluate(operands));
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+package com.service.report.generator.expression;
+
+import com.service.report.generator.exception.ExpressionSyntaxException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles transformation expressions such as {@code <>>>0<<<> / <>>>1<<<> * <>>>2<<<>} into a {@link CompiledExpression}.
+ * Supported grammar:
+ * <pre>
+ * expression := term (('+' | '-') term)*
+ * term       := unary (('*' | '/' | '%') unary)*
+ * unary      := ('-' | '+') unary | primary
+ * primary    := number | placeholder | '(' expression ')' | function '(' expression (',' expression)* ')'
+ * function   := 'Math.' ('min' | 'max' | 'round' | 'abs')
+ * </pre>
+ * Sub-expressions without placeholders are folded into constants at compile time.
+ */
+@Component
+public class ExpressionCompiler {
+
+    private static final String PLACEHOLDER_PREFIX = "<>>>";
+    private static final String PLACEHOLDER_SUFFIX = "<<<>";
+
+
+
+    /**
+     * Parses the given expression.
+     * @param expression The expression to be compiled.
+     * @return The compiled expression.
+     * @throws ExpressionSyntaxException if the expression is outside the supported grammar.
+     */
+    public CompiledExpression compile(String expression) {
+        if (null == expression)
+            throw new ExpressionSyntaxException(null, 0);
+
+        Parser parser = new Parser(expression);
+        CompiledExpression.Node root = parser.parseExpression();
+        parser.skipWhitespace();
+        if (!parser.isAtEnd())
+            throw parser.error();
+
+        return new CompiledExpression(
+                root,
+                parser.placeholderSlots.keySet().stream().mapToInt(Integer::intValue).toArray()
+        );
+    }
+
+
+
+    private static final class Parser {
+
+        private final String expression;
+        private int position;
+        // Distinct placeholders in order of first appearance, mapped to their operand slot
+        private final Map<Integer, Integer> placeholderSlots = new LinkedHashMap<>();
+
+        private Parser(String expression) {
+            this.expression = expression;
+        }
+
+        private CompiledExpression.Node parseExpression() {
+            CompiledExpression.Node node = parseTerm();
+            while (true) {
+                if (consume('+')) {
+                    CompiledExpression.Node right = parseTerm();
+                    node = fold(new CompiledExpression.Add(node, right), node, right);
+                } else if (consume('-')) {
+                    CompiledExpression.Node right = parseTerm();
+                    node = fold(new CompiledExpression.Subtract(node, right), node, right);
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private CompiledExpression.Node parseTerm() {
+            CompiledExpression.Node node = parseUnary();
+            while (true) {
+                if (consume('*')) {
+                    CompiledExpression.Node right = parseUnary();
+                    node = fold(new CompiledExpression.Multiply(node, right), node, right);
+                } else if (consume('/')) {
+                    CompiledExpression.Node right = parseUnary();
+                    node = fold(new CompiledExpression.Divide(node, right), node, right);
+                } else if (consume('%')) {
+                    CompiledExpression.Node right = parseUnary();
+                    node = fold(new CompiledExpression.Remainder(node, right), node, right);
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private CompiledExpression.Node parseUnary() {
+            if (consume('-')) {
+                CompiledExpression.Node operand = parseUnary();
+                return fold(new CompiledExpression.Negate(operand), operand);
+            }
+            if (consume('+'))
+                return parseUnary();
+
+            return parsePrimary();
+        }
+
+        private CompiledExpression.Node parsePrimary() {
+            skipWhitespace();
+            if (isAtEnd())
+                throw error();
+
+            if (expression.startsWith(PLACEHOLDER_PREFIX, position))
+                return parsePlaceholder();
+
+            char ch = expression.charAt(position);
+            if (consume('(')) {
+                CompiledExpression.Node node = parseExpression();
+                expect(')');
+                return node;
+            }
+            if (Character.isDigit(ch) || '.' == ch)
+                return parseNumber();
+            if (Character.isLetter(ch))
+                return parseFunction();
+
+            throw error();
+        }
+
+        private CompiledExpression.Node parsePlaceholder() {
+            position += PLACEHOLDER_PREFIX.length();
+            int start = position;
+            while (!isAtEnd() && Character.isDigit(expression.charAt(position)))
+                position++;
+
+            if (start == position || !expression.startsWith(PLACEHOLDER_SUFFIX, position))
+                throw error();
+
+            int placeholder = Integer.parseInt(expression.substring(start, position));
+            position += PLACEHOLDER_SUFFIX.length();
+            return new CompiledExpression.Operand(
+                    placeholderSlots.computeIfAbsent(placeholder, key -> placeholderSlots.size())
+            );
+        }
+
+        private CompiledExpression.Node parseNumber() {
+            int start = position;
+            while (!isAtEnd() && (Character.isDigit(expression.charAt(position)) || '.' == expression.charAt(position)))
+                position++;
+
+            // Optional exponent, e.g. 1.5e-3
+            if (!isAtEnd() && ('e' == expression.charAt(position) || 'E' == expression.charAt(position))) {
+                position++;
+                if (!isAtEnd() && ('+' == expression.charAt(position) || '-' == expression.charAt(position)))
+                    position++;
+                while (!isAtEnd() && Character.isDigit(expression.charAt(position)))
+                    position++;
+            }
+
+            try {
+                return new CompiledExpression.Constant(Double.parseDouble(expression.substring(start, position)));
+            } catch (NumberFormatException exception) {
+                position = start;
+                throw error();
+            }
+        }
+
+        private CompiledExpression.Node parseFunction() {
+            int start = position;
+            while (!isAtEnd() && (Character.isLetter(expression.charAt(position)) || '.' == expression.charAt(position)))
+                position++;
+
+            // Unprefixed names are not defined in JavaScript, so only the Math form is a function
+            String name = expression.substring(start, position);
+            if (!name.startsWith("Math.")) {
+                position = start;
+                throw error();
+            }
+            name = name.substring("Math.".length());
+
+            expect('(');
+            List<CompiledExpression.Node> arguments = new ArrayList<>();
+            arguments.add(parseExpression());
+            while (consume(','))
+                arguments.add(parseExpression());
+            expect(')');
+
+            CompiledExpression.Node[] args = arguments.toArray(CompiledExpression.Node[]::new);
+            // As in JavaScript, arguments beyond those a function takes are ignored
+            CompiledExpression.Node node = switch (name) {
+                case "min" -> new CompiledExpression.Min(args);
+                case "max" -> new CompiledExpression.Max(args);
+                case "round" -> new CompiledExpression.Round(args[0]);
+                case "abs" -> new CompiledExpression.Abs(args[0]);
+                default -> null;
+            };
+
+            if (null == node) {
+                position = start;
+                throw error();
+            }
+            return fold(node, args);
+        }
+
+        /**
+         * Replaces the node by its value when all of its inputs are constants.
+         */
+        private static CompiledExpression.Node fold(CompiledExpression.Node node, CompiledExpression.Node... inputs) {
+            for (CompiledExpression.Node input : inputs) {
+                if (!input.isConstant())
+                    return node;
+            }
+            return new CompiledExpression.Constant(node.evaluate(null));
+        }
+
+        private boolean consume(char expected) {
+            skipWhitespace();
+            if (!isAtEnd() && expected == expression.charAt(position)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char expected) {
+            if (!consume(expected))
+                throw error();
+        }
+
+        private void skipWhitespace() {
+            while (!isAtEnd() && Character.isWhitespace(expression.charAt(position)))
+                position++;
+        }
+
+        private boolean isAtEnd() {
+            return position >= expression.length();
+        }
+
+        private ExpressionSyntaxException error() {
+            return new ExpressionSyntaxException(expression, position);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.service.report.generator.join;
+
+import com.service.report.generator.reference.CompactReferenceIndex;
+import com.service.report.generator.reference.ReferenceIndex;
+import com.service.report.generator.transformer.RulePlan;
+import com.service.report.generator.csv.CsvReader;
+import com.service.report.generator.csv.CsvTokenizer;
+
+import java.io.IOException;
+
+/**
+ * Joins the main file against reference indexes that can be looked up randomly. The main file is either streamed on
+ * the calling thread or run through a {@link ScanPipeline}.
+ */
+public class HashJoin implements ReportJoin {
+
+    private final JoinInput main;
+    private final ReferenceIndex ref1Index;
+    private final ReferenceIndex ref2Index;
+    private final ScanPipeline scanPipeline;
+
+    public HashJoin(JoinInput main, ReferenceIndex ref1Index, ReferenceIndex ref2Index) {
+        this(main, ref1Index, ref2Index, null);
+    }
+
+    /**
+     * @param scanPipeline The pipeline transforming the main file, or null to stream it on the calling thread.
+     */
+    public HashJoin(JoinInput main, ReferenceIndex ref1Index, ReferenceIndex ref2Index, ScanPipeline scanPipeline) {
+        this.main = main;
+        this.ref1Index = ref1Index;
+        this.ref2Index = ref2Index;
+        this.scanPipeline = scanPipeline;
+    }
+
+    @Override
+    public void execute(RulePlan rulePlan, RowWriter writer) throws IOException {
+        if (null != scanPipeline) {
+            // The plan and the indexes are immutable, so batches can be transformed concurrently
+            scanPipeline.execute(
+                    main,
+                    (mainRecord, id) -> rulePlan.execute(mainRecord, ref1Index.find(id), ref2Index.find(id)),
+                    writer
+            );
+            return;
+        }
+
+        try (CsvReader mainReader = main.openReader()) {
+            String[] header = mainReader.readHeader();
+            if (null == header)
+                return;
+            int keyColumn = main.resolveKeyColumn(header);
+
+            // Process each record in the main file
+            CsvTokenizer mainRecord;
+            while (null != (mainRecord = mainReader.next())) {
+                // Retrieve corresponding reference records
+                String id = mainRecord.get(keyColumn);
+
+                // Execute the compiled plan against the joined records
+                writer.write(rulePlan.execute(
+                        mainRecord,
+                        ref1Index.find(id),
+                        ref2Index.find(id)
+                ));
+            }
+        }
+    }
+
+
+
+    /**
+     * Loads a CSV file into a compact index keyed by its key column. Only the given columns of each
+     * record are decoded and retained, packed into shared arrays rather than kept as individual CSV records.
+     * @param input The CSV file to be loaded, or null.
+     * @param columns The column indexes to be kept for each record.
+     * @return An index where the keys are values from the key column, or an empty index when there is no input.
+     * @throws IOException if an error occurs while reading the file.
+     */
+    public static ReferenceIndex loadReferenceIndex(
+            JoinInput input,
+            int[] columns
+    ) throws IOException {
+        if (null == input)
+            return ReferenceIndex.EMPTY;
+
+        CompactReferenceIndex.Builder builder = CompactReferenceIndex.builder(columns);
+        try (CsvReader reader = input.openReader()) {
+            String[] header = reader.readHeader();
+            if (null == header)
+                return builder.build();
+            int keyColumn = input.resolveKeyColumn(header);
+
+            // Iterate over each record in the CSV file
+            CsvTokenizer record;
+            while (null != (record = reader.next())) {
+                // Add the key and the projected columns of the record to the index
+                builder.add(record.get(keyColumn), record::getOrNull);
+            }
+        }
+        // Return the populated index
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.service.report.generator.join;
+
+import com.service.report.generator.csv.CompressedInput;
+import com.service.report.generator.csv.CsvReader;
+import com.service.report.generator.csv.ReadAheadInputStream;
+import com.service.report.generator.exception.InvalidDataException;
+import com.service.report.generator.tag.FileCompression;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+
+/**
+ * A CSV input of a join, with its join key given either by column name or by column index.
+ */
+@Getter
+@AllArgsConstructor
+public class JoinInput {
+
+    private static final int READ_AHEAD_BLOCK_SIZE = 1 << 20;
+    private static final int READ_AHEAD_BLOCKS = 4;
+
+    private final String filePath;
+    private final String keyColumnName;
+    private final int keyColumnIndex;
+    // Hash of the file content, or null when it is not known
+    private final String contentHash;
+
+    public static JoinInput byName(String filePath, String keyColumnName) {
+        return new JoinInput(filePath, keyColumnName, -1, null);
+    }
+
+    public static JoinInput byIndex(String filePath, int keyColumnIndex) {
+        return new JoinInput(filePath, null, keyColumnIndex, null);
+    }
+
+    public JoinInput withContentHash(String contentHash) {
+        return new JoinInput(filePath, keyColumnName, keyColumnIndex, contentHash);
+    }
+
+    /**
+     * @return A description of the key column, stable across jobs.
+     */
+    public String describeKeyColumn() {
+        return null == keyColumnName ? "#" + keyColumnIndex : keyColumnName;
+    }
+
+    /**
+     * Opens the content of the file. Compressed files are decompressed on a read-ahead thread, so decompression
+     * overlaps with parsing.
+     * @throws InvalidDataException if a zip file does not hold exactly one entry.
+     */
+    public InputStream openStream() throws IOException {
+        InputStream inputStream = CompressedInput.open(Paths.get(filePath));
+        if (FileCompression.NONE == FileCompression.of(filePath))
+            return inputStream;
+        return new ReadAheadInputStream(inputStream, READ_AHEAD_BLOCK_SIZE, READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * Opens the file for parsing in the platform charset; its first record is used as the header.
+     */
+    public CSVParser open() throws IOException {
+        // Set up the CSVFormat with header and skip header record
+        CSVFormat format = CSVFormat.DEFAULT.builder()
+                .setHeader() // Indicates the first record should be used as headers
+                .setSkipHeaderRecord(true) // Skip the header record while reading data
+                .build();
+        return new CSVParser(new BufferedReader(new InputStreamReader(openStream(), Charset.defaultCharset())), format);
+    }
+
+    /**
+     * Opens the file for tokenizing in the platform charset; fields are only decoded when read.
+     */
+    public CsvReader openReader() throws IOException {
+        return new CsvReader(openStream(), Charset.defaultCharset());
+    }
+
+    /**
+     * @param header The fields of the header record.
+     * @return The index of the key column; when a name occurs more than once, its last occurrence.
+     * @throws InvalidDataException if the key column is missing from the header.
+     */
+    public int resolveKeyColumn(String[] header) {
+        if (null == keyColumnName)
+            return keyColumnIndex;
+
+        for (int columnIndex = header.length - 1; columnIndex >= 0; columnIndex--) {
+            if (keyColumnName.equals(header[columnIndex]))
+                return columnIndex;
+        }
+        throw new InvalidDataException("Column (" + keyColumnName + ") is missing in the input file.");
+    }
+
+    /**
+     * @param parser A parser opened by {@link #open()}.
+     * @return The index of the key column.
+     * @throws InvalidDataException if the key column is missing from the header.
+     */
+    public int resolveKeyColumn(CSVParser parser) {
+        if (null == keyColumnName)
+            return keyColumnIndex;
+
+        Integer columnIndex = parser.getHeaderMap().get(keyColumnName);
+        if (null == columnIndex)
+            throw new InvalidDataException("Column (" + keyColumnName + ") is missing in the input file.");
+        return columnIndex;
+    }
+
+}
@@ -0,0 +1,321 @@
+package com.service.report.generator.join;
+
+import com.service.report.generator.reference.CompactReferenceIndex;
+import com.service.report.generator.reference.ReferenceIndex;
+import com.service.report.generator.tag.RecordSource;
+import com.service.report.generator.transformer.FieldSource;
+import com.service.report.generator.transformer.RulePlan;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Grace hash join for inputs larger than the heap.
+ * <p>
+ * The main file and the reference files are first hash-partitioned on the join key into temporary files, keeping
+ * only the key and the columns the plan reads. Each partition is then joined on its own, so only one partition of
+ * each reference file has to fit in memory. Every main row carries its ordinal through the partitions, and as the
+ * rows of a partition stay in main file order, a final k-way merge restores the original output order.
+ * <p>
+ * At most {@value #MAX_OPEN_FILES} partition files are open at once: with more partitions, each input is partitioned in
+ * several passes over a range of partitions each, and the joined partitions are merged in several rounds.
+ */
+@Slf4j
+public class PartitionedHashJoin implements ReportJoin {
+
+    // Distinguishes missing values from empty ones in the temporary files
+    private static final CSVFormat PARTITION_FORMAT = CSVFormat.DEFAULT.builder()
+            .setNullString("\\N")
+            .build();
+    // Bounds the file descriptors and write buffers a join holds
+    private static final int MAX_OPEN_FILES = 64;
+
+    private final JoinInput main;
+    private final JoinInput ref1;
+    private final JoinInput ref2;
+    private final int partitions;
+    private final Path workDirectory;
+
+    /**
+     * @param main The main file.
+     * @param ref1 The first reference file, or null.
+     * @param ref2 The second reference file, or null.
+     * @param partitions The number of partitions; each partition of the reference files must fit in memory.
+     * @param workDirectory The directory under which the temporary partition files are created.
+     */
+    public PartitionedHashJoin(JoinInput main, JoinInput ref1, JoinInput ref2, int partitions, Path workDirectory) {
+        this.main = main;
+        this.ref1 = ref1;
+        this.ref2 = ref2;
+        this.partitions = Math.max(1, partitions);
+        this.workDirectory = workDirectory;
+    }
+
+    @Override
+    public void execute(RulePlan rulePlan, RowWriter writer) throws IOException {
+        Files.createDirectories(workDirectory);
+        Path directory = Files.createTempDirectory(workDirectory, "join-");
+        try {
+            int[] mainColumns = rulePlan.getReferencedColumns(RecordSource.MAIN);
+            int[] ref1Columns = rulePlan.getReferencedColumns(RecordSource.REFERENCE_1);
+            int[] ref2Columns = rulePlan.getReferencedColumns(RecordSource.REFERENCE_2);
+
+            // Phase 1: hash-partition every input on the join key
+            partition(main, mainColumns, directory, RecordSource.MAIN, true);
+            if (null != ref1)
+                partition(ref1, ref1Columns, directory, RecordSource.REFERENCE_1, false);
+            if (null != ref2)
+                partition(ref2, ref2Columns, directory, RecordSource.REFERENCE_2, false);
+
+            // Phase 2: join partition by partition, holding one partition of each reference file in memory
+            for (int partition = 0; partition < partitions; partition++) {
+                joinPartition(rulePlan, directory, partition, mainColumns, ref1Columns, ref2Columns);
+            }
+
+            // Phase 3: merge the joined partitions back into main file order
+            merge(directory, writer);
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+
+
+    private void partition(
+            JoinInput input,
+            int[] columns,
+            Path directory,
+            RecordSource source,
+            boolean withOrdinal
+    ) throws IOException {
+        // Each pass writes a range of partitions, so only that many files are open
+        for (int first = 0; first < partitions; first += MAX_OPEN_FILES) {
+            int last = Math.min(partitions, first + MAX_OPEN_FILES);
+            CSVPrinter[] printers = new CSVPrinter[last - first];
+            try (CSVParser parser = input.open()) {
+                int keyColumn = input.resolveKeyColumn(parser);
+                int offset = withOrdinal ? 2 : 1;
+
+                for (CSVRecord record : parser) {
+                    String key = record.get(keyColumn);
+                    int partition = partitionOf(key);
+                    if (partition < first || partition >= last)
+                        continue;
+
+                    Object[] row = new Object[offset + columns.length];
+                    if (withOrdinal)
+                        row[0] = parser.getRecordNumber();
+                    row[offset - 1] = key;
+                    for (int i = 0; i < columns.length; i++)
+                        row[offset + i] = columns[i] < record.size() ? record.get(columns[i]) : null;
+
+                    if (null == printers[partition - first])
+                        printers[partition - first] = new CSVPrinter(Files.newBufferedWriter(partitionFile(directory, source, partition)), PARTITION_FORMAT);
+                    printers[partition - first].printRecord(row);
+                }
+            } finally {
+                for (CSVPrinter printer : printers) {
+                    if (null != printer)
+                        printer.close();
+                }
+            }
+        }
+    }
+
+
+
+    private void joinPartition(
+            RulePlan rulePlan,
+            Path directory,
+            int partition,
+            int[] mainColumns,
+            int[] ref1Columns,
+            int[] ref2Columns
+    ) throws IOException {
+        Path mainPartition = partitionFile(directory, RecordSource.MAIN, partition);
+        if (!Files.exists(mainPartition))
+            return;
+
+        ReferenceIndex ref1Index = loadPartition(partitionFile(directory, RecordSource.REFERENCE_1, partition), ref1Columns);
+        ReferenceIndex ref2Index = loadPartition(partitionFile(directory, RecordSource.REFERENCE_2, partition), ref2Columns);
+        int[] mainSlots = slotsOf(mainColumns);
+
+        try (
+                CSVParser parser = CSVParser.parse(Files.newBufferedReader(mainPartition), PARTITION_FORMAT);
+                CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(outputFile(directory, partition)), PARTITION_FORMAT)
+        ) {
+            for (CSVRecord record : parser) {
+                String key = record.get(1);
+                FieldSource mainRow = column -> valueOf(record, 2, mainSlots, column);
+
+                Object[] outputData = rulePlan.execute(mainRow, ref1Index.find(key), ref2Index.find(key));
+                Object[] row = new Object[1 + outputData.length];
+                row[0] = record.get(0);
+                System.arraycopy(outputData, 0, row, 1, outputData.length);
+                printer.printRecord(row);
+            }
+        }
+    }
+
+
+
+    private static ReferenceIndex loadPartition(Path partitionFile, int[] columns) throws IOException {
+        if (!Files.exists(partitionFile))
+            return ReferenceIndex.EMPTY;
+
+        int[] slots = slotsOf(columns);
+        CompactReferenceIndex.Builder builder = CompactReferenceIndex.builder(columns);
+        try (CSVParser parser = CSVParser.parse(Files.newBufferedReader(partitionFile), PARTITION_FORMAT)) {
+            for (CSVRecord record : parser) {
+                builder.add(record.get(0), column -> valueOf(record, 1, slots, column));
+            }
+        }
+        return builder.build();
+    }
+
+
+
+    private void merge(Path directory, RowWriter writer) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            Path outputFile = outputFile(directory, partition);
+            if (Files.exists(outputFile))
+                files.add(outputFile);
+        }
+
+        // Merge groups of files into larger ordered files until the rest can be merged at once
+        for (int round = 0; files.size() > MAX_OPEN_FILES; round++) {
+            List<Path> mergedFiles = new ArrayList<>();
+            for (int first = 0; first < files.size(); first += MAX_OPEN_FILES) {
+                List<Path> group = files.subList(first, Math.min(files.size(), first + MAX_OPEN_FILES));
+                Path mergedFile = directory.resolve("merged-" + round + "-" + mergedFiles.size() + ".csv");
+                try (CSVPrinter printer = new CSVPrinter(Files.newBufferedWriter(mergedFile), PARTITION_FORMAT)) {
+                    merge(group, printer::printRecord);
+                }
+                for (Path file : group)
+                    Files.delete(file);
+                mergedFiles.add(mergedFile);
+            }
+            files = mergedFiles;
+        }
+
+        merge(files, record -> {
+            Object[] row = new Object[record.size() - 1];
+            for (int i = 0; i < row.length; i++)
+                row[i] = record.get(i + 1);
+            writer.write(row);
+        });
+    }
+
+    private static void merge(List<Path> files, RecordSink sink) throws IOException {
+        List<CSVParser> parsers = new ArrayList<>();
+        try {
+            // Each file is ordered by main row ordinal, so the smallest head is always the next row
+            PriorityQueue<PartitionCursor> queue = new PriorityQueue<>(Comparator.comparingLong(PartitionCursor::ordinal));
+            for (Path file : files) {
+                CSVParser parser = CSVParser.parse(Files.newBufferedReader(file), PARTITION_FORMAT);
+                parsers.add(parser);
+                PartitionCursor cursor = new PartitionCursor(parser.iterator());
+                if (cursor.advance())
+                    queue.add(cursor);
+            }
+
+            while (!queue.isEmpty()) {
+                PartitionCursor cursor = queue.poll();
+                sink.accept(cursor.current);
+
+                if (cursor.advance())
+                    queue.add(cursor);
+            }
+        } finally {
+            for (CSVParser parser : parsers)
+                parser.close();
+        }
+    }
+
+
+
+    /**
+     * Maps a key to a partition using the high bits of a multiplicative hash, so that the partitions stay
+     * independent of the low hash bits used by the in-memory index of each partition.
+     */
+    private int partitionOf(String key) {
+        long hash = (key.hashCode() * 0x9E3779B9L) & 0xFFFFFFFFL;
+        return (int) ((hash * partitions) >>> 32);
+    }
+
+    private static String valueOf(CSVRecord record, int offset, int[] slots, int column) {
+        if (column < 0 || column >= slots.length || slots[column] < 0)
+            return null;
+        return record.get(offset + slots[column]);
+    }
+
+    private static int[] slotsOf(int[] columns) {
+        int[] slots = new int[Arrays.stream(columns).max().orElse(-1) + 1];
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < columns.length; i++)
+            slots[columns[i]] = i;
+        return slots;
+    }
+
+    private static Path partitionFile(Path directory, RecordSource source, int partition) {
+        return directory.resolve(source.name().toLowerCase() + "-" + partition + ".csv");
+    }
+
+    private static Path outputFile(Path directory, int partition) {
+        return directory.resolve("joined-" + partition + ".csv");
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            });
+        } catch (IOException | UncheckedIOException exception) {
+            log.warn("Failed to delete join work directory ({}): {}", directory, exception.getMessage());
+        }
+    }
+
+
+
+    private interface RecordSink {
+        void accept(CSVRecord record) throws IOException;
+    }
+
+    private static final class PartitionCursor {
+        private final Iterator<CSVRecord> records;
+        private CSVRecord current;
+        private long ordinal;
+
+        private PartitionCursor(Iterator<CSVRecord> records) {
+            this.records = records;
+        }
+
+        private boolean advance() {
+            if (!records.hasNext())
+                return false;
+
+            current = records.next();
+            ordinal = Long.parseLong(current.get(0));
+            return true;
+        }
+
+        private long ordinal() {
+            return ordinal;
+        }
+    }
+
+}
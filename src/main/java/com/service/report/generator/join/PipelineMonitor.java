@@ -0,0 +1,29 @@
+package com.service.report.generator.join;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the scan pipelines currently running, so their stage queue depths can be inspected.
+ */
+@Component
+public class PipelineMonitor {
+
+    private final Set<ScanPipeline.Stats> running = ConcurrentHashMap.newKeySet();
+
+    void register(ScanPipeline.Stats stats) {
+        running.add(stats);
+    }
+
+    void unregister(ScanPipeline.Stats stats) {
+        running.remove(stats);
+    }
+
+    public List<ScanPipeline.Stats> getRunning() {
+        return List.copyOf(running);
+    }
+
+}
@@ -0,0 +1,223 @@
+package com.service.report.generator.join;
+
+import com.service.report.generator.csv.CsvReader;
+import com.service.report.generator.csv.CsvTokenizer;
+import com.service.report.generator.properties.report.ReportConfigProperties;
+import com.service.report.generator.reference.MappedReferenceIndex;
+import com.service.report.generator.reference.ReferenceIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent {@link MappedReferenceIndex} files kept in the document directory, named after the content hash of the
+ * reference file and the projection they hold. An index is built the first time a reference file is joined with a
+ * given projection; later jobs map the existing file, and recently used indexes stay mapped between jobs.
+ * <p>
+ * Each use of an index file renews its modification time, so that {@link #purgeIndexes(Duration, Predicate)} can drop
+ * the indexes no job used for a while.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ReferenceIndexStore {
+
+    private static final String INDEX_FILE_PATTERN = "*.idx*";
+    private static final int BUILD_LOCK_STRIPES = 64;
+
+    private final ReportConfigProperties reportConfigProperties;
+    // Striped by file name, so the lock of an index is the same for as long as the application runs
+    private final Object[] buildLocks = Stream.generate(Object::new).limit(BUILD_LOCK_STRIPES).toArray();
+    private Map<String, MappedReferenceIndex> openIndexes;
+
+    @Value("${app.upload.dir.doc}")
+    private String documentDirectory;
+
+    /**
+     * Opens the persistent index of a reference file, building it first when it does not exist yet.
+     * @param input The reference file; its content hash must be known.
+     * @param columns The column indexes to be kept for each row.
+     * @return The index, or an empty index when there is no input.
+     * @throws IOException if the file cannot be read or the index cannot be written.
+     */
+    public ReferenceIndex open(JoinInput input, int[] columns) throws IOException {
+        if (null == input)
+            return ReferenceIndex.EMPTY;
+        if (null == input.getContentHash())
+            throw new IllegalArgumentException("The content hash of the reference file is not known.");
+
+        String signature = signatureOf(input, columns);
+        String fileName = indexFileName(input, signature);
+
+        Path indexFile = Paths.get(documentDirectory, fileName);
+        MappedReferenceIndex index = cached(fileName);
+        if (null != index && index.getSignature().equals(signature)) {
+            markUsed(indexFile);
+            return index;
+        }
+
+        // Only one job builds a given index; the others wait and map the finished file
+        synchronized (buildLock(fileName)) {
+            index = Files.exists(indexFile) ? MappedReferenceIndex.open(indexFile, signature) : null;
+
+            if (null == index) {
+                long start = System.nanoTime();
+                index = build(input, columns, indexFile, signature);
+                log.info("Built reference index {} ({} keys) in {} ms.", fileName, index.size(), (System.nanoTime() - start) / 1_000_000);
+            } else {
+                markUsed(indexFile);
+            }
+
+            cache(fileName, index);
+            return index;
+        }
+    }
+
+
+
+    /**
+     * Deletes the index files of contents no longer stored, the index files no job used within the retention period,
+     * and the leftovers of interrupted builds. Jobs holding a deleted index keep reading their mapping.
+     * @param retention How long an unused index file is kept.
+     * @param isContentStored Whether a content hash still belongs to a stored input file.
+     * @return The number of deleted files.
+     */
+    public int purgeIndexes(Duration retention, Predicate<String> isContentStored) {
+        Path directory = Paths.get(documentDirectory);
+        if (!Files.isDirectory(directory))
+            return 0;
+
+        Instant unusedSince = Instant.now().minus(retention);
+        Map<String, Boolean> storedContents = new HashMap<>();
+        int deleted = 0;
+        try (DirectoryStream<Path> indexFiles = Files.newDirectoryStream(directory, INDEX_FILE_PATTERN)) {
+            for (Path indexFile : indexFiles) {
+                String fileName = indexFile.getFileName().toString();
+                int separator = fileName.lastIndexOf('-');
+                // Builds write to temporary files next to the index, which are only purged by age
+                boolean complete = fileName.endsWith(".idx") && 0 < separator;
+
+                synchronized (buildLock(fileName)) {
+                    try {
+                        boolean orphaned = complete && !storedContents.computeIfAbsent(fileName.substring(0, separator), isContentStored::test);
+                        if (!orphaned && Files.getLastModifiedTime(indexFile).toInstant().isAfter(unusedSince))
+                            continue;
+
+                        uncache(fileName);
+                        if (Files.deleteIfExists(indexFile))
+                            deleted++;
+                    } catch (IOException e) {
+                        log.warn("Could not purge reference index ({}): {}", fileName, e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not list the reference indexes: {}", e.getMessage());
+        }
+        return deleted;
+    }
+
+
+
+    /**
+     * @param input The reference file; without a content hash it has no index.
+     * @param columns The column indexes to be kept for each row.
+     * @return Whether {@link #open(JoinInput, int[])} would find the index of this content and projection built.
+     */
+    public boolean hasIndex(JoinInput input, int[] columns) {
+        if (null == input || null == input.getContentHash())
+            return false;
+
+        String signature = signatureOf(input, columns);
+        String fileName = indexFileName(input, signature);
+        MappedReferenceIndex index = cached(fileName);
+        return null != index && index.getSignature().equals(signature)
+                || Files.isRegularFile(Paths.get(documentDirectory, fileName));
+    }
+
+
+
+    private static MappedReferenceIndex build(JoinInput input, int[] columns, Path indexFile, String signature) throws IOException {
+        Files.createDirectories(indexFile.toAbsolutePath().getParent());
+        try (
+                MappedReferenceIndex.Writer writer = MappedReferenceIndex.writer(indexFile, signature, columns);
+                CsvReader reader = input.openReader()
+        ) {
+            String[] header = reader.readHeader();
+            if (null != header) {
+                int keyColumn = input.resolveKeyColumn(header);
+                CsvTokenizer record;
+                while (null != (record = reader.next()))
+                    writer.add(record.get(keyColumn), record::getOrNull);
+            }
+
+            MappedReferenceIndex index = writer.finish();
+            if (null == index)
+                throw new IOException("Reference index (" + indexFile + ") could not be read back.");
+            return index;
+        }
+    }
+
+    private static String signatureOf(JoinInput input, int[] columns) {
+        return input.describeKeyColumn() + ":" + Arrays.stream(columns)
+                .mapToObj(Integer::toString)
+                .collect(Collectors.joining(","));
+    }
+
+    private static String indexFileName(JoinInput input, String signature) {
+        return String.format("%s-%08x.idx", input.getContentHash(), signature.hashCode());
+    }
+
+    private Object buildLock(String fileName) {
+        return buildLocks[Math.floorMod(fileName.hashCode(), BUILD_LOCK_STRIPES)];
+    }
+
+    private static void markUsed(Path indexFile) {
+        try {
+            Files.setLastModifiedTime(indexFile, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            log.debug("Could not mark reference index ({}) as used: {}", indexFile, e.getMessage());
+        }
+    }
+
+    private synchronized MappedReferenceIndex cached(String fileName) {
+        return null == openIndexes ? null : openIndexes.get(fileName);
+    }
+
+    private synchronized void cache(String fileName, MappedReferenceIndex index) {
+        if (null == openIndexes) {
+            int capacity = Math.max(1, reportConfigProperties.getJoin().getIndexCacheSize());
+            // Least recently used indexes are dropped and unmapped once collected
+            openIndexes = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MappedReferenceIndex> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+        openIndexes.put(fileName, index);
+    }
+
+    private synchronized void uncache(String fileName) {
+        if (null != openIndexes)
+            openIndexes.remove(fileName);
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.service.report.generator.join;
+
+import com.service.report.generator.transformer.RulePlan;
+
+import java.io.IOException;
+
+/**
+ * Strategy for joining the main file with its reference files on the join key.
+ */
+public interface ReportJoin {
+
+    /**
+     * Streams the main file, looks up the matching reference rows for each main row, applies the plan and
+     * writes the output row.
+     * @param rulePlan The compiled transformation rules.
+     * @param writer The receiver of the output rows.
+     * @throws IOException if reading an input or writing the output fails.
+     */
+    void execute(RulePlan rulePlan, RowWriter writer) throws IOException;
+
+}
@@ -0,0 +1,11 @@
+package com.service.report.generator.join;
+
+import java.io.IOException;
+
+/**
+ * Receives the transformed output rows of a join, in main file order.
+ */
+@FunctionalInterface
+public interface RowWriter {
+    void write(Object[] row) throws IOException;
+}
@@ -0,0 +1,373 @@
+package com.service.report.generator.join;
+
+import com.service.report.generator.csv.CsvChunker;
+import com.service.report.generator.csv.CsvTokenizer;
+import com.service.report.generator.transformer.FieldSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Transforms the records of a CSV file in three stages connected by queues of record batches:
+ * <ol>
+ *     <li>a reader thread splits the file into batches of whole records;</li>
+ *     <li>a pool of workers parses each batch, joins and transforms its records;</li>
+ *     <li>the calling thread writes the transformed batches, in file order unless ordering is disabled.</li>
+ * </ol>
+ * The reader needs a permit for every batch it reads, and a permit is only returned once the batch is written, so a
+ * slow writer stalls the reader instead of letting batches pile up in memory.
+ */
+@Slf4j
+public class ScanPipeline {
+
+    private static final AtomicInteger PIPELINE_NUMBER = new AtomicInteger();
+
+    private final int threads;
+    private final int chunkSize;
+    private final int queueCapacity;
+    private final boolean ordered;
+    private final PipelineMonitor monitor;
+
+    /**
+     * @param threads The number of transform workers.
+     * @param chunkSize The target number of bytes per batch.
+     * @param queueCapacity The number of batches the reader may queue ahead of the workers.
+     * @param ordered Whether the output must follow the order of the input records.
+     * @param monitor Receives the statistics of running pipelines, or null.
+     */
+    public ScanPipeline(int threads, int chunkSize, int queueCapacity, boolean ordered, PipelineMonitor monitor) {
+        this.threads = Math.max(1, threads);
+        this.chunkSize = chunkSize;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.ordered = ordered;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Transforms one record. Called concurrently, so implementations must be thread-safe; the record can only be
+     * read during the call.
+     */
+    @FunctionalInterface
+    public interface RecordTransformer {
+        Object[] transform(FieldSource record, String key);
+    }
+
+    /**
+     * Transforms every record of the input after its header.
+     * @param input The input file; its first record is the header.
+     * @param transformer Produces the output row of a record.
+     * @param writer The receiver of the output rows, only called from the calling thread.
+     * @throws IOException if reading the input or writing the output fails.
+     */
+    public void execute(JoinInput input, RecordTransformer transformer, RowWriter writer) throws IOException {
+        int pipeline = PIPELINE_NUMBER.incrementAndGet();
+        Run run = new Run(input, transformer, new Stats("scan-" + pipeline, input.getFilePath()));
+        ExecutorService executor = Executors.newFixedThreadPool(1 + threads, threadFactory(pipeline));
+
+        if (null != monitor)
+            monitor.register(run.stats);
+        try {
+            executor.execute(run::read);
+            for (int i = 0; i < threads; i++)
+                executor.execute(run::transform);
+            run.write(writer);
+
+            log.debug("Pipeline {} wrote {} rows from {} batches.", run.stats.getName(), run.stats.getRowsWritten(), run.stats.getBatchesRead());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning " + input.getFilePath());
+        } finally {
+            executor.shutdownNow();
+            if (null != monitor)
+                monitor.unregister(run.stats);
+        }
+    }
+
+
+
+    private static ThreadFactory threadFactory(int pipeline) {
+        AtomicInteger thread = new AtomicInteger();
+        return runnable -> {
+            int number = thread.getAndIncrement();
+            Thread worker = new Thread(runnable, "report-scan-" + pipeline + (0 == number ? "-reader" : "-worker-" + number));
+            worker.setDaemon(true);
+            return worker;
+        };
+    }
+
+    /**
+     * State of one execution, shared by its stages.
+     */
+    private final class Run {
+
+        private final JoinInput input;
+        private final RecordTransformer transformer;
+        private final Stats stats;
+        private final Charset charset = Charset.defaultCharset();
+        private final BlockingQueue<Batch> readQueue;
+        private final BlockingQueue<Batch> writeQueue = new LinkedBlockingQueue<>();
+        private final Semaphore permits;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private volatile int keyColumn;
+
+        private Run(JoinInput input, RecordTransformer transformer, Stats stats) {
+            this.input = input;
+            this.transformer = transformer;
+            this.stats = stats;
+            this.readQueue = new ArrayBlockingQueue<>(queueCapacity);
+            // Batches queued for the workers, being transformed, and waiting to be written in order
+            this.permits = new Semaphore(2 * queueCapacity + threads);
+            stats.attach(readQueue, writeQueue, queueCapacity);
+        }
+
+        private void read() {
+            long batches = 0;
+            try (CsvChunker chunker = new CsvChunker(input.openStream(), chunkSize)) {
+                String[] header = readHeader(chunker);
+                if (null != header) {
+                    keyColumn = input.resolveKeyColumn(header);
+
+                    while (true) {
+                        permits.acquire();
+                        byte[] chunk = chunker.next();
+                        if (null == chunk)
+                            break;
+
+                        stats.bytesRead.addAndGet(chunk.length);
+                        stats.batchesRead.incrementAndGet();
+                        readQueue.put(new Batch(batches++, chunk));
+                    }
+                }
+
+                // Stop every worker once the queue is drained
+                for (int i = 0; i < threads; i++)
+                    readQueue.put(Batch.END);
+            } catch (Throwable e) {
+                fail(e);
+            } finally {
+                // Tell the writer how many batches to expect
+                writeQueue.offer(Batch.end(batches));
+            }
+        }
+
+        private String[] readHeader(CsvChunker chunker) throws IOException {
+            CsvTokenizer tokenizer = new CsvTokenizer(charset);
+            byte[] header;
+            while (null != (header = chunker.readHeader())) {
+                tokenizer.reset(header, 0, header.length);
+                if (tokenizer.next())
+                    return tokenizer.toArray();
+            }
+            return null;
+        }
+
+        private void transform() {
+            // Fields are sliced in place and only the columns read by the transformer are decoded
+            CsvTokenizer tokenizer = new CsvTokenizer(charset);
+            try {
+                while (true) {
+                    Batch batch = readQueue.take();
+                    if (Batch.END == batch)
+                        return;
+
+                    stats.activeWorkers.incrementAndGet();
+                    try {
+                        List<Object[]> rows = new ArrayList<>();
+                        tokenizer.reset(batch.chunk, 0, batch.chunk.length);
+                        while (tokenizer.next())
+                            rows.add(transformer.transform(tokenizer, tokenizer.get(keyColumn)));
+                        writeQueue.put(batch.transformed(rows));
+                    } finally {
+                        stats.activeWorkers.decrementAndGet();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+
+        private void write(RowWriter writer) throws IOException, InterruptedException {
+            // Batches completed ahead of the next one to be written, by sequence number
+            Map<Long, Batch> pending = new HashMap<>();
+            long next = 0;
+            long expected = -1;
+
+            while (-1 == expected || next < expected) {
+                Batch batch = writeQueue.take();
+                rethrowFailure();
+
+                if (batch.isEnd()) {
+                    expected = batch.sequence;
+                    continue;
+                }
+                if (!ordered) {
+                    writeBatch(batch, writer);
+                    next++;
+                    continue;
+                }
+
+                pending.put(batch.sequence, batch);
+                stats.reorderDepth.set(pending.size());
+                for (Batch ready; null != (ready = pending.remove(next)); next++)
+                    writeBatch(ready, writer);
+                stats.reorderDepth.set(pending.size());
+            }
+        }
+
+        private void writeBatch(Batch batch, RowWriter writer) throws IOException {
+            for (Object[] row : batch.rows)
+                writer.write(row);
+            stats.rowsWritten.addAndGet(batch.rows.size());
+            stats.batchesWritten.incrementAndGet();
+            permits.release();
+        }
+
+        private void fail(Throwable e) {
+            failure.compareAndSet(null, e);
+            writeQueue.offer(Batch.FAILED);
+        }
+
+        private void rethrowFailure() throws IOException {
+            // Surface the failure of a stage as if it had happened on the calling thread
+            Throwable cause = failure.get();
+            if (null == cause)
+                return;
+            if (cause instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (cause instanceof IOException ioException)
+                throw ioException;
+            if (cause instanceof Error error)
+                throw error;
+            throw new IOException(cause);
+        }
+    }
+
+
+
+    private static final class Batch {
+
+        private static final Batch END = new Batch(-1, null);
+        private static final Batch FAILED = new Batch(-1, null);
+
+        private final long sequence;
+        private final byte[] chunk;
+        private final List<Object[]> rows;
+        private final boolean end;
+
+        private Batch(long sequence, byte[] chunk) {
+            this(sequence, chunk, null, false);
+        }
+
+        private Batch(long sequence, byte[] chunk, List<Object[]> rows, boolean end) {
+            this.sequence = sequence;
+            this.chunk = chunk;
+            this.rows = rows;
+            this.end = end;
+        }
+
+        private static Batch end(long batches) {
+            return new Batch(batches, null, null, true);
+        }
+
+        private Batch transformed(List<Object[]> rows) {
+            return new Batch(sequence, null, rows, false);
+        }
+
+        private boolean isEnd() {
+            return end;
+        }
+    }
+
+
+
+    /**
+     * Live counters of one pipeline execution.
+     */
+    public static final class Stats {
+
+        private final String name;
+        private final String input;
+        private final Instant startedAt = Instant.now();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong batchesRead = new AtomicLong();
+        private final AtomicLong batchesWritten = new AtomicLong();
+        private final AtomicLong rowsWritten = new AtomicLong();
+        private final AtomicInteger activeWorkers = new AtomicInteger();
+        private final AtomicInteger reorderDepth = new AtomicInteger();
+        private BlockingQueue<?> readQueue;
+        private BlockingQueue<?> writeQueue;
+        private int queueCapacity;
+
+        private Stats(String name, String input) {
+            this.name = name;
+            this.input = input;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getInput() {
+            return input;
+        }
+
+        public Instant getStartedAt() {
+            return startedAt;
+        }
+
+        public long getBytesRead() {
+            return bytesRead.get();
+        }
+
+        public long getBatchesRead() {
+            return batchesRead.get();
+        }
+
+        public long getBatchesWritten() {
+            return batchesWritten.get();
+        }
+
+        public long getRowsWritten() {
+            return rowsWritten.get();
+        }
+
+        public int getActiveWorkers() {
+            return activeWorkers.get();
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        private void attach(BlockingQueue<?> readQueue, BlockingQueue<?> writeQueue, int queueCapacity) {
+            this.readQueue = readQueue;
+            this.writeQueue = writeQueue;
+            this.queueCapacity = queueCapacity;
+        }
+
+        /**
+         * @return The number of batches read and waiting for a worker.
+         */
+        public int getReadQueueDepth() {
+            return readQueue.size();
+        }
+
+        /**
+         * @return The number of transformed batches waiting for the writer, including those held back for ordering.
+         */
+        public int getWriteQueueDepth() {
+            return writeQueue.size() + reorderDepth.get();
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.service.report.generator.join;
+
+import com.service.report.generator.exception.InvalidDataException;
+import com.service.report.generator.transformer.FieldSource;
+import com.service.report.generator.transformer.RulePlan;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Joins inputs that are all sorted on the join key by streaming them in lockstep.
+ * <p>
+ * Keys are compared with {@link String#compareTo}, i.e. by UTF-16 code unit, which is byte order for ASCII keys.
+ * Only the current row of each input and the current key group of each reference file are held in memory. The
+ * order of every input is checked while streaming, and an input found out of order fails the join. As with the
+ * in-memory join, the last reference row of a key group is the one joined.
+ */
+public class SortMergeJoin implements ReportJoin {
+
+    private final JoinInput main;
+    private final JoinInput ref1;
+    private final JoinInput ref2;
+
+    /**
+     * @param main The main file, sorted on its key column.
+     * @param ref1 The first reference file sorted on its key column, or null.
+     * @param ref2 The second reference file sorted on its key column, or null.
+     */
+    public SortMergeJoin(JoinInput main, JoinInput ref1, JoinInput ref2) {
+        this.main = main;
+        this.ref1 = ref1;
+        this.ref2 = ref2;
+    }
+
+    @Override
+    public void execute(RulePlan rulePlan, RowWriter writer) throws IOException {
+        try (
+                CSVParser mainParser = main.open();
+                SortedReference ref1Rows = SortedReference.open(ref1);
+                SortedReference ref2Rows = SortedReference.open(ref2)
+        ) {
+            int keyColumn = main.resolveKeyColumn(mainParser);
+            String previousKey = null;
+
+            for (CSVRecord mainRecord : mainParser) {
+                String id = mainRecord.get(keyColumn);
+                checkOrder(previousKey, id, mainParser.getRecordNumber());
+                previousKey = id;
+
+                // Advance the reference files up to the key of the main row
+                writer.write(rulePlan.execute(
+                        mainRecord::get,
+                        ref1Rows.find(id),
+                        ref2Rows.find(id)
+                ));
+            }
+        }
+    }
+
+
+
+    private static void checkOrder(String previousKey, String key, long recordNumber) {
+        if (null != previousKey && previousKey.compareTo(key) > 0)
+            throw new InvalidDataException("Input is not sorted on the join key: record " + recordNumber
+                    + " (" + key + ") follows (" + previousKey + ").");
+    }
+
+
+
+    /**
+     * Forward-only cursor over a sorted reference file.
+     */
+    private static final class SortedReference implements Closeable {
+
+        private static final SortedReference EMPTY = new SortedReference(null, null, 0);
+
+        private final CSVParser parser;
+        private final Iterator<CSVRecord> records;
+        private final int keyColumn;
+        private CSVRecord pending;
+        private String pendingKey;
+        private String groupKey;
+        private FieldSource groupRow;
+
+        private SortedReference(CSVParser parser, Iterator<CSVRecord> records, int keyColumn) {
+            this.parser = parser;
+            this.records = records;
+            this.keyColumn = keyColumn;
+        }
+
+        static SortedReference open(JoinInput input) throws IOException {
+            if (null == input)
+                return EMPTY;
+
+            CSVParser parser = input.open();
+            try {
+                SortedReference reference = new SortedReference(parser, parser.iterator(), input.resolveKeyColumn(parser));
+                reference.advance();
+                return reference;
+            } catch (RuntimeException exception) {
+                parser.close();
+                throw exception;
+            }
+        }
+
+        /**
+         * @param key A key not smaller than any key passed before.
+         * @return The last reference row with the key, or null if there is none.
+         */
+        FieldSource find(String key) {
+            if (null == records || key.equals(groupKey))
+                return groupRow;
+
+            groupKey = key;
+            groupRow = null;
+
+            // Skip the reference rows that no main row refers to
+            while (null != pendingKey && pendingKey.compareTo(key) < 0)
+                advance();
+
+            // Keep the last row of the key group
+            while (null != pendingKey && pendingKey.equals(key)) {
+                CSVRecord record = pending;
+                groupRow = column -> column < record.size() ? record.get(column) : null;
+                advance();
+            }
+            return groupRow;
+        }
+
+        private void advance() {
+            if (!records.hasNext()) {
+                pending = null;
+                pendingKey = null;
+                return;
+            }
+
+            String previousKey = pendingKey;
+            pending = records.next();
+            pendingKey = pending.get(keyColumn);
+            checkOrder(previousKey, pendingKey, parser.getRecordNumber());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (null != parser)
+                parser.close();
+        }
+    }
+
+}
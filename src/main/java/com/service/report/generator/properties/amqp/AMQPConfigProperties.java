@@ -1,9 +1,13 @@
 package com.service.report.generator.properties.amqp;
 
+import com.service.report.generator.tag.JobPriority;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
 
 @Configuration
 @ConfigurationProperties(prefix = "app.amqp")
@@ -12,7 +16,52 @@ import org.springframework.context.annotation.Configuration;
 public class AMQPConfigProperties {
     AMQPType queue;
     AMQPType routingKey;
+    AMQPListenerProperties listener = new AMQPListenerProperties();
+    // Consumers and report workers of the priority lane, apart from those of the standard lane
+    AMQPListenerProperties priorityListener = new AMQPListenerProperties();
+    // Jobs whose input files total at most this size are given a high priority
+    DataSize priorityMaxInputSize = DataSize.ofMegabytes(64);
     String exchange;
     long retryDelay;
     int retryLimit;
+    // Ready jobs read from the database per query when publishing
+    int pollPageSize = 100;
+    // Milliseconds a started job stays leased to an instance without being renewed
+    long leaseDuration = 600_000;
+    // Time a claimed or retrying job may wait for its message to be delivered before the message is deemed lost and
+    // published again; long enough for a backlog to drain
+    Duration dispatchTimeout = Duration.ofHours(6);
+    // Outbox messages published per confirmed batch
+    int outboxBatchSize = 500;
+    // Time the relay waits for the broker to confirm a batch
+    Duration confirmTimeout = Duration.ofSeconds(10);
+
+    // Exchange routing failed jobs to the retry queues and exhausted jobs to the dead-letter queue
+    public String getRetryExchange() {
+        return exchange + ".retry";
+    }
+
+    // Queue of the lane running the jobs of the given priority
+    public String getLaneQueue(JobPriority priority) {
+        return JobPriority.HIGH == priority ? queue.getPriority() : queue.getStandard();
+    }
+
+    // Routing key of the lane running the jobs of the given priority
+    public String getLaneRoutingKey(JobPriority priority) {
+        return JobPriority.HIGH == priority ? routingKey.getPriority() : routingKey.getStandard();
+    }
+
+    // Queue holding the jobs of the given lane after their given failed attempt, until its delay ends
+    public String getRetryQueue(JobPriority priority, int attempt) {
+        return getLaneQueue(priority) + ".retry." + attempt;
+    }
+
+    public String getDeadLetterQueue(JobPriority priority) {
+        return getLaneQueue(priority) + ".dlq";
+    }
+
+    // Delay before retrying a job after its given failed attempt, doubling with each attempt
+    public long getRetryDelay(int attempt) {
+        return retryDelay << Math.min(Math.max(0, attempt - 1), 20);
+    }
 }
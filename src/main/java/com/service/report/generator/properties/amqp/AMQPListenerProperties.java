@@ -0,0 +1,29 @@
+package com.service.report.generator.properties.amqp;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class AMQPListenerProperties {
+    // Consumers of the standard queue started with the application
+    int concurrency = 1;
+    // Consumers the standard queue may scale up to under load
+    int maxConcurrency = 4;
+    // Unacknowledged messages the broker sends ahead to each consumer
+    int prefetch = 10;
+    // Job ids handed to the listener at once; 1 delivers them one by one
+    int batchSize = 1;
+    // Time a consumer waits for more messages before handing over a partial batch
+    Duration batchReceiveTimeout = Duration.ofSeconds(1);
+    // Reports executed at once by this instance; 0 sizes it to the processors and the join memory budget
+    int maxConcurrentJobs;
+    // Heap the reports running at once on this instance may take by their estimates; 0 uses 3/4 of the maximum heap
+    DataSize memoryBudget = DataSize.ofBytes(0);
+    // Time a job waits for memory before it is handed back to the queue
+    Duration admissionTimeout = Duration.ofMinutes(5);
+}
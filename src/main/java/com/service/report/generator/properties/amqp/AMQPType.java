@@ -7,5 +7,6 @@ import lombok.Setter;
 @Setter
 public class AMQPType {
     String standard;
+    String priority;
     String mailer;
 }
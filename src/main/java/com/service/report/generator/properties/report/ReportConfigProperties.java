@@ -0,0 +1,16 @@
+package com.service.report.generator.properties.report;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.report")
+@Getter
+@Setter
+public class ReportConfigProperties {
+    ReportJoinProperties join = new ReportJoinProperties();
+    ReportScanProperties scan = new ReportScanProperties();
+    ReportOutputProperties output = new ReportOutputProperties();
+}
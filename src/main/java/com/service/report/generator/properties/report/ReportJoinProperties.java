@@ -0,0 +1,22 @@
+package com.service.report.generator.properties.report;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class ReportJoinProperties {
+    // Heap the reference indexes of one job may take before the join spills to disk partitions
+    DataSize memoryBudget = DataSize.ofMegabytes(512);
+    // Number of disk partitions; 0 derives it from the reference file sizes and the memory budget
+    int partitions;
+    // Whether reference files are indexed once into memory-mapped files reused by later jobs
+    boolean persistentIndex = true;
+    // Number of opened persistent indexes kept mapped between jobs
+    int indexCacheSize = 64;
+    // How long a persistent index no job used is kept on disk
+    Duration indexRetention = Duration.ofDays(7);
+}
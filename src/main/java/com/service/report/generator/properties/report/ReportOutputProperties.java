@@ -0,0 +1,25 @@
+package com.service.report.generator.properties.report;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+@Getter
+@Setter
+public class ReportOutputProperties {
+    // Charset of the generated report files
+    Charset charset = StandardCharsets.UTF_8;
+    // Bytes buffered between writes to the output file
+    DataSize bufferSize = DataSize.ofMegabytes(4);
+    // Whether the output file is forced to the storage device once complete
+    boolean fsync;
+    // Threads compressing the blocks of compressed output; 0 uses every available processor
+    int compressionThreads;
+    // Deflate level of compressed output, from 1 (fastest) to 9 (smallest)
+    int compressionLevel = 6;
+    // Uncompressed bytes per independently compressed gzip member
+    DataSize compressionBlockSize = DataSize.ofMegabytes(1);
+}
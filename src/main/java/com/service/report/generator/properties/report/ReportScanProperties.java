@@ -0,0 +1,20 @@
+package com.service.report.generator.properties.report;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.util.unit.DataSize;
+
+@Getter
+@Setter
+public class ReportScanProperties {
+    // Whether the main file is read, transformed and written by separate pipeline stages
+    boolean pipelined = true;
+    // Transform workers of the pipeline; 0 uses every available processor
+    int threads;
+    // Target size of the record-aligned chunks handed to the workers
+    DataSize chunkSize = DataSize.ofMegabytes(4);
+    // Chunks the reader may queue ahead of the workers
+    int queueCapacity = 8;
+    // Whether output rows keep the order of the main file
+    boolean ordered = true;
+}
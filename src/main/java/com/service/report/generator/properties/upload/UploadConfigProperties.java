@@ -0,0 +1,23 @@
+package com.service.report.generator.properties.upload;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "app.upload")
+@Getter
+@Setter
+public class UploadConfigProperties {
+    // Chunk size of an upload session when the client does not choose one
+    DataSize chunkSize = DataSize.ofMegabytes(8);
+    DataSize maxChunkSize = DataSize.ofMegabytes(64);
+    // Prefix of an uploaded file read to validate its header
+    DataSize headerSniffSize = DataSize.ofKilobytes(64);
+    // Upload sessions which received no chunk for this long are dropped with their partial file
+    Duration sessionTimeout = Duration.ofHours(24);
+}
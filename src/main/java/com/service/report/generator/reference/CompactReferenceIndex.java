@@ -0,0 +1,239 @@
+package com.service.report.generator.reference;
+
+import com.service.report.generator.transformer.FieldSource;
+
+import java.util.Arrays;
+
+/**
+ * In-memory {@link ReferenceIndex} that keeps only the projected columns of each row.
+ * <p>
+ * Keys and column values are packed back to back into a single {@code char[]}; an {@code int[]} records where each
+ * field ends (bit-inverted for a missing field), and an open-addressing table with linear probing maps key hashes to
+ * row numbers. There are no per-row objects, so memory is roughly twice the projected character data plus a few ints per row.
+ * When a key occurs more than once, the last row wins.
+ */
+public final class CompactReferenceIndex implements ReferenceIndex {
+
+    private final int[] columnSlots;
+    private final int width;
+    private final char[] chars;
+    private final int[] ends;
+    private final int[] hashes;
+    private final int[] table;
+    private final int mask;
+    private final int size;
+
+    private CompactReferenceIndex(int[] columnSlots, int width, char[] chars, int[] ends, int[] hashes, int[] table, int size) {
+        this.columnSlots = columnSlots;
+        this.width = width;
+        this.chars = chars;
+        this.ends = ends;
+        this.hashes = hashes;
+        this.table = table;
+        this.mask = table.length - 1;
+        this.size = size;
+    }
+
+    public static Builder builder(int[] columns) {
+        return new Builder(columns);
+    }
+
+    @Override
+    public FieldSource find(String key) {
+        if (null == key)
+            return null;
+
+        int hash = spread(key.hashCode());
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (0 == entry)
+                return null;
+
+            int row = entry - 1;
+            if (hashes[row] == hash && fieldEquals(row * width, key))
+                return column -> get(row, column);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The approximate number of bytes retained by this index.
+     */
+    public long estimatedBytes() {
+        return 2L * chars.length + 4L * ((long) ends.length + hashes.length + table.length + columnSlots.length);
+    }
+
+    private String get(int row, int column) {
+        if (column < 0 || column >= columnSlots.length || columnSlots[column] < 0)
+            return null;
+
+        int field = row * width + 1 + columnSlots[column];
+        int end = ends[field];
+        if (end < 0)
+            return null;
+
+        int start = fieldStart(field);
+        return new String(chars, start, end - start);
+    }
+
+    private boolean fieldEquals(int field, String value) {
+        int end = ends[field];
+        if (end < 0)
+            return false;
+
+        int start = fieldStart(field);
+        if (end - start != value.length())
+            return false;
+
+        for (int i = 0; i < value.length(); i++) {
+            if (chars[start + i] != value.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private int fieldStart(int field) {
+        if (0 == field)
+            return 0;
+
+        int previous = ends[field - 1];
+        return previous < 0 ? ~previous : previous;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+
+
+    /**
+     * Accumulates rows into growable packed arrays. Not thread-safe.
+     */
+    public static final class Builder {
+
+        private final int[] columns;
+        private final int[] columnSlots;
+        private final int width;
+        private char[] chars = new char[1 << 16];
+        private int length;
+        private int[] ends = new int[1 << 10];
+        private int fields;
+        private int[] hashes = new int[1 << 8];
+        private int rows;
+
+        private Builder(int[] columns) {
+            this.columns = columns.clone();
+            this.width = 1 + columns.length;
+
+            int maxColumn = Arrays.stream(columns).max().orElse(-1);
+            this.columnSlots = new int[maxColumn + 1];
+            Arrays.fill(columnSlots, -1);
+            for (int i = 0; i < columns.length; i++)
+                columnSlots[columns[i]] = i;
+        }
+
+        /**
+         * Adds a row to the index.
+         * @param key The join key of the row.
+         * @param row The row; only the projected columns are read from it and missing values may be returned as null.
+         */
+        public Builder add(String key, FieldSource row) {
+            if (rows == hashes.length)
+                hashes = Arrays.copyOf(hashes, grow(hashes.length));
+            hashes[rows++] = spread(null == key ? 0 : key.hashCode());
+
+            append(key);
+            for (int column : columns)
+                append(row.get(column));
+            return this;
+        }
+
+        public CompactReferenceIndex build() {
+            // Keep the load factor at or below one half
+            int capacity = Integer.highestOneBit(Math.max(2, rows) * 2 - 1) << 1;
+            int[] table = new int[capacity];
+            int tableMask = capacity - 1;
+
+            int distinct = 0;
+            for (int row = 0; row < rows; row++) {
+                if (ends[row * width] < 0)
+                    continue;
+
+                int slot = hashes[row] & tableMask;
+                while (true) {
+                    int entry = table[slot];
+                    if (0 == entry) {
+                        table[slot] = row + 1;
+                        distinct++;
+                        break;
+                    }
+                    // Same key seen before: the later row replaces it
+                    if (hashes[entry - 1] == hashes[row] && sameKey(entry - 1, row)) {
+                        table[slot] = row + 1;
+                        break;
+                    }
+                    slot = (slot + 1) & tableMask;
+                }
+            }
+
+            return new CompactReferenceIndex(
+                    columnSlots,
+                    width,
+                    Arrays.copyOf(chars, length),
+                    Arrays.copyOf(ends, fields),
+                    Arrays.copyOf(hashes, rows),
+                    table,
+                    distinct
+            );
+        }
+
+        private void append(String value) {
+            if (fields == ends.length)
+                ends = Arrays.copyOf(ends, grow(ends.length));
+
+            if (null == value) {
+                ends[fields++] = ~length;
+                return;
+            }
+
+            if (value.length() > chars.length - length) {
+                long required = (long) length + value.length();
+                if (required > Integer.MAX_VALUE - 8)
+                    throw new IllegalStateException("Reference data exceeds the capacity of an in-memory index.");
+                chars = Arrays.copyOf(chars, (int) Math.max(required, grow(chars.length)));
+            }
+
+            value.getChars(0, value.length(), chars, length);
+            length += value.length();
+            ends[fields++] = length;
+        }
+
+        private boolean sameKey(int left, int right) {
+            int leftField = left * width;
+            int rightField = right * width;
+            int leftStart = start(leftField);
+            int rightStart = start(rightField);
+            int leftLength = ends[leftField] - leftStart;
+            int rightLength = ends[rightField] - rightStart;
+            return leftLength == rightLength
+                    && Arrays.equals(chars, leftStart, leftStart + leftLength, chars, rightStart, rightStart + rightLength);
+        }
+
+        private int start(int field) {
+            if (0 == field)
+                return 0;
+
+            int previous = ends[field - 1];
+            return previous < 0 ? ~previous : previous;
+        }
+
+        private static int grow(int length) {
+            return (int) Math.min(Integer.MAX_VALUE - 8, length + (long) (length >> 1) + 16);
+        }
+    }
+
+}
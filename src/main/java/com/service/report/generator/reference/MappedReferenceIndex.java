@@ -0,0 +1,370 @@
+package com.service.report.generator.reference;
+
+import com.service.report.generator.transformer.FieldSource;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * {@link ReferenceIndex} stored in a binary file and read through memory mappings, so the index takes almost no heap
+ * and its pages are shared by every job, and every process, that opens the same file.
+ * <p>
+ * The file holds a header, an open-addressing table of {@code (int hash, long record offset + 1)} slots with linear
+ * probing, and the records; a record is the key followed by the projected columns, each written as an int length
+ * (-1 for a missing value) and its UTF-8 bytes. Files larger than a single mapping are mapped in segments that
+ * overlap by the longest record, so that every slot and record can be read from one segment.
+ * When a key occurs more than once, the last row wins.
+ */
+public final class MappedReferenceIndex implements ReferenceIndex {
+
+    private static final int MAGIC = 0x52474958;
+    private static final int VERSION = 1;
+    private static final int SLOT_BYTES = 12;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final String signature;
+    private final int[] columnSlots;
+    private final int size;
+    private final int mask;
+    private final long tableStart;
+    private final long dataStart;
+    private final MappedByteBuffer[] segments;
+
+    private MappedReferenceIndex(
+            String signature,
+            int[] columnSlots,
+            int size,
+            int capacity,
+            long tableStart,
+            MappedByteBuffer[] segments
+    ) {
+        this.signature = signature;
+        this.columnSlots = columnSlots;
+        this.size = size;
+        this.mask = capacity - 1;
+        this.tableStart = tableStart;
+        this.dataStart = tableStart + (long) capacity * SLOT_BYTES;
+        this.segments = segments;
+    }
+
+    /**
+     * @param target The index file to be written; it is replaced atomically once complete.
+     * @param signature Describes what the index was built from; it is stored in the file and checked by {@link #open}.
+     * @param columns The column indexes to be kept for each row.
+     */
+    public static Writer writer(Path target, String signature, int[] columns) throws IOException {
+        return new Writer(target, signature, columns);
+    }
+
+    /**
+     * Maps an index file written by a {@link Writer}.
+     * @param file The index file.
+     * @param signature The signature the index must have been written with.
+     * @return The index, or null when the file is not an index with the given signature.
+     * @throws IOException if the file cannot be read.
+     */
+    public static MappedReferenceIndex open(Path file, String signature) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+
+            DataInputStream header = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            try (header) {
+                if (MAGIC != header.readInt() || VERSION != header.readInt())
+                    return null;
+
+                byte[] signatureBytes = new byte[header.readInt()];
+                header.readFully(signatureBytes);
+                String fileSignature = new String(signatureBytes, StandardCharsets.UTF_8);
+                if (!fileSignature.equals(signature))
+                    return null;
+
+                int[] columns = new int[header.readInt()];
+                for (int i = 0; i < columns.length; i++)
+                    columns[i] = header.readInt();
+                int size = header.readInt();
+                int capacity = header.readInt();
+                int maxRecordBytes = header.readInt();
+                long dataLength = header.readLong();
+
+                long tableStart = (long) Integer.BYTES * (3 + columns.length + 4) + signatureBytes.length + Long.BYTES;
+                if (tableStart + (long) capacity * SLOT_BYTES + dataLength != fileSize)
+                    return null;
+
+                return new MappedReferenceIndex(
+                        fileSignature,
+                        slotsOf(columns),
+                        size,
+                        capacity,
+                        tableStart,
+                        map(channel, fileSize, Math.max(SLOT_BYTES, maxRecordBytes))
+                );
+            }
+        } catch (EOFException exception) {
+            return null;
+        }
+    }
+
+    private static MappedByteBuffer[] map(FileChannel channel, long fileSize, int overlap) throws IOException {
+        int count = (int) ((fileSize + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] segments = new MappedByteBuffer[Math.max(1, count)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = (long) i << SEGMENT_SHIFT;
+            long length = Math.min(fileSize - start, (1L << SEGMENT_SHIFT) + overlap);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, length));
+        }
+        return segments;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    @Override
+    public FieldSource find(String key) {
+        if (null == key)
+            return null;
+
+        int hash = spread(key.hashCode());
+        byte[] keyBytes = null;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long position = tableStart + (long) slot * SLOT_BYTES;
+            ByteBuffer segment = segmentOf(position);
+            int index = indexOf(position);
+
+            long entry = segment.getLong(index + Integer.BYTES);
+            if (0 == entry)
+                return null;
+
+            if (segment.getInt(index) == hash) {
+                if (null == keyBytes)
+                    keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+                long record = dataStart + entry - 1;
+                if (keyEquals(record, keyBytes))
+                    return column -> get(record, column);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private boolean keyEquals(long record, byte[] key) {
+        ByteBuffer segment = segmentOf(record);
+        int index = indexOf(record);
+        if (segment.getInt(index) != key.length)
+            return false;
+
+        int start = index + Integer.BYTES;
+        for (int i = 0; i < key.length; i++) {
+            if (segment.get(start + i) != key[i])
+                return false;
+        }
+        return true;
+    }
+
+    private String get(long record, int column) {
+        if (column < 0 || column >= columnSlots.length || columnSlots[column] < 0)
+            return null;
+
+        ByteBuffer segment = segmentOf(record);
+        int index = indexOf(record);
+        // Skip the key and the preceding columns
+        for (int field = 0; field <= columnSlots[column]; field++) {
+            index += Integer.BYTES + Math.max(0, segment.getInt(index));
+        }
+
+        int length = segment.getInt(index);
+        if (length < 0)
+            return null;
+
+        byte[] bytes = new byte[length];
+        segment.get(index + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer segmentOf(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)];
+    }
+
+    private static int indexOf(long position) {
+        return (int) (position & SEGMENT_MASK);
+    }
+
+    private static int[] slotsOf(int[] columns) {
+        int[] slots = new int[Arrays.stream(columns).max().orElse(-1) + 1];
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < columns.length; i++)
+            slots[columns[i]] = i;
+        return slots;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+
+
+    /**
+     * Streams rows into the record section of a new index file, keeping only a hash and an offset per row in memory.
+     * Not thread-safe.
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path target;
+        private final Path dataFile;
+        private final String signature;
+        private final int[] columns;
+        private final DataOutputStream data;
+        private long dataLength;
+        private int maxRecordBytes;
+        private int[] hashes = new int[1 << 10];
+        private long[] offsets = new long[1 << 10];
+        private int rows;
+
+        private Writer(Path target, String signature, int[] columns) throws IOException {
+            this.target = target;
+            this.dataFile = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".data");
+            this.signature = signature;
+            this.columns = columns.clone();
+            this.data = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dataFile), 1 << 16));
+        }
+
+        /**
+         * Adds a row to the index.
+         * @param key The join key of the row; rows without a key are ignored.
+         * @param row The row; only the projected columns are read from it and missing values may be returned as null.
+         */
+        public Writer add(String key, FieldSource row) throws IOException {
+            if (null == key)
+                return this;
+
+            if (rows == hashes.length) {
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            hashes[rows] = spread(key.hashCode());
+            offsets[rows++] = dataLength;
+
+            long start = dataLength;
+            writeField(key);
+            for (int column : columns)
+                writeField(row.get(column));
+            maxRecordBytes = (int) Math.max(maxRecordBytes, dataLength - start);
+            return this;
+        }
+
+        /**
+         * Writes the table and the header, moves the finished file to its target and maps it.
+         */
+        public MappedReferenceIndex finish() throws IOException {
+            data.close();
+
+            // Keep the load factor at or below one half
+            int capacity = Integer.highestOneBit(Math.max(2, rows) * 2 - 1) << 1;
+            int[] table = new int[capacity];
+            int tableMask = capacity - 1;
+            int distinct = 0;
+
+            try (FileChannel records = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+                for (int row = 0; row < rows; row++) {
+                    int slot = hashes[row] & tableMask;
+                    while (true) {
+                        int entry = table[slot];
+                        if (0 == entry) {
+                            table[slot] = row + 1;
+                            distinct++;
+                            break;
+                        }
+                        // Same key seen before: the later row replaces it
+                        if (hashes[entry - 1] == hashes[row] && sameKey(records, offsets[entry - 1], offsets[row])) {
+                            table[slot] = row + 1;
+                            break;
+                        }
+                        slot = (slot + 1) & tableMask;
+                    }
+                }
+            }
+
+            Path indexFile = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile), 1 << 16))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    byte[] signatureBytes = signature.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(signatureBytes.length);
+                    out.write(signatureBytes);
+                    out.writeInt(columns.length);
+                    for (int column : columns)
+                        out.writeInt(column);
+                    out.writeInt(distinct);
+                    out.writeInt(capacity);
+                    out.writeInt(maxRecordBytes);
+                    out.writeLong(dataLength);
+
+                    for (int entry : table) {
+                        out.writeInt(0 == entry ? 0 : hashes[entry - 1]);
+                        out.writeLong(0 == entry ? 0 : offsets[entry - 1] + 1);
+                    }
+                    Files.copy(dataFile, out);
+                }
+                Files.move(indexFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(indexFile);
+                Files.deleteIfExists(dataFile);
+            }
+
+            return open(target, signature);
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+            Files.deleteIfExists(dataFile);
+        }
+
+        private void writeField(String value) throws IOException {
+            if (null == value) {
+                data.writeInt(-1);
+                dataLength += Integer.BYTES;
+                return;
+            }
+
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+            dataLength += Integer.BYTES + bytes.length;
+        }
+
+        private static boolean sameKey(FileChannel records, long left, long right) throws IOException {
+            return Arrays.equals(readKey(records, left), readKey(records, right));
+        }
+
+        private static byte[] readKey(FileChannel records, long offset) throws IOException {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            readFully(records, length, offset);
+            ByteBuffer key = ByteBuffer.allocate(length.flip().getInt());
+            readFully(records, key, offset + Integer.BYTES);
+            return key.array();
+        }
+
+        private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0)
+                    throw new EOFException();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.service.report.generator.reference;
+
+import com.service.report.generator.transformer.FieldSource;
+
+/**
+ * Read-only lookup of reference rows by their join key. Implementations are safe to share between threads once built.
+ */
+public interface ReferenceIndex {
+
+    ReferenceIndex EMPTY = new ReferenceIndex() {
+        @Override
+        public FieldSource find(String key) {
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+    };
+
+    /**
+     * @param key The join key.
+     * @return The row stored for the key, or null if there is none. Only the indexed columns can be read from the row.
+     */
+    FieldSource find(String key);
+
+    int size();
+
+}
@@ -1,8 +1,13 @@
 package com.service.report.generator.repository;
 
 import com.service.report.generator.entity.FileDataModel;
+import com.service.report.generator.tag.FileCategory;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
+
 public interface FileDataRepository extends JpaRepository<FileDataModel, Long> {
 
+    List<FileDataModel> findByContentHashAndFileCategoryOrderByFileIdAsc(String contentHash, FileCategory fileCategory);
+
 }
@@ -1,8 +1,17 @@
 package com.service.report.generator.repository;
 
 import com.service.report.generator.entity.JobModel;
-import org.springframework.data.jpa.repository.JpaRepository;
+import com.service.report.generator.tag.JobStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface JobRepository extends JpaRepository<JobModel, Long> {
@@ -10,4 +19,201 @@ public interface JobRepository extends JpaRepository<JobModel, Long> {
     Boolean existsByJobUid(String jobId);
     Optional<JobModel> findByJobUid(String jobId);
 
+    /**
+     * Locks a page of jobs due to run, skipping the rows already locked by another instance (FOR UPDATE SKIP LOCKED),
+     * so that concurrent instances claim disjoint batches. The conditions on status, schedule and attempts are served
+     * by the index idx_job_ready; high priority jobs are claimed first. Must be called in a transaction, which holds the
+     * locks until it ends.
+     * @param statuses The statuses of jobs waiting to run.
+     * @param executeAt The current instant; jobs scheduled later are not due.
+     * @param maxAttempts The number of attempts after which a job is given up.
+     * @param lastRanBefore Jobs which last ran at or after this instant are still waiting for their retry delay.
+     * @param pageable The size of the page.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select j from JobModel j " +
+            "where j.status in :statuses and j.executeAt <= :executeAt and j.attempts < :maxAttempts " +
+            "and (j.lastRanAt is null or j.lastRanAt < :lastRanBefore) " +
+            "order by j.priority desc, j.id")
+    List<JobModel> lockReadyJobs(
+            @Param("statuses") Collection<JobStatus> statuses,
+            @Param("executeAt") Instant executeAt,
+            @Param("maxAttempts") int maxAttempts,
+            @Param("lastRanBefore") Instant lastRanBefore,
+            Pageable pageable
+    );
+
+    /**
+     * @return The earliest schedule of the waiting jobs scheduled after the given instant, or null if there is none.
+     */
+    @Query("select min(j.executeAt) from JobModel j " +
+            "where j.status in :statuses and j.attempts < :maxAttempts and j.executeAt > :after")
+    Instant findNextExecuteAt(
+            @Param("statuses") Collection<JobStatus> statuses,
+            @Param("maxAttempts") int maxAttempts,
+            @Param("after") Instant after
+    );
+
+    /**
+     * @return The earliest last run of the waiting jobs which last ran at or after the given instant, or null if there
+     * is none. These jobs become due once their retry delay ends.
+     */
+    @Query("select min(j.lastRanAt) from JobModel j " +
+            "where j.status in :statuses and j.attempts < :maxAttempts and j.lastRanAt >= :lastRanAfter")
+    Instant findEarliestLastRanAt(
+            @Param("statuses") Collection<JobStatus> statuses,
+            @Param("maxAttempts") int maxAttempts,
+            @Param("lastRanAfter") Instant lastRanAfter
+    );
+
+    /**
+     * Leases claimed jobs to an instance until they are started, or until the given dispatch deadline after which their
+     * message is deemed lost.
+     */
+    @Modifying
+    @Query("update JobModel j set j.leaseOwner = :owner, j.leaseExpiresAt = :expiresAt, j.startedAt = null " +
+            "where j.id in :ids")
+    int leaseJobs(
+            @Param("ids") Collection<Long> ids,
+            @Param("owner") Long owner,
+            @Param("expiresAt") Instant expiresAt
+    );
+
+    /**
+     * Takes the lease of a claimed job for its execution. Only one delivery of a job can start it, until the lease
+     * of the started job expires and the job is reclaimed.
+     * @return 1 if the job was started, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("update JobModel j set j.status = com.service.report.generator.tag.JobStatus.RUNNING, " +
+            "j.leaseOwner = :owner, j.leaseExpiresAt = :expiresAt, j.startedAt = :startedAt " +
+            "where j.id = :id and j.startedAt is null " +
+            "and j.status in (com.service.report.generator.tag.JobStatus.RUNNING, com.service.report.generator.tag.JobStatus.RETRYING)")
+    int startLeasedJob(
+            @Param("id") Long id,
+            @Param("owner") Long owner,
+            @Param("startedAt") Instant startedAt,
+            @Param("expiresAt") Instant expiresAt
+    );
+
+    /**
+     * Starts a job which is neither claimed nor running, for its execution outside of the queue, and leases it to an
+     * instance.
+     * @param statuses The statuses of jobs which may be started this way.
+     * @return 1 if the job was started, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("update JobModel j set j.status = com.service.report.generator.tag.JobStatus.RUNNING, " +
+            "j.leaseOwner = :owner, j.leaseExpiresAt = :expiresAt, j.startedAt = :startedAt, " +
+            "j.lastRanAt = :startedAt, j.lastRanBy = :startedBy " +
+            "where j.id = :id and j.startedAt is null and j.status in :statuses")
+    int startIdleJob(
+            @Param("id") Long id,
+            @Param("statuses") Collection<JobStatus> statuses,
+            @Param("owner") Long owner,
+            @Param("startedBy") String startedBy,
+            @Param("startedAt") Instant startedAt,
+            @Param("expiresAt") Instant expiresAt
+    );
+
+    @Modifying
+    @Transactional
+    @Query("update JobModel j set j.leaseExpiresAt = :expiresAt " +
+            "where j.id in :ids and j.leaseOwner = :owner and j.status = com.service.report.generator.tag.JobStatus.RUNNING")
+    int renewJobLeases(
+            @Param("ids") Collection<Long> ids,
+            @Param("owner") Long owner,
+            @Param("expiresAt") Instant expiresAt
+    );
+
+    /**
+     * Records the outcome of a started job and releases its lease, unless the lease was lost in the meantime.
+     * @return 1 if the job was still leased to the owner, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("update JobModel j set j.status = :status, j.attempts = :attempts, " +
+            "j.lastRanAt = :lastRanAt, j.lastRanBy = :lastRanBy, " +
+            "j.leaseOwner = null, j.leaseExpiresAt = null, j.startedAt = null " +
+            "where j.id = :id and j.leaseOwner = :owner and j.startedAt is not null")
+    int finishLeasedJob(
+            @Param("id") Long id,
+            @Param("owner") Long owner,
+            @Param("status") JobStatus status,
+            @Param("attempts") int attempts,
+            @Param("lastRanAt") Instant lastRanAt,
+            @Param("lastRanBy") String lastRanBy
+    );
+
+    /**
+     * Records the failure of a started job which is retried through the broker, and releases its lease. The job
+     * stays out of the ready jobs while it waits, until the given dispatch deadline after which it is published again,
+     * should its retry message be lost.
+     * @return 1 if the job was still leased to the owner, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("update JobModel j set j.status = com.service.report.generator.tag.JobStatus.RETRYING, j.attempts = :attempts, " +
+            "j.leaseOwner = null, j.leaseExpiresAt = :expiresAt, j.startedAt = null " +
+            "where j.id = :id and j.leaseOwner = :owner and j.startedAt is not null")
+    int retryLeasedJob(
+            @Param("id") Long id,
+            @Param("owner") Long owner,
+            @Param("attempts") int attempts,
+            @Param("expiresAt") Instant expiresAt
+    );
+
+    /**
+     * Locks a page of started jobs whose lease expired because their instance stopped, skipping the rows already
+     * locked by another instance. Must be called in a transaction, which holds the locks until it ends.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select j from JobModel j " +
+            "where j.status = com.service.report.generator.tag.JobStatus.RUNNING and j.startedAt is not null " +
+            "and j.leaseExpiresAt < :now " +
+            "order by j.id")
+    List<JobModel> lockExpiredJobs(@Param("now") Instant now, Pageable pageable);
+
+    /**
+     * Returns started jobs whose lease expired to the failed jobs, counting the lost run as an attempt.
+     * @return The number of reclaimed jobs.
+     */
+    @Modifying
+    @Query("update JobModel j set j.status = com.service.report.generator.tag.JobStatus.FAILED, j.attempts = j.attempts + 1, " +
+            "j.leaseOwner = null, j.leaseExpiresAt = null, j.startedAt = null " +
+            "where j.id in :ids and j.status = com.service.report.generator.tag.JobStatus.RUNNING and j.startedAt is not null " +
+            "and j.leaseExpiresAt < :now")
+    int reclaimExpiredJobs(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
+
+    /**
+     * Locks a page of claimed or retrying jobs which were not started by their dispatch deadline, because their
+     * message was lost, skipping the rows already locked by another instance. Must be called in a transaction, which
+     * holds the locks until it ends.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select j from JobModel j " +
+            "where j.status in (com.service.report.generator.tag.JobStatus.RUNNING, com.service.report.generator.tag.JobStatus.RETRYING) " +
+            "and j.startedAt is null and j.leaseExpiresAt < :now " +
+            "order by j.id")
+    List<JobModel> lockUndeliveredJobs(@Param("now") Instant now, Pageable pageable);
+
+    /**
+     * Moves the dispatch deadline of claimed or retrying jobs not started yet, as their message is published again.
+     * @return The number of updated jobs.
+     */
+    @Modifying
+    @Transactional
+    @Query("update JobModel j set j.leaseExpiresAt = :expiresAt " +
+            "where j.id in :ids and j.startedAt is null " +
+            "and j.status in (com.service.report.generator.tag.JobStatus.RUNNING, com.service.report.generator.tag.JobStatus.RETRYING)")
+    int extendDispatchDeadline(
+            @Param("ids") Collection<Long> ids,
+            @Param("expiresAt") Instant expiresAt
+    );
+
 }
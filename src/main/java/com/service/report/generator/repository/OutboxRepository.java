@@ -0,0 +1,25 @@
+package com.service.report.generator.repository;
+
+import com.service.report.generator.entity.OutboxMessageModel;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+import java.util.List;
+
+public interface OutboxRepository extends JpaRepository<OutboxMessageModel, Long> {
+
+    /**
+     * Locks the oldest pending messages, skipping the rows locked by another relay, so that concurrent instances relay
+     * disjoint batches. Must be called in a transaction, which holds the locks until it ends.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select m from OutboxMessageModel m order by m.id")
+    List<OutboxMessageModel> lockPendingMessages(Pageable pageable);
+
+}
@@ -0,0 +1,25 @@
+package com.service.report.generator.repository;
+
+import com.service.report.generator.entity.UploadChunkModel;
+import com.service.report.generator.entity.UploadSessionModel;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface UploadChunkRepository extends JpaRepository<UploadChunkModel, Long> {
+
+    boolean existsByUploadSessionAndChunkIndex(UploadSessionModel uploadSession, int chunkIndex);
+
+    @Query("select c.chunkIndex from UploadChunkModel c where c.uploadSession = :uploadSession")
+    List<Integer> findChunkIndexesByUploadSession(@Param("uploadSession") UploadSessionModel uploadSession);
+
+    @Modifying
+    @Transactional
+    @Query("delete from UploadChunkModel c where c.uploadSession = :uploadSession")
+    void deleteByUploadSession(@Param("uploadSession") UploadSessionModel uploadSession);
+
+}
@@ -0,0 +1,45 @@
+package com.service.report.generator.repository;
+
+import com.service.report.generator.entity.UploadSessionModel;
+import com.service.report.generator.tag.UploadStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSessionModel, Long> {
+
+    Optional<UploadSessionModel> findByUploadUid(String uploadUid);
+
+    /**
+     * @return The sessions with one of the given statuses which neither started nor received a chunk since the given
+     * instant.
+     */
+    @Query("select s from UploadSessionModel s where s.status in :statuses and s.createdAt < :inactiveSince " +
+            "and not exists (select c.id from UploadChunkModel c where c.uploadSession = s and c.receivedAt >= :inactiveSince)")
+    List<UploadSessionModel> findInactiveSessions(
+            @Param("statuses") Collection<UploadStatus> statuses,
+            @Param("inactiveSince") Instant inactiveSince
+    );
+
+    /**
+     * Moves a session from one status to another, only if it still has the expected status, so that concurrent
+     * requests cannot both make the same transition.
+     * @return 1 if the session was updated, 0 otherwise.
+     */
+    @Modifying
+    @Transactional
+    @Query("update UploadSessionModel s set s.status = :status where s.uploadUid = :uploadUid and s.status = :expected")
+    int updateStatus(
+            @Param("uploadUid") String uploadUid,
+            @Param("expected") UploadStatus expected,
+            @Param("status") UploadStatus status
+    );
+
+}
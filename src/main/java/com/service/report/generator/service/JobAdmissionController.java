@@ -0,0 +1,84 @@
+package com.service.report.generator.service;
+
+import com.service.report.generator.properties.amqp.AMQPConfigProperties;
+import com.service.report.generator.properties.amqp.AMQPListenerProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admits report jobs on this instance only while their estimated heap footprints fit in a shared memory budget.
+ * <p>
+ * Jobs are admitted in arrival order, so a large job is not starved by smaller ones arriving after it, except that
+ * priority jobs go ahead of the others. A job larger than the whole budget is admitted alone. Each admitted footprint
+ * must be released once its job is done.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class JobAdmissionController {
+
+    private final AMQPConfigProperties amqpConfigProperties;
+
+    private final Deque<Long> waiting = new ArrayDeque<>();
+    private final Deque<Long> priorityWaiting = new ArrayDeque<>();
+    private long nextTicket;
+    private long reserved;
+
+    /**
+     * Waits until the footprint of a job fits in the memory budget, and reserves it.
+     * @param footprint The estimated heap footprint of the job in bytes.
+     * @param priority Whether the job goes ahead of the waiting jobs without priority.
+     * @return Whether the footprint was reserved; false when it did not fit within the admission timeout.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public synchronized boolean admit(long footprint, boolean priority) throws InterruptedException {
+        long budget = getMemoryBudget();
+        AMQPListenerProperties listener = priority ? amqpConfigProperties.getPriorityListener() : amqpConfigProperties.getListener();
+        long deadline = System.nanoTime() + listener.getAdmissionTimeout().toNanos();
+        Long ticket = nextTicket++;
+        Deque<Long> queue = priority ? priorityWaiting : waiting;
+        queue.addLast(ticket);
+        try {
+            while (!ticket.equals(nextInLine()) || !fits(footprint, budget)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+
+            reserved += footprint;
+            return true;
+        } finally {
+            queue.remove(ticket);
+            // The next job in line may fit now
+            notifyAll();
+        }
+    }
+
+    public synchronized void release(long footprint) {
+        reserved = Math.max(0, reserved - footprint);
+        notifyAll();
+    }
+
+    /**
+     * @return The heap the reports running at once on this instance may take, in bytes.
+     */
+    public long getMemoryBudget() {
+        long memoryBudget = amqpConfigProperties.getListener().getMemoryBudget().toBytes();
+        return 0 < memoryBudget ? memoryBudget : Runtime.getRuntime().maxMemory() / 4 * 3;
+    }
+
+    private Long nextInLine() {
+        return priorityWaiting.isEmpty() ? waiting.peekFirst() : priorityWaiting.peekFirst();
+    }
+
+    private boolean fits(long footprint, long budget) {
+        return 0 == reserved || reserved + footprint <= budget;
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.service.report.generator.service;
+
+import com.service.report.generator.entity.DeviceRegistryModel;
+import com.service.report.generator.entity.JobModel;
+import com.service.report.generator.properties.amqp.AMQPConfigProperties;
+import com.service.report.generator.repository.JobRepository;
+import com.service.report.generator.tag.JobStatus;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes jobs to RabbitMQ at the instant they become due, instead of on a fixed polling interval.
+ * <p>
+ * A single dispatcher thread waits on a delay queue for the earliest known due instant: the schedule of a waiting job,
+ * or the end of the retry delay of a failed one. Each dispatch claims every ready job, then reads the next due instant
+ * from the database and waits for it. Jobs scheduled on this instance wake the dispatcher directly; jobs scheduled on
+ * other instances are picked up by the periodic reconciliation.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class JobDispatcher {
+
+    private static final List<JobStatus> WAITING_STATUSES = List.of(JobStatus.QUEUED, JobStatus.FAILED);
+    // Delay before dispatching again after a failed dispatch, e.g. while the database or broker is unreachable
+    private static final Duration FAILURE_BACKOFF = Duration.ofMinutes(1);
+
+    private final JobProcessor jobProcessor;
+    private final JobRepository jobRepository;
+    private final AMQPConfigProperties amqpConfigProperties;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "job-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> nextDispatch;
+    private Instant nextDispatchAt;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        dispatchAt(Instant.now());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+
+
+    /**
+     * Makes sure a dispatch happens no later than the given instant.
+     * @param dueAt The instant a job becomes due; instants in the past dispatch immediately.
+     */
+    public synchronized void dispatchAt(Instant dueAt) {
+        if (executor.isShutdown())
+            return;
+        if (null != nextDispatch && !nextDispatch.isDone() && !nextDispatchAt.isAfter(dueAt))
+            return;
+
+        if (null != nextDispatch)
+            nextDispatch.cancel(false);
+        nextDispatchAt = dueAt;
+        nextDispatch = executor.schedule(
+                this::dispatch,
+                Math.max(0, Duration.between(Instant.now(), dueAt).toMillis()),
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Makes sure a dispatch happens no later than the given instant, once the current transaction, if any, commits,
+     * so the dispatch sees the job.
+     * @param dueAt The instant a job becomes due.
+     */
+    public void dispatchAfterCommit(Instant dueAt) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            dispatchAt(dueAt);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                dispatchAt(dueAt);
+            }
+        });
+    }
+
+
+
+    /**
+     * Claims the jobs ready to run, one page at a time, leases them to the current instance and adds them to the
+     * RabbitMQ queue. Claimed jobs leave the ready jobs, so each page is new.
+     */
+    public void publishJobsInQueue() {
+
+        DeviceRegistryModel instance = jobProcessor.registerInstance();
+        List<JobModel> claimedJobs;
+        do {
+            // Each page is claimed and added to the outbox in one transaction, then relayed to the queue
+            claimedJobs = jobProcessor.claimReadyJobs(instance);
+            claimedJobs.forEach(job -> log.info("Added Job ({}) in the queue. [{}]", job.getId(), job.getJobType()));
+        } while (claimedJobs.size() == jobProcessor.getClaimPageSize());
+
+    }
+
+
+
+    private void dispatch() {
+        // From here on, a new due instant needs a dispatch of its own
+        synchronized (this) {
+            nextDispatch = null;
+        }
+
+        Instant next;
+        try {
+            publishJobsInQueue();
+            next = findNextDueInstant();
+        } catch (RuntimeException e) {
+            log.error("Dispatching jobs failed, retrying in {}.", FAILURE_BACKOFF, e);
+            next = Instant.now().plus(FAILURE_BACKOFF);
+        }
+
+        if (null != next)
+            dispatchAt(next);
+    }
+
+    /**
+     * @return The earliest instant a waiting job becomes due, or null if no job is waiting.
+     */
+    private Instant findNextDueInstant() {
+        Instant now = Instant.now();
+        int maxAttempts = amqpConfigProperties.getRetryLimit();
+        long retryDelay = amqpConfigProperties.getRetryDelay();
+
+        Instant nextExecuteAt = jobRepository.findNextExecuteAt(WAITING_STATUSES, maxAttempts, now);
+        Instant lastRanAt = jobRepository.findEarliestLastRanAt(WAITING_STATUSES, maxAttempts, now.minusMillis(retryDelay));
+        Instant nextRetryAt = null == lastRanAt ? null : lastRanAt.plusMillis(retryDelay);
+
+        if (null == nextExecuteAt)
+            return nextRetryAt;
+        if (null == nextRetryAt)
+            return nextExecuteAt;
+        return nextExecuteAt.isBefore(nextRetryAt) ? nextExecuteAt : nextRetryAt;
+    }
+
+}
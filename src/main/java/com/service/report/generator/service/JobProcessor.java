@@ -1,8 +1,10 @@
 package com.service.report.generator.service;
 
+import com.service.report.generator.entity.FileDataModel;
 import com.service.report.generator.entity.JobModel;
 import com.service.report.generator.entity.DeviceRegistryModel;
 import com.service.report.generator.properties.amqp.AMQPConfigProperties;
+import com.service.report.generator.repository.FileDataRepository;
 import com.service.report.generator.repository.JobRepository;
 import com.service.report.generator.repository.RegistryRepository;
 import com.service.report.generator.tag.DeviceAddressType;
@@ -11,15 +13,15 @@ import com.service.report.generator.tag.JobType;
 import com.service.report.generator.utility.DeviceIdentityWizard;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZoneOffset;
+import java.util.List;
 import java.util.Optional;
-import java.util.function.Supplier;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 @RequiredArgsConstructor
@@ -27,54 +29,248 @@ public class JobProcessor {
 
     private final AMQPConfigProperties amqpConfigProperties;
     private final DeviceIdentityWizard deviceIdentity;
-    private final RabbitTemplate rabbitTemplate;
+    private final OutboxRelay outboxRelay;
     private final RegistryRepository registryRepository;
     private final JobRepository jobRepository;
+    private final FileDataRepository fileDataRepository;
 
-    boolean isJobAttemptsNotExceeded(int attempts) {
-        return attempts < amqpConfigProperties.getRetryLimit();
-    }
+    private static final List<JobStatus> WAITING_STATUSES = List.of(JobStatus.QUEUED, JobStatus.FAILED);
+    // Jobs neither claimed nor running, which may be executed on demand
+    private static final List<JobStatus> IDLE_STATUSES = List.of(JobStatus.QUEUED, JobStatus.FAILED, JobStatus.SUCCESS, JobStatus.NO_INSTANCE);
+    // Jobs started by this instance and not finished yet, whose leases are renewed
+    private final Set<Long> executingJobs = ConcurrentHashMap.newKeySet();
 
+    int getClaimPageSize() {
+        return Math.max(1, amqpConfigProperties.getPollPageSize());
+    }
 
 
-    boolean isJobReadyToRun(JobModel model) {
 
-        Instant lastRanAt = model.getLastRanAt();
+    /**
+     * Claims one page of jobs ready to run: queued or failed, due, below the attempt limit, and past the retry delay
+     * since their last run. The jobs are marked running and leased to the given instance in a single transaction,
+     * skipping the jobs being claimed by other instances, so a job is never claimed twice. Until a delivery starts a
+     * job, its lease only expires after the dispatch timeout, however long the queue is.
+     * @param instance The registered instance claiming the jobs.
+     * @return The claimed jobs, in ascending identifier order.
+     */
+    @Transactional
+    public List<JobModel> claimReadyJobs(DeviceRegistryModel instance) {
         Instant now = Instant.now();
+        List<JobModel> jobs = jobRepository.lockReadyJobs(
+                WAITING_STATUSES,
+                now,
+                amqpConfigProperties.getRetryLimit(),
+                now.minusMillis(amqpConfigProperties.getRetryDelay()),
+                PageRequest.of(0, getClaimPageSize())
+        );
+        if (jobs.isEmpty())
+            return jobs;
 
-        boolean retryDelayExceeded;
-        if(null == lastRanAt){
-            retryDelayExceeded = true;
-        }else{
-            retryDelayExceeded = (model.getLastRanAt().toEpochMilli() + amqpConfigProperties.getRetryDelay()) < now.toEpochMilli();
+        Instant leaseExpiresAt = now.plus(amqpConfigProperties.getDispatchTimeout());
+        for (JobModel job : jobs) {
+            job.setStatus(JobStatus.RUNNING);
+            job.setLastRanAt(now);
+            job.setLastRanBy(instance.getMacAddress());
+            job.setLeaseOwner(instance.getId());
+            job.setLeaseExpiresAt(leaseExpiresAt);
         }
-
-        return retryDelayExceeded && isExecuteAtBeforeOrEqualToNow(model::getExecuteAt);
+        jobRepository.leaseJobs(jobs.stream().map(JobModel::getId).toList(), instance.getId(), leaseExpiresAt);
+        // Published by the outbox relay once the claim commits
+        jobs.forEach(this::enqueueJob);
+        return jobs;
     }
 
 
 
-    ImmutablePair<Long, JobType> enqueueJob(JobModel model) {
-        String routingKey = switch (model.getJobType()) {
-            case REPORT_GENERATOR -> amqpConfigProperties.getRoutingKey().getStandard();
+    /**
+     * Adds the message of a job to the outbox, in the current transaction if any.
+     * @return The identifier and type of the job, or null if the job type has no queue.
+     */
+    ImmutablePair<Long, JobType> enqueueJob(JobModel job) {
+        String routingKey = switch (job.getJobType()) {
+            case REPORT_GENERATOR -> amqpConfigProperties.getLaneRoutingKey(job.getPriority());
         };
 
-        model.setStatus(JobStatus.RUNNING);
-        model.setLastRanAt(Instant.now());
-        DeviceRegistryModel instance = getInstance();
-        model.setLastRanBy(instance.getMacAddress());
-        JobModel job = jobRepository.saveAndFlush(model);
-
         if (null == routingKey) {
             return null;
         }
 
-        rabbitTemplate.convertAndSend(amqpConfigProperties.getExchange(), routingKey, job.getId());
+        outboxRelay.add(amqpConfigProperties.getExchange(), routingKey, job.getId());
         return ImmutablePair.of(job.getId(), job.getJobType());
     }
 
 
 
+    /**
+     * Publishes a claimed job again, when the instance it was delivered to could not start it. The dispatch deadline
+     * of the job starts over with the new message.
+     * @param jobId The identifier of the job.
+     */
+    @Transactional
+    public void requeueJob(Long jobId) {
+        Optional<JobModel> job = jobRepository.findById(jobId)
+                .filter(model -> null == model.getStartedAt()
+                        && (JobStatus.RUNNING == model.getStatus() || JobStatus.RETRYING == model.getStatus()));
+        if (job.isEmpty())
+            return;
+
+        jobRepository.extendDispatchDeadline(List.of(jobId), Instant.now().plus(amqpConfigProperties.getDispatchTimeout()));
+        enqueueJob(job.get());
+    }
+
+
+
+    /**
+     * Takes the lease of a claimed job for its execution by this instance.
+     * @param jobId The identifier of the delivered job.
+     * @return The started job, or null if the job is missing, not claimed, or already started by another delivery.
+     */
+    public JobModel startJob(Long jobId) {
+        DeviceRegistryModel instance = registerInstance();
+        Instant now = Instant.now();
+        if (0 == jobRepository.startLeasedJob(jobId, instance.getId(), now, now.plusMillis(amqpConfigProperties.getLeaseDuration())))
+            return null;
+
+        executingJobs.add(jobId);
+        return jobRepository.findById(jobId).orElse(null);
+    }
+
+
+
+    /**
+     * Takes the lease of a job which is neither claimed nor running, for its execution on demand by this instance.
+     * The lease is renewed and the outcome recorded as for a delivered job, so the job cannot run twice at once.
+     * @param jobId The identifier of the job.
+     * @return The started job, or null if the job is missing, claimed, retrying or running.
+     */
+    public JobModel startIdleJob(Long jobId) {
+        DeviceRegistryModel instance = registerInstance();
+        Instant now = Instant.now();
+        if (0 == jobRepository.startIdleJob(jobId, IDLE_STATUSES, instance.getId(), instance.getMacAddress(), now, now.plusMillis(amqpConfigProperties.getLeaseDuration())))
+            return null;
+
+        executingJobs.add(jobId);
+        return jobRepository.findById(jobId).orElse(null);
+    }
+
+
+
+    /**
+     * Records the outcome of a started job and releases its lease. A failed job with attempts left is published to the
+     * retry queue of its lane and attempt, whose message TTL delivers it back to the queue of its lane once the backoff
+     * ends; an exhausted job is published to the dead-letter queue of its lane. The output file of a successful job is saved with it.
+     * @param job The started job, holding its final status and attempts.
+     * @param outputFile The output file of the job, not saved yet, or null if the job produced none.
+     * @return Whether the job was still leased to this instance; if not, it has been reclaimed and the outcome, output
+     * file included, is dropped.
+     */
+    @Transactional
+    public boolean finishJob(JobModel job, FileDataModel outputFile) {
+        try {
+            if (JobStatus.FAILED == job.getStatus() && job.getAttempts() < amqpConfigProperties.getRetryLimit()) {
+                String retryQueue = amqpConfigProperties.getRetryQueue(job.getPriority(), job.getAttempts());
+                Instant retryAt = Instant.now().plusMillis(amqpConfigProperties.getRetryDelay(job.getAttempts()));
+                if (0 == jobRepository.retryLeasedJob(job.getId(), job.getLeaseOwner(), job.getAttempts(), retryAt.plus(amqpConfigProperties.getDispatchTimeout())))
+                    return false;
+
+                job.setStatus(JobStatus.RETRYING);
+                outboxRelay.add(amqpConfigProperties.getRetryExchange(), retryQueue, job.getId());
+                return true;
+            }
+
+            Instant now = Instant.now();
+            String instance = deviceIdentity.getDeviceAddress(DeviceAddressType.MAC);
+            if (0 == jobRepository.finishLeasedJob(job.getId(), job.getLeaseOwner(), job.getStatus(), job.getAttempts(), now, instance))
+                return false;
+
+            job.setLastRanAt(now);
+            job.setLastRanBy(instance);
+            if (null != outputFile)
+                fileDataRepository.save(outputFile);
+
+            if (JobStatus.FAILED == job.getStatus())
+                outboxRelay.add(amqpConfigProperties.getRetryExchange(), amqpConfigProperties.getDeadLetterQueue(job.getPriority()), job.getId());
+            return true;
+        } finally {
+            executingJobs.remove(job.getId());
+        }
+    }
+
+
+
+    /**
+     * Extends the leases of the jobs this instance is executing, and records the instance as alive.
+     * @return The number of renewed leases.
+     */
+    public int renewLeases() {
+        DeviceRegistryModel instance = registerInstance();
+        if (executingJobs.isEmpty())
+            return 0;
+
+        Instant leaseExpiresAt = Instant.now().plusMillis(amqpConfigProperties.getLeaseDuration());
+        return jobRepository.renewJobLeases(List.copyOf(executingJobs), instance.getId(), leaseExpiresAt);
+    }
+
+
+
+    /**
+     * Returns one page of started jobs whose lease expired to the failed jobs, so they are claimed again once their
+     * retry delay ends. The lost run counts as an attempt, and a job which runs out of attempts is published to the
+     * dead-letter queue.
+     * @return The number of reclaimed jobs.
+     */
+    @Transactional
+    public int reclaimExpiredLeases() {
+        Instant now = Instant.now();
+        List<JobModel> jobs = jobRepository.lockExpiredJobs(now, PageRequest.of(0, getClaimPageSize()));
+        if (jobs.isEmpty())
+            return 0;
+
+        jobRepository.reclaimExpiredJobs(jobs.stream().map(JobModel::getId).toList(), now);
+        for (JobModel job : jobs) {
+            if (job.getAttempts() + 1 >= amqpConfigProperties.getRetryLimit())
+                outboxRelay.add(amqpConfigProperties.getRetryExchange(), amqpConfigProperties.getDeadLetterQueue(job.getPriority()), job.getId());
+        }
+        return jobs.size();
+    }
+
+
+
+    /**
+     * Publishes again one page of claimed or retrying jobs which no delivery started within the dispatch timeout,
+     * because their message was lost. Their attempts are unchanged, and should the first message arrive after all,
+     * only one delivery starts the job.
+     * @return The number of published jobs.
+     */
+    @Transactional
+    public int redispatchUndeliveredJobs() {
+        Instant now = Instant.now();
+        List<JobModel> jobs = jobRepository.lockUndeliveredJobs(now, PageRequest.of(0, getClaimPageSize()));
+        if (jobs.isEmpty())
+            return 0;
+
+        jobRepository.extendDispatchDeadline(jobs.stream().map(JobModel::getId).toList(), now.plus(amqpConfigProperties.getDispatchTimeout()));
+        jobs.forEach(this::enqueueJob);
+        return jobs.size();
+    }
+
+
+
+    /**
+     * Retrieves the registry entry of the current instance, saving it when it is new, and records the instance as
+     * alive. Leases are granted to the identifier of this entry.
+     * @return The saved registry entry of the current instance.
+     */
+    public DeviceRegistryModel registerInstance() {
+        DeviceRegistryModel instance = getInstance();
+        instance.setIpAddress(deviceIdentity.getDeviceAddress(DeviceAddressType.IP));
+        instance.setLastUpdateReceived(Instant.now());
+        return registryRepository.save(instance);
+    }
+
+
+
 
     /**
      * Retrieves the instance from the registry based on the current device's MAC address.
@@ -103,12 +299,4 @@ public class JobProcessor {
 
 
 
-    private boolean isExecuteAtBeforeOrEqualToNow(Supplier<Instant> specifiedExecuteAt) {
-        LocalDateTime executeAt = specifiedExecuteAt.get().atZone(ZoneId.of("UTC")).toLocalDateTime();
-        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
-        return executeAt.isBefore(now) || executeAt.isEqual(now);
-    }
-
-
-
 }
@@ -0,0 +1,130 @@
+package com.service.report.generator.service;
+
+import com.service.report.generator.entity.OutboxMessageModel;
+import com.service.report.generator.properties.amqp.AMQPConfigProperties;
+import com.service.report.generator.repository.OutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Publishes the job messages of the outbox to RabbitMQ.
+ * <p>
+ * Messages are added to the outbox in the transaction which changes the state of their job, so a job is announced
+ * if and only if its change commits. The relay publishes them in batches on one channel, waits for the broker to
+ * confirm the whole batch, and only then deletes them; a batch which is not confirmed stays in the outbox and is
+ * published again. A message may thus be delivered twice, which the conditional start of a job tolerates, but never lost.
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+
+    private final OutboxRepository outboxRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final AMQPConfigProperties amqpConfigProperties;
+    // Batches run in transactions of their own, also when relaying right after another transaction committed
+    private final TransactionTemplate transactionTemplate;
+
+    public OutboxRelay(
+            OutboxRepository outboxRepository,
+            RabbitTemplate rabbitTemplate,
+            AMQPConfigProperties amqpConfigProperties,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.outboxRepository = outboxRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.amqpConfigProperties = amqpConfigProperties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Adds a job message to the outbox, in the current transaction if any, and relays the outbox once it commits.
+     */
+    public void add(String exchange, String routingKey, Long jobId) {
+        outboxRepository.save(OutboxMessageModel.builder()
+                .exchange(exchange)
+                .routingKey(routingKey)
+                .jobId(jobId)
+                .createdAt(Instant.now())
+                .build()
+        );
+        relayAfterCommit();
+    }
+
+    /**
+     * Relays the outbox once the current transaction commits, or right away outside a transaction. Each transaction
+     * triggers a single relay, however many messages it added.
+     */
+    public void relayAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            relayQuietly();
+            return;
+        }
+
+        boolean registered = TransactionSynchronizationManager.getSynchronizations().stream()
+                .anyMatch(AfterCommitRelay.class::isInstance);
+        if (!registered)
+            TransactionSynchronizationManager.registerSynchronization(new AfterCommitRelay());
+    }
+
+    /**
+     * Publishes every pending message, one confirmed batch at a time.
+     * @return The number of published messages.
+     * @throws AmqpException if a batch could not be published or was not confirmed in time.
+     */
+    public int relay() {
+        int batchSize = Math.max(1, amqpConfigProperties.getOutboxBatchSize());
+        int relayed = 0;
+        int published;
+        do {
+            published = Objects.requireNonNullElse(transactionTemplate.execute(status -> relayBatch(batchSize)), 0);
+            relayed += published;
+        } while (published == batchSize);
+        return relayed;
+    }
+
+    private void relayQuietly() {
+        try {
+            relay();
+        } catch (RuntimeException e) {
+            // The messages stay in the outbox for the next relay
+            log.warn("Relaying the outbox failed: {}", e.getMessage());
+        }
+    }
+
+    private int relayBatch(int batchSize) {
+        List<OutboxMessageModel> messages = outboxRepository.lockPendingMessages(PageRequest.of(0, batchSize));
+        if (messages.isEmpty())
+            return 0;
+
+        rabbitTemplate.invoke(operations -> {
+            for (OutboxMessageModel message : messages)
+                operations.convertAndSend(message.getExchange(), message.getRoutingKey(), message.getJobId());
+            operations.waitForConfirmsOrDie(amqpConfigProperties.getConfirmTimeout().toMillis());
+            return null;
+        });
+
+        outboxRepository.deleteAllInBatch(messages);
+        return messages.size();
+    }
+
+    private final class AfterCommitRelay implements TransactionSynchronization {
+        @Override
+        public void afterCommit() {
+            relayQuietly();
+        }
+    }
+
+}
@@ -5,17 +5,33 @@ import com.service.report.generator.dto.JwtTokenResponse;
 import com.service.report.generator.dto.TokenValidationResponse;
 import com.service.report.generator.dto.payload.LoginRequest;
 import com.service.report.generator.entity.JobModel;
+import com.service.report.generator.tag.OutputCompression;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.time.LocalTime;
 
 public interface ReportGeneratorService {
 
-    APIResponse<?> uploadFile(MultipartFile mainfile, MultipartFile reference1, MultipartFile reference2, TokenValidationResponse validationResponse);
+    APIResponse<?> uploadFile(MultipartFile mainfile, MultipartFile reference1, MultipartFile reference2, boolean sorted, OutputCompression compression, TokenValidationResponse validationResponse);
+    APIResponse<?> uploadInputFile(String fileName, String contentType, String contentHash, InputStream inputStream, TokenValidationResponse validationResponse);
+
+    APIResponse<?> scheduleReport(Long mainFileId, Long reference1Id, Long reference2Id, boolean sorted, OutputCompression compression, TokenValidationResponse validationResponse);
+
+    APIResponse<?> startUpload(String fileName, long fileSize, Long chunkSize, TokenValidationResponse validationResponse);
+
+    APIResponse<?> uploadChunk(String uploadUid, int chunkIndex, InputStream inputStream);
+
+    APIResponse<?> getUploadStatus(String uploadUid);
+
+    APIResponse<?> commitUpload(String uploadUid, String contentHash, boolean schedule, Long reference1Id, Long reference2Id, boolean sorted, OutputCompression compression, TokenValidationResponse validationResponse);
+
     APIResponse<?> triggerReportGeneration(String jobId);
 
     JwtTokenResponse signInUser(LoginRequest loginRequest);
 
     APIResponse<?> updateSchedule(LocalTime localTime, TokenValidationResponse validationResponse);
 
+    APIResponse<?> getPipelineStatus();
+
 }
@@ -5,10 +5,30 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.service.report.generator.dto.*;
 import com.service.report.generator.dto.payload.LoginRequest;
 import com.service.report.generator.entity.*;
+import com.service.report.generator.csv.CompressedInput;
+import com.service.report.generator.csv.CsvChannelWriter;
+import com.service.report.generator.csv.CsvHeaderSniffer;
 import com.service.report.generator.exception.BadCredentialsException;
+import com.service.report.generator.exception.BaseException;
 import com.service.report.generator.repository.*;
 import com.service.report.generator.exception.InvalidDataException;
+import com.service.report.generator.join.HashJoin;
+import com.service.report.generator.join.JoinInput;
+import com.service.report.generator.join.PartitionedHashJoin;
+import com.service.report.generator.join.PipelineMonitor;
+import com.service.report.generator.join.ReferenceIndexStore;
+import com.service.report.generator.join.ReportJoin;
+import com.service.report.generator.join.ScanPipeline;
+import com.service.report.generator.join.SortMergeJoin;
+import com.service.report.generator.properties.report.ReportConfigProperties;
+import com.service.report.generator.properties.amqp.AMQPConfigProperties;
+import com.service.report.generator.properties.report.ReportJoinProperties;
+import com.service.report.generator.properties.report.ReportOutputProperties;
+import com.service.report.generator.properties.report.ReportScanProperties;
+import com.service.report.generator.properties.upload.UploadConfigProperties;
 import com.service.report.generator.tag.*;
+import com.service.report.generator.transformer.RulePlan;
+import com.service.report.generator.transformer.RulePlanCompiler;
 import com.service.report.generator.utility.FileUtils;
 import com.service.report.generator.utility.JsonConverter;
 import com.service.report.generator.utility.JwtWizard;
@@ -17,10 +37,6 @@ import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -28,21 +44,20 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Service
@@ -63,12 +78,29 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
     private final UserRoleRepository userRoleRepository;
     private final TransformationRuleRepository transformationRuleRepository;
     private final RegistryRepository registryRepository;
+    private final RulePlanCompiler rulePlanCompiler;
+    private final ReportConfigProperties reportConfigProperties;
+    private final ReferenceIndexStore referenceIndexStore;
+    private final PipelineMonitor pipelineMonitor;
+    private final UploadSessionProcessor uploadSessionProcessor;
+    private final UploadConfigProperties uploadConfigProperties;
+    private final AMQPConfigProperties amqpConfigProperties;
+    private final JobDispatcher jobDispatcher;
+    private final OutboxRelay outboxRelay;
 
     private static final String ERROR_GENERIC_MESSAGE = "Oops! Something went wrong.";
     private static final String JOB_NAME = "Report Generation";
     private static final String JOB_DESCRIPTION = "This job is intended to generate a report using certain transformation rules for the specified files";
     private static final long MAX_TOTAL_FILES_SIZE = 3072L * 1024L * 1024L;
-    private final AtomicBoolean isJobProcessing = new AtomicBoolean(false);
+    private static final String REFERENCE_KEY_COLUMN = "NationalIdentifier";
+    // The record source of each reference file, in job data order
+    private static final RecordSource[] REFERENCE_SOURCES = { RecordSource.REFERENCE_1, RecordSource.REFERENCE_2 };
+    private static final int MAIN_KEY_COLUMN_INDEX = 4;
+    private static final int MAX_JOIN_PARTITIONS = 1024;
+    // Assumed ratio of CSV content to its compressed size, and size of a CSV row, when they are not known
+    private static final long COMPRESSED_EXPANSION = 4;
+    private static final long ESTIMATED_ROW_BYTES = 64;
+    private static final long INDEX_BUILD_BYTES_PER_ROW = 28;
 
     @Value("${app.upload.dir.doc}")
     private String documentDirectory;
@@ -319,6 +351,8 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
      * @param mainfile The main file to be uploaded, which is mandatory.
      * @param reference1 An optional reference file to be uploaded.
      * @param reference2 An optional second reference file to be uploaded.
+     * @param sorted Whether all the files are sorted on their join key, allowing them to be joined by streaming.
+     * @param compression The compression of the generated report.
      * @param validationResponse The validation response containing user information.
      * @return APIResponse indicating the success or failure of the file upload operation.
      * @throws InvalidDataException if the main file is null or empty, or if there is an application-level error during processing.
@@ -332,6 +366,8 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
             MultipartFile mainfile,
             MultipartFile reference1,
             MultipartFile reference2,
+            boolean sorted,
+            OutputCompression compression,
             TokenValidationResponse validationResponse
     ) {
 
@@ -393,27 +429,21 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
         switch (fileExtensionType){
 
             case CSV -> {
-                // Prepare file ID lists for scheduling report generation
-                Map<FileType, ListDTO> fileMap = new LinkedHashMap<>();
-
-                // Adding main file ID to the map
-                List<Long> mainFileIdList = new ArrayList<>();
-                mainFileIdList.add(mainFileDTO.getFileDataModel().getFileId());
-                fileMap.put(FileType.MAIN, ListDTO.builder().id(mainFileIdList).build());
-
-                // Adding reference file IDs to the map
-                List<Long> referenceFileIdList = new ArrayList<>();
+                // Schedule a job for report generation based on the uploaded files
+                List<FileDataModel> referenceFiles = new ArrayList<>();
                 if (null != reference1DTO)
-                    referenceFileIdList.add(reference1DTO.getFileDataModel().getFileId());
+                    referenceFiles.add(reference1DTO.getFileDataModel());
 
                 if (null != reference2DTO)
-                    referenceFileIdList.add(reference2DTO.getFileDataModel().getFileId());
-
-                if(!referenceFileIdList.isEmpty())
-                    fileMap.put(FileType.REFERENCE,  ListDTO.builder().id(referenceFileIdList).build());
-
-                // Schedule a job for report generation based on the uploaded files
-                scheduleJobForReportGeneration(fileMap, loggedInUser.get());
+                    referenceFiles.add(reference2DTO.getFileDataModel());
+
+                scheduleReportForFiles(
+                        mainFileDTO.getFileDataModel(),
+                        referenceFiles,
+                        sorted,
+                        compression,
+                        loggedInUser.get()
+                );
 
                 // Return success message in APIResponse
                 return APIResponse.builder()
@@ -433,495 +463,854 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
 
 
     /**
-     * Triggers the report generation process for the specified job ID and returns the result.
-     * @param jobId The unique identifier for the job to be processed.
-     * @return APIResponse indicating the success of the report generation and the name of the created output file.
-     * @throws InvalidDataException if the job ID is not found in the repository or if there is an application-level error during processing.
+     * Streams one input file from the request body to the document directory. The content hash, size and row count
+     * are computed while the bytes are written and saved with the file.
+     * @param fileName The original name of the file, which gives its format.
+     * @param contentType The content type of the request body, if any.
+     * @param contentHash The SHA-256 hash of the content announced by the client, if any. When an identical file is
+     *                    already stored, it is reused without reading the request body.
+     * @param inputStream The request body.
+     * @param validationResponse The validation response containing user information.
+     * @return APIResponse holding the identifier of the stored file, to be used when scheduling a report.
+     * @throws InvalidDataException if the file name has an unsupported extension or the content is empty or too large.
+     */
+    @Override
+    // Not transactional, so that no database connection is held while the content is streamed
+    public APIResponse<?> uploadInputFile(
+            String fileName,
+            String contentType,
+            String contentHash,
+            InputStream inputStream,
+            TokenValidationResponse validationResponse
+    ) {
+        if (null == fileUtils.hasValidFileExtension(fileName))
+            throw new InvalidDataException("Invalid file found.");
+
+        // A client announcing the hash of a file already stored does not need to send it again
+        String expectedHash = null == contentHash ? null : contentHash.toLowerCase(Locale.ROOT);
+        Optional<FileDataModel> storedFile = findStoredInputFile(expectedHash, fileUtils.getCompoundExtension(fileName));
+
+        FileDataModel savedFileDataModel;
+        if (storedFile.isPresent()) {
+            savedFileDataModel = storedFile.get();
+        } else {
+            FileDataModel fileDataModel = saveFileLocally(documentDirectory, fileName, contentType, inputStream);
+            if (null != expectedHash && !expectedHash.equals(fileDataModel.getContentHash())) {
+                fileUtils.deleteFileLocally(fileDataModel.getFilePath());
+                throw new InvalidDataException("The content of the file does not match the given hash.");
+            }
+            savedFileDataModel = saveOrReuseInputFile(fileDataModel);
+        }
+
+        return APIResponse.builder()
+                .data(FileUploadDTO.builder()
+                        .fileId(savedFileDataModel.getFileId())
+                        .fileName(savedFileDataModel.getFileOriginal())
+                        .fileSize(savedFileDataModel.getFileSize())
+                        .contentHash(savedFileDataModel.getContentHash())
+                        .rowCount(savedFileDataModel.getRowCount())
+                        .build())
+                .message("File successfully uploaded.")
+                .build();
+    }
+
+
+
+    /**
+     * Schedules a report for input files uploaded beforehand.
+     * @param mainFileId The identifier of the main file, which is mandatory.
+     * @param reference1Id The identifier of an optional reference file.
+     * @param reference2Id The identifier of an optional second reference file.
+     * @param sorted Whether all the files are sorted on their join key, allowing them to be joined by streaming.
+     * @param compression The compression of the generated report.
+     * @param validationResponse The validation response containing user information.
+     * @return APIResponse indicating that the job was scheduled.
+     * @throws InvalidDataException if a file is not found or is not an input CSV file.
      */
     @Override
     @Transactional(
             isolation = Isolation.SERIALIZABLE,
             propagation = Propagation.REQUIRED
     )
-    public APIResponse<?> triggerReportGeneration(
-            String jobId
+    public APIResponse<?> scheduleReport(
+            Long mainFileId,
+            Long reference1Id,
+            Long reference2Id,
+            boolean sorted,
+            OutputCompression compression,
+            TokenValidationResponse validationResponse
     ) {
-        // Retrieve the job model from the repository based on the provided job ID
-        Optional<JobModel> jobModel = jobRepository.findByJobUid(jobId);
+        if (null == mainFileId)
+            throw new InvalidDataException("To proceed, provide with a input file");
 
-        // If the job model is not found, throw an exception
-        if(jobModel.isEmpty())
-            throw new InvalidDataException("Job not found for given ID, double-check and try again");
+        List<FileDataModel> referenceFiles = new ArrayList<>();
+        for (Long fileId : Arrays.asList(reference1Id, reference2Id)) {
+            if (null != fileId)
+                referenceFiles.add(findInputCsvFile(fileId));
+        }
 
-        // Execute the report generation process for the found job model
-        String outputFileName = executeReportGeneration(jobModel.get());
+        scheduleReportForFiles(
+                findInputCsvFile(mainFileId),
+                referenceFiles,
+                sorted,
+                compression,
+                userRepository.findById(validationResponse.getPid()).get()
+        );
 
-        // Return success message with the name of the created output file
         return APIResponse.builder()
-                .message("Transformation completed successfully. The output file ("+outputFileName+") has been created.")
+                .message("Report successfully scheduled.")
                 .build();
     }
 
 
 
     /**
-     * Executes the report generation process based on the provided job model and returns the name of the created output file.
-     * @param jobModel The job model containing configuration and file references for the report generation.
-     * @return The name of the created output file.
-     * @throws InvalidDataException if there is an issue with file processing or if job data is invalid.
-     * @throws IOException if there is an error during file I/O operations.
+     * Starts a resumable upload of one input file sent in numbered chunks. The file is preallocated to its full size
+     * in the document directory, so that chunks can be written in any order and in parallel.
+     * @param fileName The original name of the file, which gives its format.
+     * @param fileSize The size of the complete file in bytes.
+     * @param chunkSize The size of every chunk but the last one, or null for the configured size.
+     * @param validationResponse The validation response containing user information.
+     * @return APIResponse holding the upload session, with its identifier and chunk layout.
+     * @throws InvalidDataException if the file name has an unsupported extension or the sizes are out of bounds.
      */
-    public String executeReportGeneration(
-            JobModel jobModel
-    ){
-        // Retrieve the JSON data from the job model and convert it to a map of file types to list DTOs
-        String jobData = jobModel.getJsonData();
+    @Override
+    @SneakyThrows
+    @Transactional(
+            isolation = Isolation.SERIALIZABLE,
+            propagation = Propagation.REQUIRED
+    )
+    public APIResponse<?> startUpload(
+            String fileName,
+            long fileSize,
+            Long chunkSize,
+            TokenValidationResponse validationResponse
+    ) {
+        String fileExtension = fileUtils.getCompoundExtension(fileName);
+        if (null == fileUtils.hasValidFileExtension(fileName) || textHelper.isBlank(fileName))
+            throw new InvalidDataException("Invalid file found.");
+
+        if (fileSize < 1 || fileSize > MAX_TOTAL_FILES_SIZE)
+            throw new InvalidDataException("The file size must be between 1 and " + MAX_TOTAL_FILES_SIZE + " bytes.");
+
+        UploadSessionModel uploadSession = uploadSessionProcessor.initiate(
+                Paths.get(documentDirectory, generateRandomFileName() + "." + fileExtension),
+                textHelper.sanitize(fileName),
+                fileSize,
+                chunkSize,
+                userRepository.findById(validationResponse.getPid()).get()
+        );
 
-        Map<FileType, ListDTO> jobDataMap = jsonConverter.getMapFromJsonString(jobData, FileType.class, ListDTO.class);
+        return APIResponse.builder()
+                .data(toUploadSessionDTO(uploadSession))
+                .message("Upload started.")
+                .build();
+    }
 
-        // Get the main file data model and reference file data models from the repository
-        ListDTO mainListDTO = jobDataMap.get(FileType.MAIN);
-        Optional<FileDataModel> mainFileDataModel = fileDataRepository.findById(mainListDTO.getId().get(0));
 
-        Optional<FileDataModel> referenceFile1 = Optional.empty();
-        Optional<FileDataModel> referenceFile2 = Optional.empty();
-        ListDTO referenceListDTO =  jobDataMap.get(FileType.REFERENCE);
-        if(null != referenceListDTO) {
 
-            List<Long> referenceFileID = referenceListDTO.getId();
-            referenceFile1 = fileDataRepository.findById(referenceFileID.get(0));
+    /**
+     * Writes one chunk of an upload at its offset in the file. Chunks may be sent in any order, in parallel, and
+     * again after a failure.
+     * @param uploadUid The identifier of the upload session.
+     * @param chunkIndex The zero-based number of the chunk.
+     * @param inputStream The request body, holding exactly the bytes of the chunk.
+     * @return APIResponse indicating that the chunk was stored.
+     * @throws InvalidDataException if the session is not open, or the chunk number or length is wrong.
+     */
+    @Override
+    @SneakyThrows
+    // Not transactional, so that no database connection is held while the chunk is streamed
+    public APIResponse<?> uploadChunk(
+            String uploadUid,
+            int chunkIndex,
+            InputStream inputStream
+    ) {
+        uploadSessionProcessor.writeChunk(uploadSessionProcessor.getSession(uploadUid), chunkIndex, inputStream);
 
-            if(1 < referenceFileID.size())
-                referenceFile2 = fileDataRepository.findById(referenceFileID.get(1));
-        }
+        return APIResponse.builder()
+                .message("Chunk (" + chunkIndex + ") stored.")
+                .build();
+    }
 
-        OutputFileDTO outputFileDTO;
-        try {
-            // Load reference files into maps for processing
-            Map<String, CSVRecord> ref1Map = loadReferenceFile(referenceFile1.get().getFilePath(), "NationalIdentifier");
-            Map<String, CSVRecord> ref2Map = loadReferenceFile(referenceFile2.get().getFilePath(), "NationalIdentifier");
 
-            // Process the main file and generate the output
-            outputFileDTO = processMainFile(
-                    mainFileDataModel.get().getFilePath(),
-                    ref1Map,
-                    ref2Map,
-                    outputDirectory
+
+    /**
+     * Describes an upload session, with the chunks still missing so that an interrupted upload can be resumed.
+     * @param uploadUid The identifier of the upload session.
+     * @return APIResponse holding the upload session.
+     * @throws InvalidDataException if the session is not found.
+     */
+    @Override
+    public APIResponse<?> getUploadStatus(
+            String uploadUid
+    ) {
+        return APIResponse.builder()
+                .data(toUploadSessionDTO(uploadSessionProcessor.getSession(uploadUid)))
+                .build();
+    }
+
+
+
+    /**
+     * Completes an upload once every chunk is stored. The file is hashed and its rows counted in one sequential
+     * read, then saved as an input file, reusing an identical stored file if there is one. When requested, a report
+     * is scheduled with the file as main file.
+     * @param uploadUid The identifier of the upload session.
+     * @param contentHash The SHA-256 hash of the file announced by the client, if any, checked against the content.
+     * @param schedule Whether a report is scheduled for the file.
+     * @param reference1Id The identifier of an optional reference file, when scheduling.
+     * @param reference2Id The identifier of an optional second reference file, when scheduling.
+     * @param sorted Whether all the files are sorted on their join key, when scheduling.
+     * @param compression The compression of the generated report, when scheduling.
+     * @param validationResponse The validation response containing user information.
+     * @return APIResponse holding the stored file.
+     * @throws InvalidDataException if chunks are missing, the hash does not match, or a reference file is invalid.
+     */
+    @Override
+    @SneakyThrows
+    // Not transactional, so that no database connection is held while the file is hashed
+    public APIResponse<?> commitUpload(
+            String uploadUid,
+            String contentHash,
+            boolean schedule,
+            Long reference1Id,
+            Long reference2Id,
+            boolean sorted,
+            OutputCompression compression,
+            TokenValidationResponse validationResponse
+    ) {
+        UploadSessionModel uploadSession = uploadSessionProcessor.getSession(uploadUid);
+        // Only the request which takes the session commits it; concurrent or repeated commits are rejected
+        uploadSessionProcessor.completeFile(uploadSession);
+
+        FileDataModel savedFileDataModel;
+        try {
+            Path filePath = Paths.get(uploadSession.getFilePath());
+            StoredFileDTO storedFile = fileUtils.describeFile(
+                    filePath,
+                    "csv".equalsIgnoreCase(fileUtils.getCompoundExtension(uploadSession.getFileName()))
             );
 
-        } catch (IOException e) {
-            throw new InvalidDataException("File processing failed.");
+            // A wrong hash means a corrupted chunk; the client may send the chunks again
+            if (null != contentHash && !contentHash.equalsIgnoreCase(storedFile.getContentHash()))
+                throw new InvalidDataException("The content of the file does not match the given hash.");
+
+            savedFileDataModel = saveOrReuseInputFile(
+                    toInputFileModel(filePath, uploadSession.getFileOriginal(), null, storedFile)
+            );
+        } catch (IOException | RuntimeException e) {
+            uploadSessionProcessor.reopen(uploadSession);
+            throw e;
         }
+        uploadSessionProcessor.markCommitted(uploadSession, savedFileDataModel.getFileId(), savedFileDataModel.getFilePath());
+
+        if (schedule)
+            scheduleReport(savedFileDataModel.getFileId(), reference1Id, reference2Id, sorted, compression, validationResponse);
+
+        return APIResponse.builder()
+                .data(FileUploadDTO.builder()
+                        .fileId(savedFileDataModel.getFileId())
+                        .fileName(savedFileDataModel.getFileOriginal())
+                        .fileSize(savedFileDataModel.getFileSize())
+                        .contentHash(savedFileDataModel.getContentHash())
+                        .rowCount(savedFileDataModel.getRowCount())
+                        .build())
+                .message(schedule ? "File successfully uploaded and report scheduled." : "File successfully uploaded.")
+                .build();
+    }
 
-        DeviceRegistryModel deviceRegistryModel = jobProcessor.getInstance();
-
-        // Update the job model status and save it in the repository
-        jobModel.setStatus(JobStatus.SUCCESS);
-        jobModel.setAttempts(jobModel.getAttempts() + 1);
-        jobModel.setLastRanAt(Instant.now());
-        jobModel.setLastRanBy(deviceRegistryModel.getMacAddress());
-        jobRepository.save(jobModel);
-
-        // Save the output file information in the repository
-        String outputFileName = outputFileDTO.getOutputFileName() + ".csv";
-
-        fileDataRepository.save(
-                FileDataModel.builder()
-                        .fileName(outputFileName)
-                        .fileOriginal(outputFileName)
-                        .filePath(outputFileDTO.getFilePath())
-                        .fileType(outputFileDTO.getFileType())
-                        .fileCategory(FileCategory.OUTPUT)
-                        .build()
-        );
 
-        // Return the name of the created output file
-        return outputFileName;
+
+    private UploadSessionDTO toUploadSessionDTO(
+            UploadSessionModel uploadSession
+    ) {
+        return UploadSessionDTO.builder()
+                .uploadUid(uploadSession.getUploadUid())
+                .fileName(uploadSession.getFileOriginal())
+                .fileSize(uploadSession.getFileSize())
+                .chunkSize(uploadSession.getChunkSize())
+                .chunkCount(uploadSession.getChunkCount())
+                .status(uploadSession.getStatus())
+                .missingChunks(uploadSessionProcessor.getMissingChunks(uploadSession))
+                .fileId(uploadSession.getFileId())
+                .build();
     }
 
 
 
     /**
-     * Loads a CSV file and returns a map of CSV records indexed by a specified column value.
-     * @param filePath The path to the CSV file to be loaded.
-     * @param idColumnName The name of the column to be used as the key in the resulting map.
-     * @return A map where the keys are values from the specified column and the values are the corresponding CSV records.
-     * @throws IOException if an error occurs while reading the file.
+     * Drops upload sessions left open past the session timeout, along with their partial files.
+     * This method is scheduled to run every hour.
      */
-    public static Map<String, CSVRecord> loadReferenceFile(
-            String filePath,
-            String idColumnName
-    ) throws IOException {
+    @Scheduled(fixedDelay = 3_600_000, initialDelay = 300_000)
+    public void purgeExpiredUploads() {
+        uploadSessionProcessor.purgeExpiredSessions();
+    }
 
-        Map<String, CSVRecord> map = new HashMap<>();
-        // Open the file and read it using BufferedReader
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            // Set up the CSVFormat with header and skip header record
-            CSVFormat format = CSVFormat.DEFAULT.builder()
-                    .setHeader() // Indicates the first record should be used as headers
-                    .setSkipHeaderRecord(true) // Skip the header record while reading data
-                    .build();
-            // Parse the CSV file
-            try (CSVParser parser = new CSVParser(reader, format)) {
-                // Iterate over each record in the CSV file
-                for (CSVRecord record : parser) {
-                    // Get the value from the specified column and use it as the key
-                    String id = record.get(idColumnName);
-                    // Add the record to the map
-                    map.put(id, record);
-                }
-            }
-        }
-        // Return the populated map
-        return map;
+
+
+    /**
+     * Deletes the persistent reference indexes of input files no longer stored, and those no job used within the
+     * index retention period.
+     * This method is scheduled to run every 6 hours.
+     */
+    @Scheduled(fixedDelay = 21_600_000, initialDelay = 900_000)
+    public void purgeReferenceIndexes() {
+        int purged = referenceIndexStore.purgeIndexes(
+                reportConfigProperties.getJoin().getIndexRetention(),
+                contentHash -> fileDataRepository.findByContentHashAndFileCategoryOrderByFileIdAsc(contentHash, FileCategory.INPUT)
+                        .stream()
+                        .anyMatch(model -> Files.isRegularFile(Paths.get(model.getFilePath())))
+        );
+        if (0 < purged)
+            log.info("Purged {} reference index file(s).", purged);
+    }
+
+
+
+    private FileDataModel findInputCsvFile(
+            Long fileId
+    ) {
+        FileDataModel fileDataModel = fileDataRepository.findById(fileId)
+                .orElseThrow(() -> new InvalidDataException("File (" + fileId + ") not found."));
+        if (FileCategory.INPUT != fileDataModel.getFileCategory()
+                || !"csv".equals(fileUtils.getContentExtension(fileUtils.hasValidFileExtension(fileDataModel.getFileName()))))
+            throw new InvalidDataException("Currently we only serve csv files");
+        return fileDataModel;
     }
 
 
+
     /**
-     * Processes the main CSV file by applying transformation rules and generates an output CSV file.
-     * @param mainFilePath The path to the main CSV file to be processed.
-     * @param ref1Map A map of reference records from the first reference file, indexed by a key column value.
-     * @param ref2Map A map of reference records from the second reference file, indexed by a key column value.
-     * @param outputDirectory The directory where the output CSV file will be saved.
-     * @return An OutputFileDTO containing the name, path, and type of the generated output file.
-     * @throws InvalidDataException if there is an error during data processing.
+     * Schedules a report generation job for stored input files, once their headers are known to hold every column
+     * the transformation rules read, so that a mismatched file is rejected now rather than when the job runs.
+     * @param mainFile The main file.
+     * @param referenceFiles The reference files, possibly empty.
+     * @param sorted Whether all the files are sorted on their join key.
+     * @param compression The compression of the generated report, or null for a plain CSV report.
+     * @param userModel The user creating the job.
+     * @throws InvalidDataException if a file lacks a column read by the rules or the join.
      */
-    public OutputFileDTO processMainFile(
-            String mainFilePath,
-            Map<String, CSVRecord> ref1Map,
-            Map<String, CSVRecord> ref2Map,
-            String outputDirectory
-    ) throws IOException {
+    private void scheduleReportForFiles(
+            FileDataModel mainFile,
+            List<FileDataModel> referenceFiles,
+            boolean sorted,
+            OutputCompression compression,
+            UserModel userModel
+    ) {
+        validateInputColumns(mainFile, referenceFiles);
+
+        Long mainFileId = mainFile.getFileId();
+        List<Long> referenceFileIdList = referenceFiles.stream()
+                .map(FileDataModel::getFileId)
+                .toList();
+
+        // Prepare file ID lists for scheduling report generation
+        Map<FileType, ListDTO> fileMap = new LinkedHashMap<>();
+        Boolean sortedFlag = sorted ? Boolean.TRUE : null;
+
+        // Adding main file ID to the map
+        List<Long> mainFileIdList = new ArrayList<>();
+        mainFileIdList.add(mainFileId);
+        fileMap.put(FileType.MAIN, ListDTO.builder().id(mainFileIdList).sorted(sortedFlag).build());
+
+        // Adding reference file IDs to the map
+        if(!referenceFileIdList.isEmpty())
+            fileMap.put(FileType.REFERENCE,  ListDTO.builder().id(new ArrayList<>(referenceFileIdList)).sorted(sortedFlag).build());
+
+        // Adding the output options, only when they differ from a plain CSV report
+        if (null != compression && OutputCompression.NONE != compression)
+            fileMap.put(FileType.OUTPUT, ListDTO.builder().compression(compression).build());
+
+        // Small reports take the priority lane, so they do not queue behind large ones
+        long inputSize = estimateContentSize(mainFile) + referenceFiles.stream()
+                .mapToLong(this::estimateContentSize)
+                .sum();
+        JobPriority priority = inputSize <= amqpConfigProperties.getPriorityMaxInputSize().toBytes()
+                ? JobPriority.HIGH
+                : JobPriority.NORMAL;
+
+        scheduleJobForReportGeneration(fileMap, userModel, priority);
+    }
 
-        // Ensure the output directory exists
-        Files.createDirectories(Paths.get(outputDirectory));
-        // Generate a random file name for the output file
-        String outputFileName = generateRandomFileName();
-        String outputFilePath = String.format("%s%s.csv", outputDirectory, outputFileName);
 
-        // Get the content type of the output file
-        String contentType = Files.probeContentType(Paths.get(outputFilePath));
-
-        // Define the list of field names for which transformation rules are applied
-        List<FieldName> fieldNameList = List.of(FieldName.OUTFIELD1, FieldName.OUTFIELD2, FieldName.OUTFIELD3, FieldName.OUTFIELD4, FieldName.OUTFIELD5, FieldName.OUTFIELD6, FieldName.OUTFIELD7);
-        // Retrieve transformation rules for the specified field names
-        List<TransformationRuleModel> transformationRules = transformationRuleRepository.findByFieldNameIn(fieldNameList);
-
-        Map<FieldName, TransformationRuleModel> transformationRuleMap = transformationRules.stream()
-                .collect(Collectors.toMap(TransformationRuleModel::getFieldName, rule -> rule));
-
-        try (BufferedReader mainReader = new BufferedReader(new FileReader(mainFilePath))) {
-
-            // Set up CSV format for reading the main file
-            CSVFormat format = CSVFormat.DEFAULT.builder()
-                    .setHeader()                                // Indicates the first record should be used as headers
-                    .setSkipHeaderRecord(true)                  // Skip the header record while reading data
-                    .build();
-
-            try (
-                    CSVParser mainParser = new CSVParser(mainReader, format);
-                    CSVPrinter outputPrinter = new CSVPrinter(new FileWriter(outputFilePath),
-                            // Set headers for the output file based on transformation rules
-                            CSVFormat.DEFAULT.builder()
-                                 .setHeader(transformationRules.stream().map(TransformationRuleModel::getColumnName).toArray(String[]::new))     // Convert List to array
-                                 .build()
-                    )
-            ) {
-
-                // Process each record in the main file
-                for (CSVRecord mainRecord : mainParser) {
-                    // Retrieve corresponding reference records
-                    String id = mainRecord.get(4);
-                    CSVRecord ref1Record = ref1Map.get(id);
-                    CSVRecord ref2Record = ref2Map.get(id);
-
-                    Object[] columnData;
-                    try {
-                        // Process column data based on transformation rules
-                        columnData = processColumnData(transformationRuleMap, mainRecord, ref1Record, ref2Record);
-                    }
-                    catch (Exception e){
-                        // Handle errors by closing the printer and deleting the output file
-                        outputPrinter.close();
-                        deleteLocallySavedFiles(List.of(outputFilePath));
-                        throw new InvalidDataException(ERROR_GENERIC_MESSAGE);
-                    }
-
-                    // Write processed data to the output file
-                    outputPrinter.printRecord(columnData);
-                }
-            }
 
+    /**
+     * Checks the stored headers of the input files against the columns read by the transformation rules and by the
+     * join. Files stored before their headers were recorded are sniffed now.
+     * @param mainFile The main file.
+     * @param referenceFiles The reference files, in rule order.
+     * @throws InvalidDataException if a file lacks a required column.
+     */
+    private void validateInputColumns(
+            FileDataModel mainFile,
+            List<FileDataModel> referenceFiles
+    ) {
+        RulePlan rulePlan = rulePlanCompiler.compile(
+                transformationRuleRepository.findByFieldNameIn(Arrays.asList(FieldName.values()))
+        );
+
+        requireColumns(resolveColumns(mainFile), MAIN_KEY_COLUMN_INDEX, rulePlan.getReferencedColumns(RecordSource.MAIN));
+
+        RecordSource[] referenceSources = {RecordSource.REFERENCE_1, RecordSource.REFERENCE_2};
+        for (int i = 0; i < referenceFiles.size(); i++) {
+            FileDataModel referenceFile = resolveColumns(referenceFiles.get(i));
+            if (null == referenceFile.getKeyColumnIndex())
+                throw new InvalidDataException("Column (" + REFERENCE_KEY_COLUMN + ") is missing in the input file (" + referenceFile.getFileOriginal() + ").");
+
+            requireColumns(referenceFile, referenceFile.getKeyColumnIndex(), rulePlan.getReferencedColumns(referenceSources[i]));
         }
-        // Return details of the generated output file
-        return OutputFileDTO.builder()
-                .outputFileName(outputFileName)
-                .filePath(outputFilePath)
-                .fileType(contentType)
-                .build();
     }
 
+    private static void requireColumns(
+            FileDataModel fileDataModel,
+            int keyColumnIndex,
+            int[] referencedColumns
+    ) {
+        int requiredColumns = Math.max(keyColumnIndex, Arrays.stream(referencedColumns).max().orElse(-1)) + 1;
+        if (fileDataModel.getColumnCount() < requiredColumns)
+            throw new InvalidDataException(
+                    "The input file (" + fileDataModel.getFileOriginal() + ") has " + fileDataModel.getColumnCount()
+                            + " columns, but the transformation rules read " + requiredColumns + "."
+            );
+    }
 
+    /**
+     * Records the header of an input file stored before headers were sniffed at upload.
+     */
+    @SneakyThrows
+    private FileDataModel resolveColumns(
+            FileDataModel fileDataModel
+    ) {
+        if (null != fileDataModel.getColumnCount())
+            return fileDataModel;
 
+        String[] header = sniffHeader(Paths.get(fileDataModel.getFilePath()));
+        fileDataModel.setColumnCount(header.length);
+        fileDataModel.setKeyColumnIndex(findKeyColumn(header));
+        return fileDataRepository.save(fileDataModel);
+    }
 
     /**
-     * Processes and transforms column data for a given record based on transformation rules.
-     * @param transformationRuleMap A map of transformation rules keyed by field names.
-     * @param mainRecord The main CSV record from which data is to be transformed.
-     * @param ref1Record The first reference CSV record used for transformation.
-     * @param ref2Record The second reference CSV record used for transformation.
-     * @return An array of transformed data for each field specified in the transformation rules.
+     * Reads the header of an input CSV file from a bounded prefix of its decompressed content.
+     * @throws InvalidDataException if the header is malformed.
      */
-    public Object[] processColumnData(
-            Map<FieldName, TransformationRuleModel> transformationRuleMap,
-            CSVRecord mainRecord,
-            CSVRecord ref1Record,
-            CSVRecord ref2Record
-    ){
-        // Define the list of field names for which data needs to be transformed
-        List<FieldName> fieldNameList = List.of(FieldName.OUTFIELD1, FieldName.OUTFIELD2, FieldName.OUTFIELD3, FieldName.OUTFIELD4, FieldName.OUTFIELD5, FieldName.OUTFIELD6, FieldName.OUTFIELD7);
-
-        // Initialize an array to hold the transformed data
-        Object[] ouputData = new Object[7];
-        // Process each field name and apply the corresponding transformation rule
-        for(int i = 0; i < ouputData.length; i++){
-            FieldName fieldName = fieldNameList.get(i);
-            TransformationRuleModel transformationRule = transformationRuleMap.get(fieldName);
-            // Transform the data for the current field and store it in the output array
-            ouputData[i] = transformColumnData(transformationRule, mainRecord, ref1Record, ref2Record);
+    private String[] sniffHeader(
+            Path filePath
+    ) throws IOException {
+        int sniffSize = (int) Math.min(Integer.MAX_VALUE, uploadConfigProperties.getHeaderSniffSize().toBytes());
+        try (InputStream inputStream = CompressedInput.open(filePath)) {
+            return CsvHeaderSniffer.sniff(inputStream, sniffSize, Charset.defaultCharset());
         }
+    }
 
-        return ouputData;
+    /**
+     * @return The position of the reference key column, as resolved by the join from its last occurrence, or null.
+     */
+    private static Integer findKeyColumn(
+            String[] header
+    ) {
+        for (int columnIndex = header.length - 1; columnIndex >= 0; columnIndex--) {
+            if (REFERENCE_KEY_COLUMN.equals(header[columnIndex]))
+                return columnIndex;
+        }
+        return null;
     }
 
 
+
     /**
-     * Transforms column data based on the specified transformation rule.
-     * @param transformationRule The rule that defines how to transform the data.
-     * @param mainRecord The main CSV record used for data extraction.
-     * @param ref1Record The first reference CSV record used for data extraction.
-     * @param ref2Record The second reference CSV record used for data extraction.
-     * @return The transformed data based on the operation type defined in the transformation rule.
+     * Triggers the report generation process for the specified job ID and returns the result. The job is started under
+     * a lease like a delivered job, so a job claimed or running elsewhere is rejected rather than generated twice, and
+     * no transaction is held while the report runs.
+     * @param jobId The unique identifier for the job to be processed.
+     * @return APIResponse indicating the success of the report generation and the name of the created output file.
+     * @throws InvalidDataException if the job ID is not found in the repository, if the job is already claimed or
+     *                              running, or if there is an application-level error during processing.
      */
-    public Object transformColumnData(
-            TransformationRuleModel transformationRule,
-            CSVRecord mainRecord,
-            CSVRecord ref1Record,
-            CSVRecord ref2Record
-    ){
-        // Retrieve operation type and transformation details from the rule
-        OperationType operationType = transformationRule.getOperationType();
-        String transformationExpression = transformationRule.getTransformationExpression();
-        String transformationData = transformationRule.getTransformationData();
-
-        // Convert the transformation data from JSON string to a map of RuleDTO objects
-        Map<Integer, RuleDTO> ruleDTOMap = jsonConverter.getMapFromJsonString(transformationData, Integer.class, RuleDTO.class);
-
-        Object outputData = null;
-
-        // Perform transformation based on the operation type
-        switch (operationType){
-
-            case DEFAULT -> {
-                // Extract column indices from the transformation expression
-                List<Integer> mapIndex = extractNumbers(transformationExpression);
-
-                RuleDTO ruleDTO = ruleDTOMap.get(mapIndex.get(0));
-                Integer id = ruleDTO.getId();
-                Integer columnIndex = ruleDTO.getCol();
-
-                // Retrieve and set the data from the appropriate record based on ID
-                outputData = switch (id) {
-                    case 1 -> mainRecord.get(columnIndex);
-                    case 2 -> null != ref1Record ? ref1Record.get(columnIndex) : null;
-                    case 3 -> null != ref2Record ? ref2Record.get(columnIndex) : null;
-                    default -> null;
-                };
+    @Override
+    public APIResponse<?> triggerReportGeneration(
+            String jobId
+    ) {
+        // Retrieve the job model from the repository based on the provided job ID
+        Optional<JobModel> jobModel = jobRepository.findByJobUid(jobId);
+
+        // If the job model is not found, throw an exception
+        if(jobModel.isEmpty())
+            throw new InvalidDataException("Job not found for given ID, double-check and try again");
+
+        JobModel job = jobProcessor.startIdleJob(jobModel.get().getId());
+        if (null == job)
+            throw new InvalidDataException("The job is already queued or running, try again once it is done.");
+
+        // Execute the report generation process for the started job, recording its outcome under the lease
+        FileDataModel outputFile = null;
+        try {
+            outputFile = executeReportGeneration(job);
+            job.setStatus(JobStatus.SUCCESS);
+        } catch (RuntimeException | Error e) {
+            job.setStatus(JobStatus.FAILED);
+            throw e;
+        } finally {
+            job.setAttempts(job.getAttempts() + 1);
+            if (!jobProcessor.finishJob(job, outputFile) && null != outputFile) {
+                deleteLocallySavedFiles(List.of(outputFile.getFilePath()));
+                throw new InvalidDataException("The job was reclaimed while running, its output is dropped.");
             }
+        }
+        String outputFileName = outputFile.getFileName();
 
-            case SPACE_BETWEEN -> {
-                // Extract column indices from the transformation expression
-                List<Integer> mapIndex = extractNumbers(transformationExpression);
+        // Return success message with the name of the created output file
+        return APIResponse.builder()
+                .message("Transformation completed successfully. The output file ("+outputFileName+") has been created.")
+                .build();
+    }
 
-                // Collect column values and join them with a space
-                List<String> columnValues = mapIndex.stream()
-                        .map(index -> {
 
-                            RuleDTO ruleDTO = ruleDTOMap.get(index);
-                            Integer id = ruleDTO.getId();
-                            Integer columnIndex = ruleDTO.getCol();
 
-                            return switch (id) {
-                                case 1 -> mainRecord.get(columnIndex);
-                                case 2 -> null != ref1Record ? ref1Record.get(columnIndex) : null;
-                                case 3 -> null != ref2Record ? ref2Record.get(columnIndex) : null;
-                                default -> null;
-                            };
+    /**
+     * Executes the report generation process based on the provided job model and returns the created output file.
+     * Neither the job nor the output file is saved, so that the outcome is only recorded under the lease of the job.
+     * @param jobModel The job model containing configuration and file references for the report generation.
+     * @return The output file, not saved yet.
+     * @throws InvalidDataException if there is an issue with file processing or if job data is invalid.
+     */
+    public FileDataModel executeReportGeneration(
+            JobModel jobModel
+    ){
+        // Retrieve the JSON data from the job model and convert it to a map of file types to list DTOs
+        String jobData = jobModel.getJsonData();
 
-                        })
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toCollection(ArrayList::new));
+        Map<FileType, ListDTO> jobDataMap = jsonConverter.getMapFromJsonString(jobData, FileType.class, ListDTO.class);
 
-                outputData = String.join(" ", columnValues);
-            }
+        // Get the main file data model and reference file data models from the repository
+        ListDTO mainListDTO = jobDataMap.get(FileType.MAIN);
+        Optional<FileDataModel> mainFileDataModel = fileDataRepository.findById(mainListDTO.getId().get(0));
 
-            case COMMA_SEPARATED -> {
-                // Extract column indices from the transformation expression
-                List<Integer> mapIndex = extractNumbers(transformationExpression);
+        Optional<FileDataModel> referenceFile1 = Optional.empty();
+        Optional<FileDataModel> referenceFile2 = Optional.empty();
+        ListDTO referenceListDTO =  jobDataMap.get(FileType.REFERENCE);
+        if(null != referenceListDTO) {
 
-                // Collect column values and join them with a comma
-                List<String> columnValues = mapIndex.stream()
-                        .map(index -> {
+            List<Long> referenceFileID = referenceListDTO.getId();
+            referenceFile1 = fileDataRepository.findById(referenceFileID.get(0));
 
-                            RuleDTO ruleDTO = ruleDTOMap.get(index);
-                            Integer id = ruleDTO.getId();
-                            Integer columnIndex = ruleDTO.getCol();
+            if(1 < referenceFileID.size())
+                referenceFile2 = fileDataRepository.findById(referenceFileID.get(1));
+        }
 
-                            return switch (id) {
-                                case 1 -> mainRecord.get(columnIndex);
-                                case 2 -> null != ref1Record ? ref1Record.get(columnIndex) : null;
-                                case 3 -> null != ref2Record ? ref2Record.get(columnIndex) : null;
-                                default -> null;
-                            };
+        // Inputs are merged in lockstep only when every file is declared sorted on the join key
+        boolean sorted = Boolean.TRUE.equals(mainListDTO.getSorted())
+                && (null == referenceListDTO || Boolean.TRUE.equals(referenceListDTO.getSorted()));
 
-                        })
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toCollection(ArrayList::new));
+        // Jobs without output options produce a plain CSV report
+        ListDTO outputListDTO = jobDataMap.get(FileType.OUTPUT);
+        OutputCompression compression = null == outputListDTO || null == outputListDTO.getCompression()
+                ? OutputCompression.NONE
+                : outputListDTO.getCompression();
 
-                outputData = String.join(", ", columnValues);
-            }
+        // Retrieve the transformation rules and compile them once into an executable plan
+        RulePlan rulePlan = rulePlanCompiler.compile(
+                transformationRuleRepository.findByFieldNameIn(Arrays.asList(FieldName.values()))
+        );
 
-            case MATHEMATICAL -> {
-                // Extract column indices from the transformation expression
-                List<Integer> mapIndex = extractNumbersByPattern(transformationExpression);
+        OutputFileDTO outputFileDTO;
+        try {
+            // Choose the join strategy for the order and sizes of the input files
+            ReportJoin reportJoin = createReportJoin(
+                    JoinInput.byIndex(mainFileDataModel.get().getFilePath(), MAIN_KEY_COLUMN_INDEX),
+                    toReferenceInput(referenceFile1, !sorted),
+                    toReferenceInput(referenceFile2, !sorted),
+                    rulePlan,
+                    sorted
+            );
 
-                List<Object> columnValues = new ArrayList<>();
+            // Process the main file and generate the output
+            outputFileDTO = processMainFile(
+                    reportJoin,
+                    rulePlan,
+                    outputDirectory,
+                    compression
+            );
 
-                for(Integer index : mapIndex) {
+        } catch (IOException e) {
+            throw new InvalidDataException("File processing failed.");
+        }
 
-                    RuleDTO ruleDTO = ruleDTOMap.get(index);
-                    Integer id = ruleDTO.getId();
-                    Integer columnIndex = ruleDTO.getCol();
+        // Describe the output file, to be saved along with the outcome of the job
+        String outputFileName = outputFileDTO.getOutputFileName() + "." + compression.getExtension();
 
-                    // Retrieve and add column values for mathematical operations
-                    Object columnValue = switch (id) {
-                                case 1 -> mainRecord.get(columnIndex);
-                                case 2 -> null != ref1Record ? ref1Record.get(columnIndex) : null;
-                                case 3 -> null != ref2Record ? ref2Record.get(columnIndex) : null;
-                                default -> null;
-                            };
+        return FileDataModel.builder()
+                .fileName(outputFileName)
+                .fileOriginal(outputFileName)
+                .filePath(outputFileDTO.getFilePath())
+                .fileType(outputFileDTO.getFileType())
+                .fileCategory(FileCategory.OUTPUT)
+                .build();
+    }
 
-                    if(null == columnValue)
-                        break;
 
-                    columnValues.add(columnValue);
-                }
 
-                if(!columnValues.isEmpty()){
-                    // Replace placeholders in the expression and evaluate it
-                    String replacedExpression = replacePlaceholders(transformationExpression, columnValues);
-                    outputData = textHelper.evaluateExpression(replacedExpression);
-                }
+    /**
+     * Estimates the heap a report job takes while it runs, following the join strategy the job will use: the scan
+     * and output buffers, plus the in-memory reference indexes, or the table of a persistent index still to be built.
+     * Sorted joins stream their inputs, and existing persistent indexes are mapped outside the heap.
+     * @param jobId The identifier of the job.
+     * @return The estimated footprint in bytes, or 0 when the job is missing.
+     */
+    public long estimateReportMemory(Long jobId) {
+        JobModel jobModel = jobRepository.findById(jobId).orElse(null);
+        if (null == jobModel)
+            return 0;
 
+        Map<FileType, ListDTO> jobDataMap = jsonConverter.getMapFromJsonString(jobModel.getJsonData(), FileType.class, ListDTO.class);
+        ListDTO mainListDTO = jobDataMap.get(FileType.MAIN);
+        ListDTO referenceListDTO = jobDataMap.get(FileType.REFERENCE);
+
+        ReportScanProperties scanProperties = reportConfigProperties.getScan();
+        int threads = 0 < scanProperties.getThreads()
+                ? scanProperties.getThreads()
+                : Runtime.getRuntime().availableProcessors();
+        // Queued and in-flight chunks are held as bytes and decoded as UTF-16 text, about three times their size
+        long footprint = 3 * scanProperties.getChunkSize().toBytes() * (scanProperties.getQueueCapacity() + threads)
+                + reportConfigProperties.getOutput().getBufferSize().toBytes();
+
+        boolean sorted = Boolean.TRUE.equals(mainListDTO.getSorted())
+                && (null == referenceListDTO || Boolean.TRUE.equals(referenceListDTO.getSorted()));
+        if (sorted || null == referenceListDTO)
+            return footprint;
+
+        ReportJoinProperties joinProperties = reportConfigProperties.getJoin();
+        // Indexes are built per projection, so look for the one the job will open
+        RulePlan rulePlan = joinProperties.isPersistentIndex()
+                ? rulePlanCompiler.compile(transformationRuleRepository.findByFieldNameIn(Arrays.asList(FieldName.values())))
+                : null;
+        List<Long> referenceIds = referenceListDTO.getId();
+        long referenceBytes = 0;
+        for (int i = 0; i < referenceIds.size() && i < REFERENCE_SOURCES.length; i++) {
+            FileDataModel reference = fileDataRepository.findById(referenceIds.get(i)).orElse(null);
+            if (null == reference)
+                continue;
+
+            if (!joinProperties.isPersistentIndex()) {
+                referenceBytes += 2 * estimateContentSize(reference);
+            } else if (!referenceIndexStore.hasIndex(
+                    JoinInput.byName(reference.getFilePath(), REFERENCE_KEY_COLUMN).withContentHash(reference.getContentHash()),
+                    rulePlan.getReferencedColumns(REFERENCE_SOURCES[i])
+            )) {
+                // Building an index keeps a hash and an offset per row, then a table of twice as many slots
+                long rows = null != reference.getRowCount()
+                        ? reference.getRowCount()
+                        : estimateContentSize(reference) / ESTIMATED_ROW_BYTES;
+                referenceBytes += INDEX_BUILD_BYTES_PER_ROW * rows;
             }
+        }
+
+        // Reference data beyond the join memory budget is partitioned to disk
+        return footprint + (joinProperties.isPersistentIndex()
+                ? referenceBytes
+                : Math.min(referenceBytes, joinProperties.getMemoryBudget().toBytes()));
+    }
 
+    private long estimateContentSize(FileDataModel fileDataModel) {
+        long size = null != fileDataModel.getFileSize() ? fileDataModel.getFileSize() : 0;
+        if (null == fileDataModel.getFileSize()) {
+            try {
+                size = Files.size(Paths.get(fileDataModel.getFilePath()));
+            } catch (IOException e) {
+                return 0;
+            }
         }
+        return expandedSize(size, fileDataModel.getFileName());
+    }
 
-        return outputData;
+    /**
+     * @return The estimated size of the content of a file once decompressed.
+     */
+    private static long expandedSize(long storedSize, String fileName) {
+        return FileCompression.NONE == FileCompression.of(fileName)
+                ? storedSize
+                : COMPRESSED_EXPANSION * storedSize;
     }
 
 
+
     /**
-     * Replaces placeholders in the given expression with corresponding values from the list.
-     * Placeholders in the format `<>>>N<<<>` are replaced, where `N` is the index of the value to be used.
-     *
-     * @param expression The string expression containing placeholders to be replaced.
-     * @param values The list of values to replace the placeholders with. The index of the placeholder corresponds to the index in this list.
-     * @return The expression with placeholders replaced by the corresponding values.
+     * Chooses how the main file is joined with its reference files. Inputs sorted on the join key are streamed in
+     * lockstep. Otherwise, reference files are joined through their persistent memory-mapped indexes when enabled;
+     * failing that, reference files whose estimated index fits in the configured memory budget are indexed in
+     * memory, and larger ones are joined by partitioning every input on disk.
+     * @param main The main file.
+     * @param ref1 The first reference file, or null.
+     * @param ref2 The second reference file, or null.
+     * @param rulePlan The compiled transformation rules, which determine the columns to be kept.
+     * @param sorted Whether every input is sorted on the join key.
+     * @return The join to be executed.
+     * @throws IOException if an error occurs while reading the reference files.
      */
-    public static String replacePlaceholders(
-            String expression,
-            List<Object> values
-    ) {
-        // Define the pattern for placeholders in the format <>>>N<<<>
-        String patternString = "<>>>\\d+<<<>";
-        Pattern pattern = Pattern.compile(patternString);
-        Matcher matcher = pattern.matcher(expression);
-
-        StringBuilder result = new StringBuilder(expression);
-        int offset = 0; // Offset to adjust for changes in the length of the string during replacements
-
-        // Find all placeholders in the expression
-        while (matcher.find()) {
-            int start = matcher.start();
-            int end = matcher.end();
-
-            // Extract the placeholder index
-            String placeholder = expression.substring(start, end);
-            String indexString = placeholder.replaceAll("[^\\d]", "");
-            int index = Integer.parseInt(indexString);
-
-            // Replace with value from the list
-            String replacement = values.get(index).toString();
-            result.replace(start - offset, end - offset, replacement);
-            offset += (end - start) - replacement.length();
+    public ReportJoin createReportJoin(
+            JoinInput main,
+            JoinInput ref1,
+            JoinInput ref2,
+            RulePlan rulePlan,
+            boolean sorted
+    ) throws IOException {
+        if (sorted)
+            return new SortMergeJoin(main, ref1, ref2);
+
+        ReportJoinProperties joinProperties = reportConfigProperties.getJoin();
+        if (joinProperties.isPersistentIndex()) {
+            // Reuse the index built by an earlier job for the same content and projection
+            return new HashJoin(
+                    main,
+                    referenceIndexStore.open(ref1, rulePlan.getReferencedColumns(RecordSource.REFERENCE_1)),
+                    referenceIndexStore.open(ref2, rulePlan.getReferencedColumns(RecordSource.REFERENCE_2)),
+                    createScanPipeline()
+            );
+        }
+
+        long memoryBudget = joinProperties.getMemoryBudget().toBytes();
+        // A UTF-16 index of the reference text takes about twice the decompressed size at worst
+        long estimatedBytes = 2 * (contentSize(ref1) + contentSize(ref2));
+
+        if (estimatedBytes <= memoryBudget) {
+            // Index the reference files, keeping only the columns the plan reads
+            return new HashJoin(
+                    main,
+                    HashJoin.loadReferenceIndex(ref1, rulePlan.getReferencedColumns(RecordSource.REFERENCE_1)),
+                    HashJoin.loadReferenceIndex(ref2, rulePlan.getReferencedColumns(RecordSource.REFERENCE_2)),
+                    createScanPipeline()
+            );
         }
 
-        return result.toString();
+        int partitions = joinProperties.getPartitions();
+        if (0 >= partitions)
+            partitions = (int) Math.min(MAX_JOIN_PARTITIONS, Math.max(2, (estimatedBytes * 3 / 2 + memoryBudget - 1) / memoryBudget));
+
+        log.info("Reference data (~{} bytes) exceeds the join memory budget; joining in {} partitions.", estimatedBytes, partitions);
+        return new PartitionedHashJoin(main, ref1, ref2, partitions, Paths.get(outputDirectory));
     }
 
+    private ScanPipeline createScanPipeline() {
+        ReportScanProperties scanProperties = reportConfigProperties.getScan();
+        if (!scanProperties.isPipelined())
+            return null;
 
+        int threads = 0 < scanProperties.getThreads()
+                ? scanProperties.getThreads()
+                : Runtime.getRuntime().availableProcessors();
+        int chunkSize = (int) Math.min(Integer.MAX_VALUE / 2, scanProperties.getChunkSize().toBytes());
+        return new ScanPipeline(threads, chunkSize, scanProperties.getQueueCapacity(), scanProperties.isOrdered(), pipelineMonitor);
+    }
 
     /**
-     * Extracts numbers from a string expression that are enclosed in the format `<>>>(N)<<<>`.
-     *
-     * @param expression The string expression containing numbers enclosed in the format `<>>>(N)<<<>`.
-     * @return A list of integers extracted from the expression.
+     * Describes a reference file as a join input. When the file is to be indexed and persistent indexes are enabled,
+     * the content hash of the file is computed and saved on first use.
+     * @param referenceFile The reference file, if present.
+     * @param indexed Whether the file will be indexed rather than streamed.
+     * @return The join input, or null when no reference file is present.
+     * @throws IOException if the file cannot be read.
      */
-    public static List<Integer> extractNumbersByPattern(
-            String expression
-    ) {
-
-        List<Integer> numbers = new ArrayList<>();
+    private JoinInput toReferenceInput(
+            Optional<FileDataModel> referenceFile,
+            boolean indexed
+    ) throws IOException {
+        if (referenceFile.isEmpty())
+            return null;
 
-        // Regular expression to find numbers enclosed in <>>> and <>>>
-        Pattern pattern = Pattern.compile("<>>>(\\d+)<<<>");
-        Matcher matcher = pattern.matcher(expression);
+        FileDataModel fileDataModel = referenceFile.get();
+        JoinInput input = JoinInput.byName(fileDataModel.getFilePath(), REFERENCE_KEY_COLUMN);
+        if (!indexed || !reportConfigProperties.getJoin().isPersistentIndex())
+            return input;
 
-        // Find and extract numbers
-        while (matcher.find()) {
-            // Extract and convert the number to Integer, then add to the list
-            numbers.add(Integer.parseInt(matcher.group(1)));
+        if (null == fileDataModel.getContentHash()) {
+            fileDataModel.setContentHash(fileUtils.computeContentHash(Paths.get(fileDataModel.getFilePath())));
+            fileDataRepository.save(fileDataModel);
         }
+        return input.withContentHash(fileDataModel.getContentHash());
+    }
 
-        return numbers;
+    /**
+     * @return The estimated decompressed size of the content of a join input, as the admission estimate counts it.
+     */
+    private static long contentSize(JoinInput input) throws IOException {
+        return null == input ? 0 : expandedSize(Files.size(Paths.get(input.getFilePath())), input.getFilePath());
     }
 
 
 
     /**
-     * Extracts integers from a comma-separated string expression.
-     *
-     * @param expression The string expression containing numbers separated by commas.
-     * @return A list of integers extracted from the expression.
+     * Processes the main CSV file by applying transformation rules and generates an output CSV file.
+     * @param reportJoin The join of the main file with its reference files.
+     * @param rulePlan The compiled transformation rules to be applied.
+     * @param outputDirectory The directory where the output CSV file will be saved.
+     * @param compression The compression of the output file.
+     * @return An OutputFileDTO containing the name, path, and type of the generated output file.
+     * @throws InvalidDataException if there is an error during data processing.
      */
-    public static List<Integer> extractNumbers(
-            String expression
-    ) {
-        List<Integer> numbers = new ArrayList<>();
-        // Split the expression by commas
-        String[] parts = expression.split(",");
+    public OutputFileDTO processMainFile(
+            ReportJoin reportJoin,
+            RulePlan rulePlan,
+            String outputDirectory,
+            OutputCompression compression
+    ) throws IOException {
+
+        // Ensure the output directory exists
+        Files.createDirectories(Paths.get(outputDirectory));
+        // Generate a random file name for the output file
+        String outputFileName = generateRandomFileName();
+        String outputFilePath = String.format("%s%s.%s", outputDirectory, outputFileName, compression.getExtension());
 
-        for (String part : parts) {
-            // Trim whitespace and convert to Integer
-            numbers.add(Integer.parseInt(part.trim()));
+        // Get the content type of the output file
+        String contentType = null != compression.getContentType()
+                ? compression.getContentType()
+                : Files.probeContentType(Paths.get(outputFilePath));
+
+        ReportOutputProperties outputProperties = reportConfigProperties.getOutput();
+        // Compressed output is buffered one compression block at a time
+        DataSize bufferSize = OutputCompression.NONE == compression
+                ? outputProperties.getBufferSize()
+                : outputProperties.getCompressionBlockSize();
+        try (
+                CsvChannelWriter outputWriter = new CsvChannelWriter(
+                        Paths.get(outputFilePath),
+                        outputProperties.getCharset(),
+                        (int) Math.min(Integer.MAX_VALUE / 2, bufferSize.toBytes()),
+                        outputProperties.isFsync(),
+                        compression,
+                        0 < outputProperties.getCompressionThreads()
+                                ? outputProperties.getCompressionThreads()
+                                : Runtime.getRuntime().availableProcessors(),
+                        outputProperties.getCompressionLevel()
+                )
+        ) {
+            // Set headers for the output file based on transformation rules
+            outputWriter.writeRecord(rulePlan.getHeader());
+            // Join the inputs and write processed data to the output file
+            reportJoin.execute(rulePlan, outputWriter::writeRecord);
+        }
+        catch (IOException | BaseException e) {
+            // Handle errors by deleting the output file
+            deleteLocallySavedFiles(List.of(outputFilePath));
+            throw e;
+        }
+        catch (Exception e) {
+            deleteLocallySavedFiles(List.of(outputFilePath));
+            throw new InvalidDataException(ERROR_GENERIC_MESSAGE);
         }
 
-        return numbers;
+        // Return details of the generated output file
+        return OutputFileDTO.builder()
+                .outputFileName(outputFileName)
+                .filePath(outputFilePath)
+                .fileType(contentType)
+                .build();
     }
 
 
 
+
     /**
      * Generates a random file name using a combination of a UUID and the current date.
      *
@@ -985,11 +1374,13 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
      *
      * @param fileMap A map of FileType to ListDTO containing the file information required for report generation.
      * @param userModel The user who initiated the job scheduling.
+     * @param priority The priority of the job, which selects the queue it runs from.
      * @throws InvalidDataException if there is an error in converting fileMap to JSON.
      */
     public void scheduleJobForReportGeneration(
             Map<FileType, ListDTO> fileMap,
-            UserModel userModel
+            UserModel userModel,
+            JobPriority priority
     ){
         // Ensure that the response is not null
         Objects.requireNonNull(fileMap);
@@ -1022,12 +1413,14 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
                 .executeAt(scheduleInstant)         // Set the time at which the job should be executed
                 .jobType(JobType.REPORT_GENERATOR)  // Set the job type
                 .jsonData(jobData)                  // Attach the job data in JSON format
+                .priority(priority)                 // Set the lane the job runs on
                 .createdBy(userModel)               // Set the user who created the job
                 .lastModifiedBy(userModel)          // Set the user who last modified the job
                 .build();
 
-        // Save the job to the repository to schedule it
+        // Save the job to the repository to schedule it, and have it published as soon as it is due
         jobRepository.save(job);
+        jobDispatcher.dispatchAfterCommit(job.getExecuteAt());
 
     }
 
@@ -1121,6 +1514,9 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
     /**
      * Updates a document based on the provided file data model.
      *
+     * The files written by this call are deleted again if the current transaction rolls back, e.g. when the
+     * uploaded files fail validation after being saved.
+     *
      * @param documents map consisting the file type and file to be saved.
      * @param directory     The directory where the document will be saved.
      * @throws InvalidDataException If the document is empty or has an invalid format.
@@ -1133,6 +1529,17 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
         List<String> locallySavedFiles = new ArrayList<>();
         Map<FileType, List<FileDataDTO>> fileDataDTOMap = new LinkedHashMap<>();
 
+        // The rows of the files are rolled back with the transaction, so the files must go too
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (STATUS_ROLLED_BACK == status)
+                        deleteLocallySavedFiles(locallySavedFiles);
+                }
+            });
+        }
+
         for (FileType fileType : documents.keySet()) {
 
             List<MultipartFile> multipartFiles = documents.get(fileType);
@@ -1147,12 +1554,15 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
                 }
 
                 FileDataModel fileDataModel = saveFileLocally(directory, file);
-                FileDataModel savedFileDataModel = fileDataRepository.save(fileDataModel);
+                FileDataModel savedFileDataModel = saveOrReuseInputFile(fileDataModel);
 
-                locallySavedFiles.add(savedFileDataModel.getFilePath());
+                // Only the files written by this upload are removed on failure
+                if (savedFileDataModel.getFilePath().equals(fileDataModel.getFilePath()))
+                    locallySavedFiles.add(savedFileDataModel.getFilePath());
 
+                // Compressed files are typed by the format of their content
                 fileDataDTOS.add(FileDataDTO.builder()
-                        .fileExtension(fileExtension)
+                        .fileExtension(fileUtils.getContentExtension(fileExtension))
                         .fileDataModel(savedFileDataModel)
                         .build()
                 );
@@ -1166,6 +1576,61 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
 
 
 
+    /**
+     * Saves a newly stored input file, unless an input file with the same content is already stored. In that case
+     * the new copy is deleted and the existing file is reused, along with any reference index built from it.
+     *
+     * @param fileDataModel The input file just written, with its content hash.
+     * @return The saved file, or the existing file with the same content.
+     */
+    public FileDataModel saveOrReuseInputFile(
+            FileDataModel fileDataModel
+    ) {
+        Optional<FileDataModel> storedFile = findStoredInputFile(
+                fileDataModel.getContentHash(),
+                fileUtils.getCompoundExtension(fileDataModel.getFileName())
+        );
+        if (storedFile.isEmpty())
+            return fileDataRepository.save(fileDataModel);
+
+        fileUtils.deleteFileLocally(fileDataModel.getFilePath());
+
+        // Files stored before rows were counted get the count of the new copy
+        FileDataModel existing = storedFile.get();
+        if (null == existing.getRowCount() && null != fileDataModel.getRowCount()) {
+            existing.setRowCount(fileDataModel.getRowCount());
+            existing = fileDataRepository.save(existing);
+        }
+
+        log.info("Reusing stored file ({}) for an identical upload of ({}).", existing.getFileId(), fileDataModel.getFileOriginal());
+        return existing;
+    }
+
+
+
+    /**
+     * Finds a stored input file by content hash.
+     *
+     * @param contentHash The SHA-256 hash of the content.
+     * @param fileExtension The extension the file must have, as returned by {@link FileUtils#getCompoundExtension(String)}.
+     * @return The oldest input file with this content whose copy still exists on disk, if any.
+     */
+    private Optional<FileDataModel> findStoredInputFile(
+            String contentHash,
+            String fileExtension
+    ) {
+        if (null == contentHash || null == fileExtension)
+            return Optional.empty();
+
+        return fileDataRepository.findByContentHashAndFileCategoryOrderByFileIdAsc(contentHash, FileCategory.INPUT)
+                .stream()
+                .filter(model -> fileExtension.equalsIgnoreCase(fileUtils.getCompoundExtension(model.getFileName())))
+                .filter(model -> Files.isRegularFile(Paths.get(model.getFilePath())))
+                .findFirst();
+    }
+
+
+
     public void deleteLocallySavedFiles(
             List<String> locallySavedFiles
     ){
@@ -1179,19 +1644,12 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
 
 
     /**
-     * Automatically adds jobs to RabbitMQ for processing at a fixed delay interval.
-     * This method is scheduled to run every 60 seconds with an initial delay of 60 seconds.
+     * Reconciles the job dispatcher with the database, which publishes jobs as they become due.
+     * This catches jobs scheduled by other instances or missed dispatches, and is scheduled to run every 10 minutes.
      */
-    @Scheduled(fixedDelay = 90_000, initialDelay = 60_000)
+    @Scheduled(fixedDelay = 600_000, initialDelay = 600_000)
     public void autoPublishJobsInQueue() {
-        if (isJobProcessing.compareAndSet(false, true)) {
-            try {
-//                log.info("Resolving job-queue via schedule.");
-                publishJobsInQueue();
-            } finally {
-                isJobProcessing.set(false);
-            }
-        }
+        jobDispatcher.dispatchAt(Instant.now());
     }
 
 
@@ -1200,20 +1658,58 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
 
     /**
      * Adds jobs to RabbitMQ for processing.
-     * This method retrieves jobs from the database and adds them to the RabbitMQ queue based on their status and schedule.
+     * This method claims the jobs ready to run from the database and adds them to the RabbitMQ queue.
      */
     public void publishJobsInQueue() {
+        jobDispatcher.publishJobsInQueue();
+    }
+
 
-        jobRepository.findAll()
-                .stream()
-                .filter(model -> !Arrays.asList(JobStatus.RUNNING, JobStatus.NO_INSTANCE, JobStatus.SUCCESS).contains(model.getStatus())
-                        && jobProcessor.isJobAttemptsNotExceeded(model.getAttempts())
-                )
-                .filter(jobProcessor::isJobReadyToRun)
-                .map(jobProcessor::enqueueJob)
-                .filter(Objects::nonNull)
-                .forEach(job -> log.info("Added Job ({}) in the queue. [{}]", job.getLeft(), job.getRight()));
 
+    /**
+     * Publishes the job messages left in the outbox, e.g. when the broker was unreachable as their transaction committed.
+     * This method is scheduled to run every 30 seconds.
+     */
+    @Scheduled(fixedDelay = 30_000, initialDelay = 30_000)
+    public void relayOutbox() {
+        try {
+            int relayed = outboxRelay.relay();
+            if (0 < relayed)
+                log.info("Relayed {} pending outbox message(s).", relayed);
+        } catch (RuntimeException e) {
+            log.warn("Relaying the outbox failed: {}", e.getMessage());
+        }
+    }
+
+
+
+    /**
+     * Renews the leases of the jobs executed by this instance, reclaims the started jobs whose lease expired, and
+     * publishes again the jobs whose message was not delivered within the dispatch timeout.
+     * This method is scheduled to run every minute.
+     */
+    @Scheduled(fixedDelay = 60_000, initialDelay = 60_000)
+    public void maintainJobLeases() {
+        jobProcessor.renewLeases();
+
+        int reclaimed = 0;
+        int page;
+        do {
+            page = jobProcessor.reclaimExpiredLeases();
+            reclaimed += page;
+        } while (page == jobProcessor.getClaimPageSize());
+        if (0 < reclaimed) {
+            log.warn("Reclaimed {} job(s) whose lease expired.", reclaimed);
+            jobDispatcher.dispatchAt(Instant.now());
+        }
+
+        int redispatched = 0;
+        do {
+            page = jobProcessor.redispatchUndeliveredJobs();
+            redispatched += page;
+        } while (page == jobProcessor.getClaimPageSize());
+        if (0 < redispatched)
+            log.warn("Published {} job(s) again whose message was not delivered in time.", redispatched);
     }
 
 
@@ -1238,9 +1734,35 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
         if (null == file || file.isEmpty())
             throw new InvalidDataException("No file found.");
 
+        try (InputStream inputStream = file.getInputStream()) {
+            return saveFileLocally(directory, file.getOriginalFilename(), file.getContentType(), inputStream);
+        }
+    }
+
+
+
+    /**
+     * Streams the content of a file to the specified directory. The content hash, size and, for uncompressed CSV
+     * files, the row count are computed as the bytes are written.
+     *
+     * @param directory        The directory where the file will be saved.
+     * @param originalFileName The name of the file given by the user.
+     * @param contentType      The content type of the file, if known.
+     * @param inputStream      The content of the file; it is not closed.
+     * @return A FileDataModel object representing the saved file.
+     * @throws InvalidDataException If the filename or extension is invalid, if the content is empty or too large,
+     *                              or if any error occurs during the file saving process.
+     */
+    @SneakyThrows
+    public FileDataModel saveFileLocally(
+            String directory,
+            String originalFileName,
+            String contentType,
+            InputStream inputStream
+    ) {
         // Validate the filename and extension
-        String fileExtension = fileUtils.getExtension(file.getOriginalFilename());
-        if (textHelper.isBlank(file.getOriginalFilename()) || null == fileExtension)
+        String fileExtension = fileUtils.getCompoundExtension(originalFileName);
+        if (textHelper.isBlank(originalFileName) || null == fileExtension)
             throw new InvalidDataException("Invalid filename or extension.");
 
         String randomId = UUID.randomUUID().toString().replace("-", "");
@@ -1248,17 +1770,76 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
         // Generate a unique filename using UUID
         String fileName = generateRandomFileName() + "." + fileExtension;
 
-        // Save the file to the specified directory
+        // Stream the file to the specified directory, hashing and counting rows on the way
         Path filePath = Paths.get(directory, fileName);
-        file.transferTo(filePath);
+        boolean countRows = "csv".equalsIgnoreCase(fileExtension);
+        StoredFileDTO storedFile = fileUtils.writeStream(inputStream, filePath, MAX_TOTAL_FILES_SIZE, countRows);
+
+        if (0 == storedFile.getSize()) {
+            fileUtils.deleteFileLocally(filePath.toString());
+            throw new InvalidDataException("No file found.");
+        }
+
+        return toInputFileModel(filePath, originalFileName, contentType, storedFile);
+    }
+
+
+
+    /**
+     * Describes a complete input file written to the document directory.
+     *
+     * @param filePath         The path of the written file.
+     * @param originalFileName The name of the file given by the user.
+     * @param contentType      The content type of the file, if known.
+     * @param storedFile       The size, hash and record count of the file.
+     * @return A FileDataModel object representing the file, not saved yet.
+     * @throws InvalidDataException If a zip file does not hold exactly one file; the file is deleted.
+     */
+    @SneakyThrows
+    private FileDataModel toInputFileModel(
+            Path filePath,
+            String originalFileName,
+            String contentType,
+            StoredFileDTO storedFile
+    ) {
+        String fileName = filePath.getFileName().toString();
+
+        // A zip file is read as the single file it holds
+        if (FileCompression.ZIP == FileCompression.of(fileName) && !fileUtils.isSingleEntryZip(filePath)) {
+            fileUtils.deleteFileLocally(filePath.toString());
+            throw new InvalidDataException("A zip file must hold exactly one file.");
+        }
+
+        // Reject a malformed CSV file now, reading only the start of it
+        String[] header = null;
+        if ("csv".equals(fileUtils.getContentExtension(fileUtils.hasValidFileExtension(fileName)))) {
+            try {
+                header = sniffHeader(filePath);
+            } catch (IOException | RuntimeException e) {
+                fileUtils.deleteFileLocally(filePath.toString());
+                if (e instanceof BaseException)
+                    throw e;
+                throw new InvalidDataException("The file could not be read as CSV.");
+            }
+        }
+
+        // Fall back on the file name when the client sent no specific content type
+        if (null == contentType || "application/octet-stream".equals(contentType))
+            contentType = Objects.requireNonNullElse(Files.probeContentType(filePath), "application/octet-stream");
 
         // Create and return a FileDataModel representing the saved file
         return FileDataModel.builder()
                 .fileName(fileName)
-                .fileOriginal(textHelper.sanitize(file.getOriginalFilename()))
-                .fileType(file.getContentType())
+                .fileOriginal(textHelper.sanitize(originalFileName))
+                .fileType(contentType)
                 .filePath(filePath.toString())
                 .fileCategory(FileCategory.INPUT)
+                .contentHash(storedFile.getContentHash())
+                .fileSize(storedFile.getSize())
+                // The header is not a data row
+                .rowCount(null == storedFile.getRecordCount() ? null : Math.max(0, storedFile.getRecordCount() - 1))
+                .columnCount(null == header ? null : header.length)
+                .keyColumnIndex(null == header ? null : findKeyColumn(header))
                 .build();
     }
 
@@ -1293,4 +1874,32 @@ public class ReportGeneratorServiceImpl implements ReportGeneratorService{
 
 
 
+    /**
+     * Lists the scan pipelines currently running with the depth of their stage queues.
+     * @return APIResponse containing one entry per running pipeline.
+     */
+    @Override
+    public APIResponse<?> getPipelineStatus() {
+        List<PipelineStatsDTO> pipelines = pipelineMonitor.getRunning().stream()
+                .map(stats -> PipelineStatsDTO.builder()
+                        .name(stats.getName())
+                        .startedAt(stats.getStartedAt())
+                        .bytesRead(stats.getBytesRead())
+                        .rowsWritten(stats.getRowsWritten())
+                        .batchesRead(stats.getBatchesRead())
+                        .batchesWritten(stats.getBatchesWritten())
+                        .readQueueDepth(stats.getReadQueueDepth())
+                        .readQueueCapacity(stats.getQueueCapacity())
+                        .activeWorkers(stats.getActiveWorkers())
+                        .writeQueueDepth(stats.getWriteQueueDepth())
+                        .build())
+                .toList();
+
+        return APIResponse.builder()
+                .data(pipelines)
+                .build();
+    }
+
+
+
 }
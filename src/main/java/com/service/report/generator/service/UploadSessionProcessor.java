@@ -0,0 +1,243 @@
+package com.service.report.generator.service;
+
+import com.service.report.generator.entity.UploadChunkModel;
+import com.service.report.generator.entity.UploadSessionModel;
+import com.service.report.generator.entity.UserModel;
+import com.service.report.generator.exception.InvalidDataException;
+import com.service.report.generator.properties.upload.UploadConfigProperties;
+import com.service.report.generator.repository.UploadChunkRepository;
+import com.service.report.generator.repository.UploadSessionRepository;
+import com.service.report.generator.tag.UploadStatus;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Keeps the state of chunked upload sessions. The file of a session is preallocated to its full size when the session
+ * starts, and every chunk is written at its own offset with positional writes, so chunks may arrive in any order and
+ * in parallel. Received chunks are recorded one row each, which keeps concurrent chunk requests from contending on the
+ * session row.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UploadSessionProcessor {
+
+    private static final int COPY_BUFFER_SIZE = 1 << 20;
+
+    private final UploadConfigProperties uploadConfigProperties;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UploadChunkRepository uploadChunkRepository;
+
+    /**
+     * Starts a session, preallocating its file.
+     * @param filePath The path of the file to be written.
+     * @param fileOriginal The name of the file given by the user.
+     * @param fileSize The size of the complete file in bytes.
+     * @param chunkSize The requested chunk size, or null for the configured one.
+     * @param userModel The user uploading the file.
+     * @return The saved session.
+     * @throws InvalidDataException if the chunk size is out of bounds.
+     * @throws IOException if the file cannot be created.
+     */
+    UploadSessionModel initiate(
+            Path filePath,
+            String fileOriginal,
+            long fileSize,
+            Long chunkSize,
+            UserModel userModel
+    ) throws IOException {
+        long maxChunkSize = uploadConfigProperties.getMaxChunkSize().toBytes();
+        long size = null == chunkSize ? uploadConfigProperties.getChunkSize().toBytes() : chunkSize;
+        if (size < 1 || size > Math.min(maxChunkSize, Integer.MAX_VALUE))
+            throw new InvalidDataException("The chunk size must be between 1 and " + maxChunkSize + " bytes.");
+
+        long chunkCount = (fileSize + size - 1) / size;
+        if (chunkCount > Integer.MAX_VALUE)
+            throw new InvalidDataException("The chunk size is too small for the file.");
+
+        try (RandomAccessFile file = new RandomAccessFile(filePath.toFile(), "rw")) {
+            file.setLength(fileSize);
+        }
+
+        try {
+            return uploadSessionRepository.save(
+                    UploadSessionModel.builder()
+                            .uploadUid(UUID.randomUUID().toString().replace("-", ""))
+                            .fileOriginal(fileOriginal)
+                            .fileName(filePath.getFileName().toString())
+                            .filePath(filePath.toString())
+                            .fileSize(fileSize)
+                            .chunkSize((int) size)
+                            .chunkCount((int) chunkCount)
+                            .status(UploadStatus.OPEN)
+                            .createdBy(userModel)
+                            .lastModifiedBy(userModel)
+                            .build()
+            );
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(filePath);
+            throw e;
+        }
+    }
+
+    /**
+     * @return The session with the given identifier.
+     * @throws InvalidDataException if there is no such session.
+     */
+    UploadSessionModel getSession(String uploadUid) {
+        return uploadSessionRepository.findByUploadUid(uploadUid)
+                .orElseThrow(() -> new InvalidDataException("Upload not found for given ID, double-check and try again"));
+    }
+
+    /**
+     * Writes one chunk at its offset in the file of the session, then records it as received. A chunk sent again
+     * simply overwrites the same bytes.
+     * @param uploadSession An open session.
+     * @param chunkIndex The zero-based number of the chunk.
+     * @param inputStream The content of the chunk, which must have exactly the length of the chunk.
+     * @throws InvalidDataException if the chunk number or length is wrong.
+     * @throws IOException if the chunk cannot be read or written.
+     */
+    void writeChunk(
+            UploadSessionModel uploadSession,
+            int chunkIndex,
+            InputStream inputStream
+    ) throws IOException {
+        if (UploadStatus.OPEN != uploadSession.getStatus())
+            throw new InvalidDataException("The upload is already committed.");
+        if (chunkIndex < 0 || chunkIndex >= uploadSession.getChunkCount())
+            throw new InvalidDataException("Chunk (" + chunkIndex + ") is out of range.");
+
+        long offset = (long) chunkIndex * uploadSession.getChunkSize();
+        long length = Math.min(uploadSession.getChunkSize(), uploadSession.getFileSize() - offset);
+
+        try (FileChannel channel = FileChannel.open(Paths.get(uploadSession.getFilePath()), StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[(int) Math.min(COPY_BUFFER_SIZE, length)];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            long written = 0;
+            while (written < length) {
+                int read = inputStream.readNBytes(buffer, 0, (int) Math.min(buffer.length, length - written));
+                if (0 == read)
+                    break;
+
+                wrapped.clear().limit(read);
+                while (wrapped.hasRemaining())
+                    written += channel.write(wrapped, offset + written);
+            }
+
+            if (written < length || -1 != inputStream.read())
+                throw new InvalidDataException("Chunk (" + chunkIndex + ") must hold exactly " + length + " bytes.");
+        }
+
+        if (uploadChunkRepository.existsByUploadSessionAndChunkIndex(uploadSession, chunkIndex))
+            return;
+        try {
+            uploadChunkRepository.save(
+                    UploadChunkModel.builder()
+                            .uploadSession(uploadSession)
+                            .chunkIndex(chunkIndex)
+                            .receivedAt(Instant.now())
+                            .build()
+            );
+        } catch (DataIntegrityViolationException e) {
+            // The same chunk was recorded by a concurrent request
+        }
+    }
+
+    /**
+     * @return The numbers of the chunks not received yet, in ascending order.
+     */
+    List<Integer> getMissingChunks(UploadSessionModel uploadSession) {
+        if (UploadStatus.COMMITTED == uploadSession.getStatus())
+            return List.of();
+
+        BitSet received = new BitSet(uploadSession.getChunkCount());
+        uploadChunkRepository.findChunkIndexesByUploadSession(uploadSession).forEach(received::set);
+
+        List<Integer> missing = new ArrayList<>();
+        for (int chunkIndex = received.nextClearBit(0); chunkIndex < uploadSession.getChunkCount(); chunkIndex = received.nextClearBit(chunkIndex + 1))
+            missing.add(chunkIndex);
+        return missing;
+    }
+
+    /**
+     * Takes an open session for its commit, so that only one request commits it, then forces its complete file to the
+     * storage device. A failed commit must {@link #reopen(UploadSessionModel) reopen} the session.
+     * @throws InvalidDataException if the session is committed or being committed, or if some chunks are missing.
+     */
+    void completeFile(UploadSessionModel uploadSession) throws IOException {
+        if (0 == uploadSessionRepository.updateStatus(uploadSession.getUploadUid(), UploadStatus.OPEN, UploadStatus.COMMITTING))
+            throw new InvalidDataException("The upload is already committed or being committed.");
+        uploadSession.setStatus(UploadStatus.COMMITTING);
+
+        try {
+            List<Integer> missingChunks = getMissingChunks(uploadSession);
+            if (!missingChunks.isEmpty())
+                throw new InvalidDataException(missingChunks.size() + " chunks are missing, starting with chunk (" + missingChunks.get(0) + ").");
+
+            try (FileChannel channel = FileChannel.open(Paths.get(uploadSession.getFilePath()), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        } catch (IOException | RuntimeException e) {
+            reopen(uploadSession);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a session taken for its commit to the open sessions, after the commit failed, so that the client may send
+     * chunks again and retry.
+     */
+    void reopen(UploadSessionModel uploadSession) {
+        uploadSessionRepository.updateStatus(uploadSession.getUploadUid(), UploadStatus.COMMITTING, UploadStatus.OPEN);
+        uploadSession.setStatus(UploadStatus.OPEN);
+    }
+
+    /**
+     * Marks a session committed and drops its chunk records.
+     * @param fileId The identifier of the file created from the session.
+     * @param filePath The path of that file, which differs from the path of the session when an identical file was reused.
+     */
+    void markCommitted(UploadSessionModel uploadSession, Long fileId, String filePath) {
+        uploadSession.setStatus(UploadStatus.COMMITTED);
+        uploadSession.setFileId(fileId);
+        uploadSession.setFilePath(filePath);
+        uploadSessionRepository.save(uploadSession);
+        uploadChunkRepository.deleteByUploadSession(uploadSession);
+    }
+
+    /**
+     * Drops the uncommitted sessions which received no chunk for the session timeout, along with their partial files.
+     * An upload still sending chunks is kept however long it takes; a session left committing by a stopped instance
+     * is dropped too.
+     */
+    void purgeExpiredSessions() {
+        Instant expiry = Instant.now().minus(uploadConfigProperties.getSessionTimeout());
+        for (UploadSessionModel uploadSession : uploadSessionRepository.findInactiveSessions(List.of(UploadStatus.OPEN, UploadStatus.COMMITTING), expiry)) {
+            try {
+                Files.deleteIfExists(Paths.get(uploadSession.getFilePath()));
+            } catch (IOException e) {
+                log.warn("Could not delete the file of expired upload ({}).", uploadSession.getUploadUid(), e);
+                continue;
+            }
+            uploadChunkRepository.deleteByUploadSession(uploadSession);
+            uploadSessionRepository.delete(uploadSession);
+            log.info("Dropped expired upload ({}).", uploadSession.getUploadUid());
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.service.report.generator.tag;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Locale;
+
+@Getter
+@AllArgsConstructor
+public enum FileCompression {
+
+    NONE(0, null),
+    GZIP(1, "gz"),
+    ZIP(2, "zip");
+
+    private final int value;
+    private final String extension;
+
+    /**
+     * @param fileName The name or path of a file.
+     * @return The compression of the file, as given by its extension.
+     */
+    public static FileCompression of(String fileName) {
+        String name = null == fileName ? "" : fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz"))
+            return GZIP;
+        if (name.endsWith(".zip"))
+            return ZIP;
+        return NONE;
+    }
+}
@@ -8,7 +8,8 @@ import lombok.Getter;
 public enum FileType {
 
     MAIN(0),
-    REFERENCE(1);
+    REFERENCE(1),
+    OUTPUT(2);
 
     private final int value;
 }
@@ -0,0 +1,16 @@
+package com.service.report.generator.tag;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public enum JobPriority {
+
+    // Runs on the standard lane
+    NORMAL(0),
+    // Runs on the priority lane, with consumers and report workers of its own
+    HIGH(1);
+
+    private final int value;
+}
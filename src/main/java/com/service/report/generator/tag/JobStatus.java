@@ -11,6 +11,8 @@ public enum JobStatus {
     FAILED(1),
     QUEUED(2),
     RUNNING(3),
-    NO_INSTANCE(4);
+    NO_INSTANCE(4),
+    // Failed, and waiting in a retry queue of the broker to be delivered again
+    RETRYING(5);
     private final int value;
 }
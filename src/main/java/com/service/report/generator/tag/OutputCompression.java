@@ -0,0 +1,17 @@
+package com.service.report.generator.tag;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public enum OutputCompression {
+
+    NONE(0, "csv", null),
+    GZIP(1, "csv.gz", "application/gzip");
+
+    private final int value;
+    private final String extension;
+    // Content type recorded for the output file; null when it is probed from the file name
+    private final String contentType;
+}
@@ -0,0 +1,23 @@
+package com.service.report.generator.tag;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public enum RecordSource {
+
+    MAIN(1),
+    REFERENCE_1(2),
+    REFERENCE_2(3);
+
+    private final int value;
+
+    public static RecordSource of(int value) {
+        for (RecordSource source : values()) {
+            if (source.value == value)
+                return source;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,16 @@
+package com.service.report.generator.tag;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public enum UploadStatus {
+
+    OPEN(0),
+    COMMITTED(1),
+    // Taken by one commit request, which is hashing and saving the file
+    COMMITTING(2);
+
+    private final int value;
+}
@@ -0,0 +1,38 @@
+package com.service.report.generator.transformer;
+
+import com.service.report.generator.tag.RecordSource;
+
+/**
+ * Pre-resolved pointer to a single column of one of the joined input rows.
+ */
+public final class ColumnAccessor {
+
+    private final RecordSource source;
+    private final int column;
+
+    ColumnAccessor(RecordSource source, int column) {
+        this.source = source;
+        this.column = column;
+    }
+
+    public RecordSource getSource() {
+        return source;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Reads the column from the matching row, or returns null when that row is absent.
+     */
+    String read(FieldSource main, FieldSource ref1, FieldSource ref2) {
+        FieldSource row = switch (source) {
+            case MAIN -> main;
+            case REFERENCE_1 -> ref1;
+            case REFERENCE_2 -> ref2;
+        };
+        return null != row ? row.get(column) : null;
+    }
+
+}
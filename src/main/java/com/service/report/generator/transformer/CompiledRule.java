@@ -0,0 +1,179 @@
+package com.service.report.generator.transformer;
+
+import com.service.report.generator.expression.CompiledExpression;
+import com.service.report.generator.tag.FieldName;
+import com.service.report.generator.tag.OperationType;
+import com.service.report.generator.utility.TextHelper;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable, executable form of a {@code TransformationRuleModel}. All JSON parsing and expression
+ * splitting is done once by {@link RulePlanCompiler}; applying a rule only reads the pre-resolved columns.
+ */
+public abstract class CompiledRule {
+
+    private final FieldName fieldName;
+    private final String columnName;
+    private final OperationType operationType;
+    final ColumnAccessor[] operands;
+
+    CompiledRule(FieldName fieldName, String columnName, OperationType operationType, ColumnAccessor[] operands) {
+        this.fieldName = fieldName;
+        this.columnName = columnName;
+        this.operationType = operationType;
+        this.operands = operands;
+    }
+
+    public FieldName getFieldName() {
+        return fieldName;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public OperationType getOperationType() {
+        return operationType;
+    }
+
+    public List<ColumnAccessor> getOperands() {
+        return Arrays.asList(operands);
+    }
+
+    /**
+     * Produces the output value of this rule for one joined row.
+     * @param main The main row (never null).
+     * @param ref1 The matching row of the first reference file, or null.
+     * @param ref2 The matching row of the second reference file, or null.
+     * @return The transformed value, or null when a required operand is missing.
+     */
+    public abstract Object apply(FieldSource main, FieldSource ref1, FieldSource ref2);
+
+
+
+    /**
+     * Copies a single column as-is ({@link OperationType#DEFAULT}).
+     */
+    static final class ColumnRule extends CompiledRule {
+
+        ColumnRule(FieldName fieldName, String columnName, ColumnAccessor operand) {
+            super(fieldName, columnName, OperationType.DEFAULT, new ColumnAccessor[]{operand});
+        }
+
+        @Override
+        public Object apply(FieldSource main, FieldSource ref1, FieldSource ref2) {
+            return operands[0].read(main, ref1, ref2);
+        }
+    }
+
+
+
+    /**
+     * Joins the non-null operand values with a fixed separator
+     * ({@link OperationType#SPACE_BETWEEN}, {@link OperationType#COMMA_SEPARATED}).
+     */
+    static final class JoinedColumnsRule extends CompiledRule {
+
+        private final String separator;
+
+        JoinedColumnsRule(FieldName fieldName, String columnName, OperationType operationType, ColumnAccessor[] operands, String separator) {
+            super(fieldName, columnName, operationType, operands);
+            this.separator = separator;
+        }
+
+        @Override
+        public Object apply(FieldSource main, FieldSource ref1, FieldSource ref2) {
+            StringBuilder builder = new StringBuilder();
+            boolean first = true;
+            for (ColumnAccessor operand : operands) {
+                String value = operand.read(main, ref1, ref2);
+                if (null == value)
+                    continue;
+
+                if (!first)
+                    builder.append(separator);
+                builder.append(value);
+                first = false;
+            }
+            return builder.toString();
+        }
+    }
+
+
+
+    /**
+     * Evaluates a natively compiled arithmetic expression over the numeric operand values ({@link OperationType#MATHEMATICAL}).
+     */
+    static final class ArithmeticRule extends CompiledRule {
+
+        private final CompiledExpression expression;
+        // Operand values of the row being evaluated; the plan is shared by the scan workers, so each thread has its own
+        private final ThreadLocal<double[]> values;
+
+        ArithmeticRule(FieldName fieldName, String columnName, ColumnAccessor[] operands, CompiledExpression expression) {
+            super(fieldName, columnName, OperationType.MATHEMATICAL, operands);
+            this.expression = expression;
+            this.values = ThreadLocal.withInitial(() -> new double[operands.length]);
+        }
+
+        @Override
+        public Object apply(FieldSource main, FieldSource ref1, FieldSource ref2) {
+            double[] values = this.values.get();
+            for (int i = 0; i < operands.length; i++) {
+                String value = operands[i].read(main, ref1, ref2);
+                // An expression with a missing operand cannot be evaluated
+                if (null == value)
+                    return null;
+
+                values[i] = Double.parseDouble(value);
+            }
+            return expression.evaluate(values);
+        }
+    }
+
+
+
+    /**
+     * Executes a JavaScript function over the operand values. Used for {@link OperationType#FUNCTION} rules and as the
+     * fallback for {@link OperationType#MATHEMATICAL} expressions outside the native grammar. The operand values are
+     * bound as function arguments, so the function is parsed once and never re-generated per row.
+     */
+    static final class ScriptRule extends CompiledRule {
+
+        private final String functionSource;
+        private final boolean numericArguments;
+        private final TextHelper textHelper;
+
+        ScriptRule(FieldName fieldName, String columnName, OperationType operationType, ColumnAccessor[] operands, String functionSource, boolean numericArguments, TextHelper textHelper) {
+            super(fieldName, columnName, operationType, operands);
+            this.functionSource = functionSource;
+            this.numericArguments = numericArguments;
+            this.textHelper = textHelper;
+        }
+
+        @Override
+        public Object apply(FieldSource main, FieldSource ref1, FieldSource ref2) {
+            Object[] arguments = new Object[operands.length];
+            for (int i = 0; i < operands.length; i++) {
+                String value = operands[i].read(main, ref1, ref2);
+                // An expression with a missing operand cannot be evaluated
+                if (null == value && numericArguments)
+                    return null;
+
+                arguments[i] = numericArguments ? toNumber(value) : value;
+            }
+            return textHelper.evaluateFunction(functionSource, arguments);
+        }
+
+        private static Object toNumber(String value) {
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException exception) {
+                return value;
+            }
+        }
+    }
+
+}
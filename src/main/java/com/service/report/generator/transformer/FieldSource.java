@@ -0,0 +1,10 @@
+package com.service.report.generator.transformer;
+
+/**
+ * Read-only view over the fields of a single input row, addressed by column index.
+ * A {@code CSVRecord} can be adapted with {@code record::get}.
+ */
+@FunctionalInterface
+public interface FieldSource {
+    String get(int column);
+}
@@ -0,0 +1,77 @@
+package com.service.report.generator.transformer;
+
+import com.service.report.generator.tag.RecordSource;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executable set of compiled transformation rules for one report job, ordered by output field.
+ * A plan is immutable and can be shared by any number of threads.
+ */
+public final class RulePlan {
+
+    private final CompiledRule[] rules;
+    private final String[] header;
+    private final Map<RecordSource, int[]> referencedColumns;
+
+    RulePlan(CompiledRule[] rules) {
+        this.rules = rules;
+        this.header = Arrays.stream(rules)
+                .map(CompiledRule::getColumnName)
+                .toArray(String[]::new);
+
+        this.referencedColumns = new EnumMap<>(RecordSource.class);
+        for (RecordSource source : RecordSource.values()) {
+            referencedColumns.put(source, Arrays.stream(rules)
+                    .flatMap(rule -> rule.getOperands().stream())
+                    .filter(operand -> source == operand.getSource())
+                    .mapToInt(ColumnAccessor::getColumn)
+                    .distinct()
+                    .sorted()
+                    .toArray()
+            );
+        }
+    }
+
+    public List<CompiledRule> getRules() {
+        return Arrays.asList(rules);
+    }
+
+    /**
+     * @return The output column names, in the same order as the values produced by {@link #execute}.
+     */
+    public String[] getHeader() {
+        return header.clone();
+    }
+
+    /**
+     * @param source The input row.
+     * @return The distinct, ascending column indexes of the given input row that the plan reads.
+     */
+    public int[] getReferencedColumns(RecordSource source) {
+        return referencedColumns.get(source).clone();
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * Applies every rule of the plan to one joined row.
+     * @param main The main row.
+     * @param ref1 The matching row of the first reference file, or null.
+     * @param ref2 The matching row of the second reference file, or null.
+     * @return The output values, one per rule.
+     */
+    public Object[] execute(FieldSource main, FieldSource ref1, FieldSource ref2) {
+        Object[] outputData = new Object[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            outputData[i] = rules[i].apply(main, ref1, ref2);
+        }
+        return outputData;
+    }
+
+}
@@ -0,0 +1,229 @@
+package com.service.report.generator.transformer;
+
+import com.service.report.generator.dto.RuleDTO;
+import com.service.report.generator.entity.TransformationRuleModel;
+import com.service.report.generator.exception.ExpressionSyntaxException;
+import com.service.report.generator.exception.InvalidDataException;
+import com.service.report.generator.expression.CompiledExpression;
+import com.service.report.generator.expression.ExpressionCompiler;
+import com.service.report.generator.tag.OperationType;
+import com.service.report.generator.tag.RecordSource;
+import com.service.report.generator.utility.JsonConverter;
+import com.service.report.generator.utility.TextHelper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class RulePlanCompiler {
+
+    private final JsonConverter jsonConverter;
+    private final TextHelper textHelper;
+    private final ExpressionCompiler expressionCompiler;
+
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("<>>>(\\d+)<<<>");
+
+
+
+    /**
+     * Compiles the given transformation rules into an executable plan. Each rule's JSON data is parsed,
+     * its expression is split and every operand is resolved to a source row and column index exactly once.
+     *
+     * @param transformationRules The rules to be compiled, at most one per output field.
+     * @return A plan whose rules are ordered by their output field.
+     * @throws InvalidDataException if a rule is malformed or references an undefined operand.
+     */
+    public RulePlan compile(Collection<TransformationRuleModel> transformationRules) {
+        CompiledRule[] rules = transformationRules.stream()
+                .sorted(Comparator.comparing(TransformationRuleModel::getFieldName))
+                .map(this::compileRule)
+                .toArray(CompiledRule[]::new);
+
+        return new RulePlan(rules);
+    }
+
+
+
+    private CompiledRule compileRule(TransformationRuleModel transformationRule) {
+        String transformationExpression = transformationRule.getTransformationExpression();
+
+        // Convert the transformation data from JSON string to a map of RuleDTO objects
+        Map<Integer, RuleDTO> ruleDTOMap = jsonConverter.getMapFromJsonString(
+                transformationRule.getTransformationData(),
+                Integer.class,
+                RuleDTO.class
+        );
+
+        return switch (transformationRule.getOperationType()) {
+            case DEFAULT -> new CompiledRule.ColumnRule(
+                    transformationRule.getFieldName(),
+                    transformationRule.getColumnName(),
+                    resolveAccessor(transformationRule, ruleDTOMap, extractNumbers(transformationExpression).get(0))
+            );
+
+            case SPACE_BETWEEN, COMMA_SEPARATED -> new CompiledRule.JoinedColumnsRule(
+                    transformationRule.getFieldName(),
+                    transformationRule.getColumnName(),
+                    transformationRule.getOperationType(),
+                    extractNumbers(transformationExpression).stream()
+                            .map(index -> resolveAccessor(transformationRule, ruleDTOMap, index))
+                            .toArray(ColumnAccessor[]::new),
+                    switch (transformationRule.getOperationType()) {
+                        case SPACE_BETWEEN -> " ";
+                        default -> ", ";
+                    }
+            );
+
+            case MATHEMATICAL -> compileExpressionRule(transformationRule, ruleDTOMap);
+
+            case FUNCTION -> compileFunctionRule(transformationRule, ruleDTOMap);
+        };
+    }
+
+
+
+    /**
+     * Compiles a mathematical expression natively. Placeholders in the format `<>>>N<<<>` refer to entry `N`
+     * of the rule's transformation data. Expressions outside the native grammar fall back to script evaluation.
+     */
+    private CompiledRule compileExpressionRule(
+            TransformationRuleModel transformationRule,
+            Map<Integer, RuleDTO> ruleDTOMap
+    ) {
+        CompiledExpression expression;
+        try {
+            expression = expressionCompiler.compile(transformationRule.getTransformationExpression());
+        } catch (ExpressionSyntaxException exception) {
+            log.warn("Field {} falls back to script evaluation: {}", transformationRule.getFieldName(), exception.getMessage());
+            return compileScriptExpressionRule(transformationRule, ruleDTOMap);
+        }
+
+        ColumnAccessor[] operands = Arrays.stream(expression.getPlaceholders())
+                .mapToObj(index -> resolveAccessor(transformationRule, ruleDTOMap, index))
+                .toArray(ColumnAccessor[]::new);
+
+        return new CompiledRule.ArithmeticRule(
+                transformationRule.getFieldName(),
+                transformationRule.getColumnName(),
+                operands,
+                expression
+        );
+    }
+
+
+
+    /**
+     * Turns a mathematical expression into a script function whose parameters replace its placeholders,
+     * e.g. {@code Math.pow(<>>>0<<<>, 2)} becomes {@code function (v0) { return (Math.pow(v0, 2)); }}.
+     */
+    private CompiledRule compileScriptExpressionRule(
+            TransformationRuleModel transformationRule,
+            Map<Integer, RuleDTO> ruleDTOMap
+    ) {
+        String expression = transformationRule.getTransformationExpression();
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(expression);
+
+        StringBuilder body = new StringBuilder();
+        // Distinct placeholders in order of first appearance, mapped to their parameter position
+        Map<Integer, Integer> operandPositions = new LinkedHashMap<>();
+        while (matcher.find()) {
+            int index = Integer.parseInt(matcher.group(1));
+            int position = operandPositions.computeIfAbsent(index, key -> operandPositions.size());
+            matcher.appendReplacement(body, "v" + position);
+        }
+        matcher.appendTail(body);
+
+        ColumnAccessor[] operands = operandPositions.keySet().stream()
+                .map(index -> resolveAccessor(transformationRule, ruleDTOMap, index))
+                .toArray(ColumnAccessor[]::new);
+
+        String parameters = IntStream.range(0, operands.length)
+                .mapToObj(position -> "v" + position)
+                .collect(Collectors.joining(", "));
+
+        return new CompiledRule.ScriptRule(
+                transformationRule.getFieldName(),
+                transformationRule.getColumnName(),
+                OperationType.MATHEMATICAL,
+                operands,
+                "function (" + parameters + ") { return (" + body + "); }",
+                true,
+                textHelper
+        );
+    }
+
+
+
+    /**
+     * Compiles a user-supplied JavaScript function. The transformation expression holds the function itself,
+     * e.g. {@code (first, last) => last.toUpperCase() + ', ' + first}, and the rule's transformation data entries,
+     * in ascending key order, supply its arguments as strings (null when the referenced row is absent).
+     */
+    private CompiledRule compileFunctionRule(
+            TransformationRuleModel transformationRule,
+            Map<Integer, RuleDTO> ruleDTOMap
+    ) {
+        ColumnAccessor[] operands = new TreeMap<>(ruleDTOMap).keySet().stream()
+                .map(index -> resolveAccessor(transformationRule, ruleDTOMap, index))
+                .toArray(ColumnAccessor[]::new);
+
+        return new CompiledRule.ScriptRule(
+                transformationRule.getFieldName(),
+                transformationRule.getColumnName(),
+                OperationType.FUNCTION,
+                operands,
+                transformationRule.getTransformationExpression(),
+                false,
+                textHelper
+        );
+    }
+
+
+
+    private static ColumnAccessor resolveAccessor(
+            TransformationRuleModel transformationRule,
+            Map<Integer, RuleDTO> ruleDTOMap,
+            Integer index
+    ) {
+        RuleDTO ruleDTO = ruleDTOMap.get(index);
+        RecordSource source = null != ruleDTO && null != ruleDTO.getId() ? RecordSource.of(ruleDTO.getId()) : null;
+
+        if (null == source || null == ruleDTO.getCol() || ruleDTO.getCol() < 0)
+            throw new InvalidDataException(
+                    "Transformation rule for field " + transformationRule.getFieldName() + " references an undefined operand (" + index + ")."
+            );
+
+        return new ColumnAccessor(source, ruleDTO.getCol());
+    }
+
+
+
+    /**
+     * Extracts integers from a comma-separated string expression.
+     *
+     * @param expression The string expression containing numbers separated by commas.
+     * @return A list of integers extracted from the expression.
+     */
+    private static List<Integer> extractNumbers(String expression) {
+        List<Integer> numbers = new ArrayList<>();
+        // Split the expression by commas
+        for (String part : expression.split(",")) {
+            // Trim whitespace and convert to Integer
+            try {
+                numbers.add(Integer.parseInt(part.trim()));
+            } catch (NumberFormatException exception) {
+                throw new InvalidDataException(exception, "Invalid transformation expression (" + expression + ").");
+            }
+        }
+        return numbers;
+    }
+
+}
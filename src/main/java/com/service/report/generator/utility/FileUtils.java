@@ -1,12 +1,26 @@
 package com.service.report.generator.utility;
 
+import com.service.report.generator.csv.CsvRecordCounter;
+import com.service.report.generator.dto.StoredFileDTO;
 import com.service.report.generator.exception.InvalidDataException;
+import com.service.report.generator.tag.FileCompression;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.zip.ZipFile;
 
 @Component
 public class FileUtils {
@@ -57,10 +71,145 @@ public class FileUtils {
 
         return hasValidFileExtension(
                 fileName,
-                new HashSet<>(Set.of("csv", "json", "xlsx"))
+                new HashSet<>(Set.of("csv", "json", "xlsx", "csv.gz", "zip"))
         );
     }
 
+    /**
+     * Returns the extension of a file, keeping the extension of the content of a gzip file: {@code csv.gz} rather
+     * than {@code gz}.
+     *
+     * @param fileName The name of the file.
+     * @return The extension, or null if the file has none.
+     */
+    public String getCompoundExtension(String fileName) {
+        String extension = getExtension(fileName);
+        if (null == extension || !FileCompression.GZIP.getExtension().equalsIgnoreCase(extension))
+            return extension;
+
+        String contentExtension = getExtension(fileName.substring(0, fileName.length() - extension.length() - 1));
+        return null == contentExtension ? extension : contentExtension + "." + extension;
+    }
+
+    /**
+     * Returns the format of the content of a file once decompressed. A zip file is expected to hold a single CSV file.
+     *
+     * @param extension An extension returned by {@link #hasValidFileExtension(String)}.
+     * @return The extension of the decompressed content.
+     */
+    public String getContentExtension(String extension) {
+        if (null == extension)
+            return null;
+
+        return switch (FileCompression.of("." + extension)) {
+            case GZIP -> extension.substring(0, extension.length() - FileCompression.GZIP.getExtension().length() - 1);
+            case ZIP -> "csv";
+            case NONE -> extension;
+        };
+    }
+
+    /**
+     * Checks that a zip file holds exactly one file, reading only its central directory.
+     *
+     * @param filePath The path of the zip file.
+     * @return true if the archive holds a single file; false otherwise or if it is not a readable zip file.
+     */
+    public boolean isSingleEntryZip(Path filePath) {
+        try (ZipFile zipFile = new ZipFile(filePath.toFile())) {
+            return 1 == zipFile.stream().filter(entry -> !entry.isDirectory()).count();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Computes the SHA-256 hash of a file by streaming its content.
+     *
+     * @param filePath The path of the file to be hashed.
+     * @return The hash as a lowercase hexadecimal string.
+     * @throws IOException if the file cannot be read.
+     */
+    public String computeContentHash(Path filePath) throws IOException {
+        return describeFile(filePath, false).getContentHash();
+    }
+
+    /**
+     * Reads a stored file once to compute its SHA-256 hash, its size and optionally its number of CSV records.
+     *
+     * @param filePath The path of the file.
+     * @param countRecords Whether the content is CSV whose records are to be counted.
+     * @return The size, hash and record count of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public StoredFileDTO describeFile(Path filePath, boolean countRecords) throws IOException {
+        MessageDigest digest = newContentDigest();
+        CsvRecordCounter recordCounter = countRecords ? new CsvRecordCounter() : null;
+
+        long size = 0;
+        try (InputStream inputStream = Files.newInputStream(filePath)) {
+            byte[] buffer = new byte[1 << 20];
+            int read;
+            while (-1 != (read = inputStream.read(buffer))) {
+                size += read;
+                digest.update(buffer, 0, read);
+                if (null != recordCounter)
+                    recordCounter.update(buffer, 0, read);
+            }
+        }
+
+        return StoredFileDTO.builder()
+                .size(size)
+                .contentHash(HexFormat.of().formatHex(digest.digest()))
+                .recordCount(null == recordCounter ? null : recordCounter.count())
+                .build();
+    }
+
+    /**
+     * Streams content to a new file, computing its SHA-256 hash, its size and optionally its number of CSV records
+     * as the bytes are written, so the content is read exactly once and never held in memory.
+     *
+     * @param inputStream The content to be written; it is not closed.
+     * @param filePath The path of the file to be created.
+     * @param maxSize The maximum number of bytes accepted.
+     * @param countRecords Whether the content is CSV whose records are to be counted.
+     * @return The size, hash and record count of the written file.
+     * @throws InvalidDataException if the content is larger than the maximum size; the partial file is deleted.
+     * @throws IOException if the content cannot be read or the file cannot be written; the partial file is deleted.
+     */
+    public StoredFileDTO writeStream(InputStream inputStream, Path filePath, long maxSize, boolean countRecords) throws IOException {
+        MessageDigest digest = newContentDigest();
+        CsvRecordCounter recordCounter = countRecords ? new CsvRecordCounter() : null;
+
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[1 << 20];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            int read;
+            while (-1 != (read = inputStream.readNBytes(buffer, 0, buffer.length)) && 0 < read) {
+                size += read;
+                if (size > maxSize)
+                    throw new InvalidDataException("The file exceeds the maximum size.");
+
+                digest.update(buffer, 0, read);
+                if (null != recordCounter)
+                    recordCounter.update(buffer, 0, read);
+
+                wrapped.clear().limit(read);
+                while (wrapped.hasRemaining())
+                    channel.write(wrapped);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(filePath);
+            throw e;
+        }
+
+        return StoredFileDTO.builder()
+                .size(size)
+                .contentHash(HexFormat.of().formatHex(digest.digest()))
+                .recordCount(null == recordCounter ? null : recordCounter.count())
+                .build();
+    }
+
     /**
      * Deletes a file locally using the specified file path.
      *
@@ -72,11 +221,19 @@ public class FileUtils {
         return !existingFile.exists() || existingFile.delete();
     }
 
+    private static MessageDigest newContentDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private String hasValidFileExtension(String fileName, Set<String> allowedExtensions) {
         if (StringUtils.isBlank(fileName))
             return null;
 
-        String fileExtension = getExtension(fileName);
+        String fileExtension = getCompoundExtension(fileName);
         if (null == fileExtension)
             return null;
 
@@ -4,4 +4,5 @@ public interface TextHelper {
     boolean isBlank(String str);
     String sanitize(String str);
     double evaluateExpression(String expression);
+    Object evaluateFunction(String functionSource, Object... arguments);
 }
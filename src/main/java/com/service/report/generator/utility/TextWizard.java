@@ -1,14 +1,38 @@
 package com.service.report.generator.utility;
 
+import jakarta.annotation.PreDestroy;
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 import org.jsoup.Jsoup;
 import org.jsoup.safety.Safelist;
 import org.springframework.stereotype.Component;
 
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+
 @Component
 public class TextWizard implements TextHelper{
 
+    private static final String LANGUAGE_ID = "js";
+
+    // Shared engine, created on first use, so that parsed code is cached across all contexts
+    private volatile Engine engine;
+    // Parsed function sources, shared by every context of the engine
+    private final Map<String, Source> functionSources = new ConcurrentHashMap<>();
+    // Contexts are not thread-safe, so each evaluation borrows a context of its own from a bounded pool; contexts
+    // outlive the threads that use them, so short-lived worker threads do not leave contexts behind
+    private static final int MAX_SCOPES = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private final Set<ScriptScope> scopes = ConcurrentHashMap.newKeySet();
+    private final Deque<ScriptScope> idleScopes = new ConcurrentLinkedDeque<>();
+    private final Semaphore scopePermits = new Semaphore(MAX_SCOPES);
+
     public boolean isBlank(String str) {
         if (null == str || str.isEmpty())
             return true;
@@ -35,16 +59,134 @@ public class TextWizard implements TextHelper{
 
 
     public double evaluateExpression(String expression) {
-        try (Context context = Context.newBuilder()
-                .option("engine.WarnInterpreterOnly", "false")                  // Disable warning
-                .build()) {
-            Value result = context.eval("js", expression);
+        ScriptScope scope = borrowScope();
+        try {
+            Value result = scope.context.eval(
+                    Source.newBuilder(LANGUAGE_ID, expression, "expression")
+                            .cached(false)
+                            .buildLiteral()
+            );
             return result.asDouble();
+        } finally {
+            returnScope(scope);
+        }
+    }
+
+
+    /**
+     * Executes a JavaScript function with the given arguments. The function source is parsed once per engine
+     * and evaluated once per pooled context; subsequent calls only bind the arguments and execute it.
+     *
+     * @param functionSource The function to be executed, e.g. {@code (a, b) => a + ' ' + b}.
+     * @param arguments The arguments passed to the function.
+     * @return The result as a Double, Boolean or String, or null if the function returned null or undefined.
+     */
+    @Override
+    public Object evaluateFunction(String functionSource, Object... arguments) {
+        ScriptScope scope = borrowScope();
+        try {
+            Value function = scope.functions.computeIfAbsent(functionSource, code -> evaluateFunctionSource(scope, code));
+            Value result = function.execute(arguments);
+
+            // Converted before the context is returned, as values are bound to their context
+            if (result.isNull())
+                return null;
+            if (result.isNumber())
+                return result.asDouble();
+            if (result.isBoolean())
+                return result.asBoolean();
+            return result.isString() ? result.asString() : result.toString();
+        } finally {
+            returnScope(scope);
+        }
+    }
+
+
+    /**
+     * Closes every context and the shared engine.
+     */
+    @PreDestroy
+    public void close() {
+        scopes.forEach(openScope -> openScope.context.close(true));
+        scopes.clear();
+        idleScopes.clear();
+        if (null != engine)
+            engine.close();
+    }
+
+
+    /**
+     * Takes an idle context, or opens one while the pool is below its size, or waits for a context to be returned.
+     */
+    private ScriptScope borrowScope() {
+        scopePermits.acquireUninterruptibly();
+        try {
+            ScriptScope idleScope = idleScopes.pollFirst();
+            return null != idleScope ? idleScope : openScope();
+        } catch (RuntimeException e) {
+            scopePermits.release();
+            throw e;
+        }
+    }
+
+    private void returnScope(ScriptScope scope) {
+        // Most recently used first, so that the warmest contexts are reused
+        idleScopes.offerFirst(scope);
+        scopePermits.release();
+    }
+
+    private Value evaluateFunctionSource(ScriptScope scope, String functionSource) {
+        Source source = functionSources.computeIfAbsent(functionSource, code ->
+                Source.newBuilder(LANGUAGE_ID, "(" + code + ")", "function")
+                        .cached(true)
+                        .buildLiteral()
+        );
+
+        Value function = scope.context.eval(source);
+        if (!function.canExecute())
+            throw new IllegalArgumentException("Script (" + functionSource + ") does not evaluate to a function.");
+        return function;
+    }
+
+    private ScriptScope openScope() {
+        ScriptScope openScope = new ScriptScope(
+                Context.newBuilder(LANGUAGE_ID)
+                        .engine(getEngine())
+                        .build()
+        );
+        scopes.add(openScope);
+        return openScope;
+    }
+
+    private Engine getEngine() {
+        Engine current = engine;
+        if (null == current) {
+            synchronized (this) {
+                current = engine;
+                if (null == current) {
+                    current = Engine.newBuilder()
+                            .option("engine.WarnInterpreterOnly", "false")      // Disable warning
+                            .build();
+                    engine = current;
+                }
+            }
         }
+        return current;
     }
 
     private boolean isAsciiWhitespace(char ch) {
         return ch == 32 || ch == 9 || ch == 10 || ch == 12 || ch == 13;
     }
 
+
+
+    private static final class ScriptScope {
+        private final Context context;
+        private final Map<String, Value> functions = new HashMap<>();
+
+        private ScriptScope(Context context) {
+            this.context = context;
+        }
+    }
+
 }
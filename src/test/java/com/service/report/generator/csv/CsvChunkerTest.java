@@ -0,0 +1,161 @@
+package com.service.report.generator.csv;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * Checks that chunks hold whole records, by parsing each chunk on its own and comparing with commons-csv parsing the
+ * whole content, for every chunk size and read size up to the length of the content.
+ */
+class CsvChunkerTest {
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"id,name\n1,alpha\n2,beta\n",
+			"id,comment\n1,\"first\nsecond\nthird\"\n2,\"x\n\"\n",
+			"id,comment\n1,\"say \"\"hi\"\"\"\n2,\"\"\"\"\n3,\"a\"\"\n\"\"b\"\n",
+			"id,name\r\n1,alpha\r\n2,\"multi\r\nline\"\r\n",
+			"id,name\n1,alpha\n2,beta",
+			"id,name\n1,\"unterminated at end\"",
+			"id,name,note\n,,\n1,,\n,x,\n\"\",\"\",\"\"\n",
+			"id,name\r1,alpha\r2,\"lone\rcarriage\"\r3,beta",
+			"id,name\n\n1,alpha\r\n\r\n2,beta\n\n",
+			"id,text\n1,ab\"c\n2,\"a,b\"\n"
+	})
+	void next_withAnyChunkAndReadSize_shouldOnlyCutBetweenRecords(String content) throws IOException {
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		List<List<String>> expected = parseWithCommonsCsv(content);
+
+		for (int chunkSize = 1; chunkSize <= bytes.length; chunkSize++) {
+			for (int readSize = 1; readSize <= bytes.length; readSize++) {
+				List<byte[]> chunks = chunk(bytes, chunkSize, readSize);
+
+				ByteArrayOutputStream joined = new ByteArrayOutputStream();
+				List<List<String>> records = new ArrayList<>();
+				CsvTokenizer tokenizer = new CsvTokenizer(StandardCharsets.UTF_8);
+				for (byte[] chunk : chunks) {
+					joined.write(chunk);
+					tokenizer.reset(chunk, 0, chunk.length);
+					while (tokenizer.next())
+						records.add(Arrays.asList(tokenizer.toArray()));
+				}
+
+				String context = "chunk size " + chunkSize + ", read size " + readSize;
+				assertArrayEquals(bytes, joined.toByteArray(), context);
+				assertEquals(expected, records, context);
+			}
+		}
+
+		CsvRecordCounter counter = new CsvRecordCounter();
+		counter.update(bytes, 0, bytes.length);
+		assertEquals(expected.size(), counter.count());
+	}
+
+	@Test
+	void next_withCarriageReturnOnlyLineEndings_shouldCutEachRecord() throws IOException {
+		byte[] bytes = "h\r1\r2\r3".getBytes(StandardCharsets.US_ASCII);
+
+		List<byte[]> chunks = chunk(bytes, 1, bytes.length);
+
+		assertEquals(List.of("h\r", "1\r", "2\r", "3"), chunks.stream().map(String::new).toList());
+	}
+
+	@Test
+	void next_withCarriageReturnAtEndOfRead_shouldKeepCrLfTogether() throws IOException {
+		byte[] bytes = "h\r\n1\r\n".getBytes(StandardCharsets.US_ASCII);
+
+		// Each read ends right after a \r
+		List<byte[]> chunks = chunk(bytes, 1, 2);
+
+		assertEquals(List.of("h\r\n", "1\r\n"), chunks.stream().map(String::new).toList());
+	}
+
+	@Test
+	void readHeader_withEmptyStream_shouldReturnNull() throws IOException {
+		try (CsvChunker chunker = new CsvChunker(new ByteArrayInputStream(new byte[0]), 16)) {
+			assertNull(chunker.readHeader());
+			assertNull(chunker.next());
+		}
+	}
+
+	@Test
+	void readHeader_withRecords_shouldReturnOnlyTheFirstRecord() throws IOException {
+		byte[] bytes = "a,\"b\nc\"\n1,2\n3,4\n".getBytes(StandardCharsets.US_ASCII);
+
+		try (CsvChunker chunker = new CsvChunker(new ByteArrayInputStream(bytes), 1 << 20)) {
+			assertEquals("a,\"b\nc\"\n", new String(chunker.readHeader(), StandardCharsets.US_ASCII));
+			assertEquals("1,2\n3,4\n", new String(chunker.next(), StandardCharsets.US_ASCII));
+			assertNull(chunker.next());
+		}
+	}
+
+
+
+	private static List<byte[]> chunk(byte[] bytes, int chunkSize, int readSize) throws IOException {
+		List<byte[]> chunks = new ArrayList<>();
+		try (CsvChunker chunker = new CsvChunker(new TrickleInputStream(bytes, readSize), chunkSize)) {
+			byte[] chunk;
+			while (null != (chunk = chunker.next()))
+				chunks.add(chunk);
+		}
+		return chunks;
+	}
+
+	private static List<List<String>> parseWithCommonsCsv(String content) throws IOException {
+		List<List<String>> records = new ArrayList<>();
+		try (CSVParser parser = CSVFormat.DEFAULT.parse(new StringReader(content))) {
+			for (CSVRecord record : parser)
+				records.add(record.toList());
+		}
+		return records;
+	}
+
+	/**
+	 * Returns at most a given number of bytes per read, so reads end at every possible offset.
+	 */
+	private static final class TrickleInputStream extends InputStream {
+		private final byte[] bytes;
+		private final int readSize;
+		private int position;
+
+		private TrickleInputStream(byte[] bytes, int readSize) {
+			this.bytes = bytes;
+			this.readSize = readSize;
+		}
+
+		@Override
+		public int read() {
+			return position < bytes.length ? bytes[position++] & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) {
+			if (position >= bytes.length)
+				return -1;
+			int read = Math.min(Math.min(length, readSize), bytes.length - position);
+			System.arraycopy(bytes, position, buffer, offset, read);
+			position += read;
+			return read;
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.service.report.generator.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+class CsvTokenizerTest {
+
+	private final CsvTokenizer tokenizer = new CsvTokenizer(StandardCharsets.UTF_8);
+
+	@Test
+	void next_withEscapedQuotes_shouldCollapseEachPair() {
+		reset("\"say \"\"hi\"\"\",\"\"\"\",\"\"\n");
+
+		assertTrue(tokenizer.next());
+		assertArrayEquals(new String[] { "say \"hi\"", "\"", "" }, tokenizer.toArray());
+		assertFalse(tokenizer.next());
+	}
+
+	@Test
+	void next_withQuotedLineBreaks_shouldKeepThemInTheField() {
+		reset("1,\"a\nb\r\nc\rd\",2\n3,4\n");
+
+		assertTrue(tokenizer.next());
+		assertArrayEquals(new String[] { "1", "a\nb\r\nc\rd", "2" }, tokenizer.toArray());
+		assertTrue(tokenizer.next());
+		assertArrayEquals(new String[] { "3", "4" }, tokenizer.toArray());
+	}
+
+	@Test
+	void next_withEmptyFields_shouldReturnEmptyStrings() {
+		reset(",,\n1,,\n,\n");
+
+		assertTrue(tokenizer.next());
+		assertArrayEquals(new String[] { "", "", "" }, tokenizer.toArray());
+		assertTrue(tokenizer.next());
+		assertArrayEquals(new String[] { "1", "", "" }, tokenizer.toArray());
+		assertTrue(tokenizer.next());
+		assertArrayEquals(new String[] { "", "" }, tokenizer.toArray());
+		assertFalse(tokenizer.next());
+	}
+
+	@Test
+	void next_withEachLineEnding_shouldSplitRecordsAndSkipEmptyLines() {
+		reset("a,b\r\nc,d\re,f\n\r\n\ng,h");
+
+		assertTrue(tokenizer.next());
+		assertArrayEquals(new String[] { "a", "b" }, tokenizer.toArray());
+		assertTrue(tokenizer.next());
+		assertArrayEquals(new String[] { "c", "d" }, tokenizer.toArray());
+		assertTrue(tokenizer.next());
+		assertArrayEquals(new String[] { "e", "f" }, tokenizer.toArray());
+		assertTrue(tokenizer.next());
+		assertArrayEquals(new String[] { "g", "h" }, tokenizer.toArray());
+		assertFalse(tokenizer.next());
+	}
+
+	@Test
+	void next_withLastRecordWithoutLineBreak_shouldReturnIt() {
+		reset("a,b\n1,\"2\"");
+
+		assertTrue(tokenizer.next());
+		assertTrue(tokenizer.next());
+		assertArrayEquals(new String[] { "1", "2" }, tokenizer.toArray());
+		assertFalse(tokenizer.next());
+	}
+
+	@Test
+	void next_withWindow_shouldOnlyReadWithinIt() {
+		byte[] data = "x,y\n1,2\n3,4\n".getBytes(StandardCharsets.UTF_8);
+		tokenizer.reset(data, 4, 8);
+
+		assertTrue(tokenizer.next());
+		assertArrayEquals(new String[] { "1", "2" }, tokenizer.toArray());
+		assertFalse(tokenizer.next());
+	}
+
+	@Test
+	void next_withUnterminatedQuote_shouldThrowIllegalStateException() {
+		reset("1,\"abc\n");
+
+		assertThrows(IllegalStateException.class, tokenizer::next);
+	}
+
+	@Test
+	void next_withTextAfterClosingQuote_shouldThrowIllegalStateException() {
+		reset("1,\"abc\"d\n");
+
+		assertThrows(IllegalStateException.class, tokenizer::next);
+	}
+
+	@Test
+	void get_withColumnOutsideRecord_shouldThrowOrReturnNull() {
+		reset("a,b\n");
+		tokenizer.next();
+
+		assertEquals(2, tokenizer.size());
+		assertEquals("b", tokenizer.get(1));
+		assertNull(tokenizer.getOrNull(2));
+		assertThrows(ArrayIndexOutOfBoundsException.class, () -> tokenizer.get(2));
+	}
+
+	@Test
+	void next_withManyFields_shouldGrowBeyondInitialCapacity() {
+		StringBuilder record = new StringBuilder();
+		for (int i = 0; i < 100; i++)
+			record.append(0 == i ? "" : ",").append("\"").append(i).append("\"\"\"");
+		reset(record + "\n");
+
+		assertTrue(tokenizer.next());
+		assertEquals(100, tokenizer.size());
+		assertEquals("99\"", tokenizer.get(99));
+	}
+
+
+
+	private void reset(String content) {
+		byte[] data = content.getBytes(StandardCharsets.UTF_8);
+		tokenizer.reset(data, 0, data.length);
+	}
+
+}
@@ -0,0 +1,199 @@
+package com.service.report.generator.expression;
+
+import com.service.report.generator.exception.ExpressionSyntaxException;
+import org.graalvm.polyglot.Context;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/**
+ * Checks compiled expressions against GraalJS, which evaluated the transformation expressions before.
+ */
+class ExpressionCompilerTest {
+
+	private static final double[][] OPERAND_SETS = {
+			{ 3, 4, 5 },
+			{ -2.5, 0.5, -0.5 },
+			{ 0, 0, 0 },
+			{ 1e300, -1e-300, 7 },
+			{ Double.NaN, 1, Double.POSITIVE_INFINITY }
+	};
+
+	private static Context context;
+
+	private final ExpressionCompiler expressionCompiler = new ExpressionCompiler();
+
+	@BeforeAll
+	static void openContext() {
+		context = Context.newBuilder("js").option("engine.WarnInterpreterOnly", "false").build();
+	}
+
+	@AfterAll
+	static void closeContext() {
+		context.close();
+	}
+
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"1 + 2 * 3",
+			"(1 + 2) * 3",
+			"10 - 4 - 3",
+			"24 / 4 / 2",
+			"7 % 4 * 2",
+			"2 * 7 % 4",
+			"1 - 2 + 3",
+			"1.5e2 + .25 - 3.",
+			"1 / 0",
+			"-1 / 0",
+			"0 / 0",
+			"-5 % 3"
+	})
+	void compile_withConstantArithmetic_shouldMatchJavaScriptPrecedence(String expression) {
+		assertMatchesJavaScript(expression);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"-<>>>0<<<>",
+			"- -<>>>0<<<>",
+			"-<>>>0<<<> * -<>>>1<<<>",
+			"+<>>>0<<<> - +<>>>1<<<>",
+			"2 - -<>>>1<<<>",
+			"-(<>>>0<<<> + <>>>1<<<>)",
+			"-0",
+			"-0 + 0",
+			"0 * -1"
+	})
+	void compile_withUnaryMinus_shouldMatchJavaScript(String expression) {
+		assertMatchesJavaScript(expression);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"Math.round(<>>>0<<<>)",
+			"Math.round(<>>>1<<<>)",
+			"Math.round(<>>>2<<<>)",
+			"Math.round(<>>>0<<<> / 2)",
+			"Math.round(<>>>0<<<>, 2)",
+			"Math.round(0.49999999999999994)",
+			"Math.round(-0.4)",
+			"Math.round(4503599627370497)",
+			"Math.abs(<>>>0<<<>)",
+			"Math.abs(<>>>1<<<> - <>>>2<<<>, 5)",
+			"Math.min(<>>>0<<<>, <>>>1<<<>, <>>>2<<<>)",
+			"Math.max(<>>>0<<<>, <>>>1<<<>, <>>>2<<<>)",
+			"Math.max(<>>>0<<<>)",
+			"Math.min(0, -0)",
+			"Math.max(-0, 0)",
+			"Math.max(Math.min(<>>>0<<<>, 10), 0) * 100 / <>>>1<<<>"
+	})
+	void compile_withFunctions_shouldMatchJavaScript(String expression) {
+		assertMatchesJavaScript(expression);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"<>>>0<<<> / <>>>1<<<> * <>>>2<<<>",
+			"<>>>2<<<> - <>>>0<<<> % <>>>1<<<>",
+			"(<>>>0<<<> + <>>>0<<<>) * <>>>2<<<>",
+			"<>>>0<<<> * (2 + 3) / (10 - 6)"
+	})
+	void compile_withPlaceholders_shouldMatchJavaScript(String expression) {
+		assertMatchesJavaScript(expression);
+	}
+
+	@Test
+	void compile_withRepeatedPlaceholders_shouldAssignSlotsInOrderOfFirstAppearance() {
+		CompiledExpression compiled = expressionCompiler.compile("<>>>7<<<> + <>>>3<<<> * <>>>7<<<>");
+
+		assertArrayEquals(new int[] { 7, 3 }, compiled.getPlaceholders());
+		assertEquals(2, compiled.getOperandCount());
+		assertEquals(2 + 5 * 2, compiled.evaluate(new double[] { 2, 5 }));
+	}
+
+	@Test
+	void compile_withConstantSubExpressions_shouldFoldThem() {
+		CompiledExpression compiled = expressionCompiler.compile("Math.max(2 * 3, 4) + -(1 + 1)");
+
+		assertEquals(0, compiled.getOperandCount());
+		// A folded expression never reads its operands
+		assertEquals(4, compiled.evaluate(null));
+		assertEquals(10, expressionCompiler.compile("<>>>0<<<> * (2 + 3)").evaluate(new double[] { 2 }));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			"",
+			"   ",
+			"1 +",
+			"(1 + 2",
+			"1 + 2)",
+			"1 2",
+			"* 3",
+			"<>>><<<>",
+			"<>>>1<<",
+			"<>>>x<<<>",
+			"1.2.3",
+			"1e",
+			"Math.pow(2, 3)",
+			"Math.round()",
+			"Math.min()",
+			"round 1",
+			"round(1.5)",
+			"abs(-1)",
+			"min(1, 2)",
+			"max(1, 2)",
+			"Math.abs(1,)",
+			"x",
+			"1 ^ 2"
+	})
+	void compile_withUnsupportedExpression_shouldThrowExpressionSyntaxException(String expression) {
+		assertThrows(ExpressionSyntaxException.class, () -> expressionCompiler.compile(expression));
+	}
+
+	@Test
+	void compile_withNullExpression_shouldThrowExpressionSyntaxException() {
+		assertThrows(ExpressionSyntaxException.class, () -> expressionCompiler.compile(null));
+	}
+
+
+
+	private void assertMatchesJavaScript(String expression) {
+		CompiledExpression compiled = expressionCompiler.compile(expression);
+		for (double[] operandSet : OPERAND_SETS) {
+			int[] placeholders = compiled.getPlaceholders();
+			double[] operands = new double[placeholders.length];
+			for (int slot = 0; slot < placeholders.length; slot++)
+				operands[slot] = operandSet[placeholders[slot]];
+			String javaScript = toJavaScript(expression, placeholders, operands);
+
+			double expected = context.eval("js", javaScript).asDouble();
+			// assertEquals on doubles tells -0 from 0 and treats NaN as equal to itself
+			assertEquals(expected, compiled.evaluate(operands), () -> expression + " evaluated as " + javaScript);
+		}
+	}
+
+	private static String toJavaScript(String expression, int[] placeholders, double[] operands) {
+		String script = expression;
+		for (int slot = 0; slot < placeholders.length; slot++)
+			script = script.replace("<>>>" + placeholders[slot] + "<<<>", "(" + toJavaScript(operands[slot]) + ")");
+		return script;
+	}
+
+	private static String toJavaScript(double value) {
+		if (Double.isNaN(value))
+			return "NaN";
+		if (Double.isInfinite(value))
+			return 0 < value ? "Infinity" : "-Infinity";
+		return Double.toString(value);
+	}
+
+}
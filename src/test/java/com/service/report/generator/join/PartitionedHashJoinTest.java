@@ -0,0 +1,148 @@
+package com.service.report.generator.join;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.service.report.generator.entity.TransformationRuleModel;
+import com.service.report.generator.expression.ExpressionCompiler;
+import com.service.report.generator.reference.ReferenceIndex;
+import com.service.report.generator.tag.FieldName;
+import com.service.report.generator.tag.OperationType;
+import com.service.report.generator.tag.RecordSource;
+import com.service.report.generator.transformer.RulePlan;
+import com.service.report.generator.transformer.RulePlanCompiler;
+import com.service.report.generator.utility.JsonConverter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks that the partitioned join produces the same rows, in the same order, as the in-memory hash join over the
+ * same inputs, including with more partitions than files it may hold open at once.
+ */
+class PartitionedHashJoinTest {
+
+	private static final int MAIN_ROWS = 3000;
+
+	@TempDir
+	static Path directory;
+
+	private static JoinInput main;
+	private static JoinInput ref1;
+	private static JoinInput ref2;
+	private static RulePlan rulePlan;
+	private static List<List<String>> expected;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		// Main keys repeat and some have no reference row at all
+		StringBuilder mainContent = new StringBuilder("id,seq,name\n");
+		for (int i = 0; i < MAIN_ROWS; i++)
+			mainContent.append("k").append(i * 7 % 1500).append(',').append(i).append(",name ").append(i).append('\n');
+
+		// Keys 0 to 99 occur twice in the first reference file, and the last row must win
+		StringBuilder ref1Content = new StringBuilder("id,label,group\n");
+		for (int i = 0; i < 1000; i++)
+			ref1Content.append('k').append(i).append(",first ").append(i).append(',').append(0 == i % 5 ? "" : "g" + i % 5).append('\n');
+		for (int i = 0; i < 100; i++)
+			ref1Content.append('k').append(i).append(",last ").append(i).append(",dup\n");
+
+		StringBuilder ref2Content = new StringBuilder("id,note,amount\n");
+		for (int i = 0; i < 1500; i += 3)
+			ref2Content.append('k').append(i).append(",note ").append(i).append(',').append(i / 3).append('\n');
+
+		main = JoinInput.byName(write("main.csv", mainContent), "id");
+		ref1 = JoinInput.byName(write("ref1.csv", ref1Content), "id");
+		ref2 = JoinInput.byIndex(write("ref2.csv", ref2Content), 0);
+
+		RulePlanCompiler compiler = new RulePlanCompiler(new JsonConverter(new ObjectMapper()), null, new ExpressionCompiler());
+		rulePlan = compiler.compile(List.of(
+				rule(FieldName.OUTFIELD1, OperationType.DEFAULT, "0", "{\"0\":{\"id\":1,\"col\":1}}"),
+				rule(FieldName.OUTFIELD2, OperationType.DEFAULT, "0", "{\"0\":{\"id\":2,\"col\":1}}"),
+				rule(FieldName.OUTFIELD3, OperationType.COMMA_SEPARATED, "0,1,2",
+						"{\"0\":{\"id\":1,\"col\":2},\"1\":{\"id\":2,\"col\":2},\"2\":{\"id\":3,\"col\":1}}"),
+				rule(FieldName.OUTFIELD4, OperationType.MATHEMATICAL, "<>>>0<<<> * 10 + <>>>1<<<>",
+						"{\"0\":{\"id\":1,\"col\":1},\"1\":{\"id\":3,\"col\":2}}")
+		));
+
+		HashJoin hashJoin = new HashJoin(
+				main,
+				HashJoin.loadReferenceIndex(ref1, rulePlan.getReferencedColumns(RecordSource.REFERENCE_1)),
+				HashJoin.loadReferenceIndex(ref2, rulePlan.getReferencedColumns(RecordSource.REFERENCE_2))
+		);
+		expected = collect(hashJoin);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 7, 64, 65, 130, 200})
+	void execute_withPartitions_shouldMatchHashJoin(int partitions) throws IOException {
+		Path workDirectory = directory.resolve("work-" + partitions);
+
+		List<List<String>> rows = collect(new PartitionedHashJoin(main, ref1, ref2, partitions, workDirectory));
+
+		assertEquals(MAIN_ROWS, rows.size());
+		for (int i = 0; i < MAIN_ROWS; i++)
+			assertEquals(expected.get(i), rows.get(i), "row " + i);
+		try (Stream<Path> files = Files.list(workDirectory)) {
+			assertTrue(files.findAny().isEmpty(), "partition files left behind");
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 65})
+	void execute_withoutReferenceFiles_shouldMatchHashJoin(int partitions) throws IOException {
+		List<List<String>> hashJoinRows = collect(new HashJoin(main, ReferenceIndex.EMPTY, ReferenceIndex.EMPTY));
+
+		List<List<String>> rows = collect(new PartitionedHashJoin(main, null, null, partitions, directory.resolve("unjoined-" + partitions)));
+
+		assertEquals(hashJoinRows, rows);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {0, 100, 1499})
+	void hashJoin_withKnownKeys_shouldJoinExpectedRows(int seq) {
+		// Guards the comparison itself: the expected rows must cover matches, misses and duplicates
+		List<String> row = expected.get(seq);
+		int key = seq * 7 % 1500;
+
+		assertEquals(String.valueOf(seq), row.get(0));
+		assertEquals(key < 100 ? "last " + key : key < 1000 ? "first " + key : null, row.get(1));
+		assertEquals(0 == key % 3 ? String.valueOf(seq * 10.0 + key / 3) : null, row.get(3));
+	}
+
+
+
+	private static List<List<String>> collect(ReportJoin join) throws IOException {
+		List<List<String>> rows = new ArrayList<>();
+		join.execute(rulePlan, row -> rows.add(Arrays.stream(row)
+				.map(value -> null == value ? null : value.toString())
+				.toList()));
+		return rows;
+	}
+
+	private static TransformationRuleModel rule(FieldName fieldName, OperationType operationType, String expression, String data) {
+		return TransformationRuleModel.builder()
+				.fieldName(fieldName)
+				.columnName(fieldName.name())
+				.operationType(operationType)
+				.transformationExpression(expression)
+				.transformationData(data)
+				.build();
+	}
+
+	private static String write(String fileName, CharSequence content) throws IOException {
+		return Files.writeString(directory.resolve(fileName), content).toString();
+	}
+
+}
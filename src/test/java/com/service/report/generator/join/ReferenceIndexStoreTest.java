@@ -0,0 +1,188 @@
+package com.service.report.generator.join;
+
+import com.service.report.generator.properties.report.ReportConfigProperties;
+import com.service.report.generator.reference.ReferenceIndex;
+import com.service.report.generator.transformer.FieldSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Checks that persistent indexes answer as the in-memory index of the same file and projection, are built once per
+ * content and projection, and are purged once unused or orphaned.
+ */
+class ReferenceIndexStoreTest {
+
+	private static final String HASH = "0123abcd";
+	private static final int[] COLUMNS = {1, 2};
+
+	@TempDir
+	Path directory;
+
+	private Path indexDirectory;
+	private JoinInput input;
+	private ReferenceIndexStore store;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		StringBuilder content = new StringBuilder("id,name,city,code\n");
+		for (int i = 0; i < 500; i++)
+			content.append("k").append(i % 400).append(",name ").append(i).append(',').append(0 == i % 9 ? "" : "city " + i).append(",c").append(i).append('\n');
+		// A short row leaves its trailing columns missing
+		content.append("short,only name\n");
+
+		indexDirectory = directory.resolve("doc");
+		input = JoinInput.byName(Files.writeString(directory.resolve("ref.csv"), content).toString(), "id").withContentHash(HASH);
+		store = newStore();
+	}
+
+	@Test
+	void open_withSameFileAndProjection_shouldMatchCompactIndex() throws IOException {
+		ReferenceIndex compact = HashJoin.loadReferenceIndex(input, COLUMNS);
+
+		ReferenceIndex mapped = store.open(input, COLUMNS);
+
+		assertEquals(compact.size(), mapped.size());
+		List<String> keys = new ArrayList<>(List.of("short", "absent", ""));
+		for (int i = 0; i < 400; i++)
+			keys.add("k" + i);
+		for (String key : keys)
+			assertSameRow(key, compact.find(key), mapped.find(key));
+	}
+
+	@Test
+	void open_twice_shouldReuseIndex() throws IOException {
+		ReferenceIndex first = store.open(input, COLUMNS);
+		assertTrue(store.hasIndex(input, COLUMNS));
+
+		assertSame(first, store.open(input, COLUMNS));
+
+		// Another instance maps the existing file: a rebuild would read the changed reference file
+		Files.writeString(Path.of(input.getFilePath()), "id,name,city\nk1,changed,changed\n");
+		ReferenceIndexStore restarted = newStore();
+		assertTrue(restarted.hasIndex(input, COLUMNS));
+		ReferenceIndex reopened = restarted.open(input, COLUMNS);
+		assertNotSame(first, reopened);
+		assertEquals(first.size(), reopened.size());
+		assertEquals("name 401", reopened.find("k1").get(1));
+		assertEquals(1, indexFiles().size());
+	}
+
+	@Test
+	void open_withOtherProjection_shouldBuildAnotherIndex() throws IOException {
+		store.open(input, COLUMNS);
+		int[] otherColumns = {3};
+		assertFalse(store.hasIndex(input, otherColumns));
+
+		ReferenceIndex other = store.open(input, otherColumns);
+
+		assertTrue(store.hasIndex(input, otherColumns));
+		assertEquals("c401", other.find("k1").get(3));
+		assertNull(other.find("k1").get(1));
+		assertEquals(2, indexFiles().size());
+	}
+
+	@Test
+	void open_withKeyColumnGivenOtherwise_shouldBuildAnotherIndex() throws IOException {
+		store.open(input, COLUMNS);
+		JoinInput byIndex = JoinInput.byIndex(input.getFilePath(), 0).withContentHash(HASH);
+		assertFalse(store.hasIndex(byIndex, COLUMNS));
+
+		ReferenceIndex other = store.open(byIndex, COLUMNS);
+
+		assertEquals("name 401", other.find("k1").get(1));
+		assertEquals(2, indexFiles().size());
+	}
+
+	@Test
+	void open_withoutInput_shouldReturnEmptyIndex() throws IOException {
+		assertSame(ReferenceIndex.EMPTY, store.open(null, COLUMNS));
+		assertFalse(store.hasIndex(null, COLUMNS));
+	}
+
+	@Test
+	void open_withoutContentHash_shouldThrow() {
+		JoinInput unhashed = JoinInput.byName(input.getFilePath(), "id");
+
+		assertThrows(IllegalArgumentException.class, () -> store.open(unhashed, COLUMNS));
+		assertFalse(store.hasIndex(unhashed, COLUMNS));
+	}
+
+	@Test
+	void purgeIndexes_shouldKeepOnlyRecentIndexesOfStoredContents() throws IOException {
+		store.open(input, COLUMNS);
+		store.open(input, new int[]{3});
+		JoinInput orphan = input.withContentHash("deadbeef");
+		store.open(orphan, COLUMNS);
+		Path leftover = Files.writeString(indexDirectory.resolve(HASH + "-00000000.idx123.tmp"), "partial");
+		Path unused = indexFiles().stream()
+				.filter(file -> file.getFileName().toString().startsWith(HASH))
+				.findFirst()
+				.orElseThrow();
+		FileTime longAgo = FileTime.from(Instant.now().minus(Duration.ofDays(2)));
+		Files.setLastModifiedTime(unused, longAgo);
+		Files.setLastModifiedTime(leftover, longAgo);
+
+		int deleted = store.purgeIndexes(Duration.ofDays(1), HASH::equals);
+
+		assertEquals(3, deleted);
+		assertFalse(Files.exists(unused));
+		assertFalse(Files.exists(leftover));
+		assertFalse(store.hasIndex(orphan, COLUMNS));
+		assertEquals(1, indexFiles().size());
+	}
+
+	@Test
+	void purgeIndexes_withoutDirectory_shouldDeleteNothing() {
+		assertEquals(0, store.purgeIndexes(Duration.ZERO, hash -> false));
+	}
+
+
+
+	private ReferenceIndexStore newStore() {
+		ReferenceIndexStore store = new ReferenceIndexStore(new ReportConfigProperties());
+		ReflectionTestUtils.setField(store, "documentDirectory", indexDirectory.toString());
+		return store;
+	}
+
+	private List<Path> indexFiles() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexDirectory, "*.idx*")) {
+			stream.forEach(files::add);
+		}
+		return files;
+	}
+
+	private static void assertSameRow(String key, FieldSource expected, FieldSource actual) {
+		if (null == expected) {
+			assertNull(actual, key);
+			return;
+		}
+
+		assertNotNull(actual, key);
+		for (int column = 0; column < 4; column++)
+			assertEquals(expected.get(column), actual.get(column), key + " column " + column);
+	}
+
+}
@@ -0,0 +1,144 @@
+package com.service.report.generator.reference;
+
+import com.service.report.generator.transformer.FieldSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/**
+ * Checks that a mapped index answers every lookup as the in-memory index built from the same rows and projection, and
+ * that it refuses files it was not written for.
+ */
+class MappedReferenceIndexTest {
+
+	private static final int[] COLUMNS = {1, 3};
+	private static final int WIDTH = 5;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void find_withSameRows_shouldMatchCompactIndex() throws IOException {
+		List<String[]> rows = rows(20_000);
+		CompactReferenceIndex.Builder builder = CompactReferenceIndex.builder(COLUMNS);
+		MappedReferenceIndex mapped;
+		try (MappedReferenceIndex.Writer writer = MappedReferenceIndex.writer(directory.resolve("ref.idx"), "id:1,3", COLUMNS)) {
+			for (String[] row : rows) {
+				builder.add(row[0], column -> valueOf(row, column));
+				writer.add(row[0], column -> valueOf(row, column));
+			}
+			mapped = writer.finish();
+		}
+		CompactReferenceIndex compact = builder.build();
+
+		assertNotNull(mapped);
+		assertEquals(compact.size(), mapped.size());
+		for (String[] row : rows)
+			assertSameRow(row[0], compact.find(row[0]), mapped.find(row[0]));
+		for (String key : new String[]{"absent", "", "k-1", null})
+			assertSameRow(key, compact.find(key), mapped.find(key));
+	}
+
+	@Test
+	void find_withoutRows_shouldFindNothing() throws IOException {
+		MappedReferenceIndex mapped;
+		try (MappedReferenceIndex.Writer writer = MappedReferenceIndex.writer(directory.resolve("empty.idx"), "id:1,3", COLUMNS)) {
+			mapped = writer.finish();
+		}
+
+		assertEquals(0, mapped.size());
+		assertNull(mapped.find("k0"));
+	}
+
+	@Test
+	void open_withSameSignature_shouldMapWrittenIndex() throws IOException {
+		Path file = directory.resolve("ref.idx");
+		write(file, "id:1,3");
+
+		MappedReferenceIndex index = MappedReferenceIndex.open(file, "id:1,3");
+
+		assertNotNull(index);
+		assertEquals("id:1,3", index.getSignature());
+		assertEquals("value 8-1", index.find("k8").get(1));
+	}
+
+	@Test
+	void open_withOtherSignature_shouldReturnNull() throws IOException {
+		Path file = directory.resolve("ref.idx");
+		write(file, "id:1,3");
+
+		assertNull(MappedReferenceIndex.open(file, "id:1"));
+	}
+
+	@Test
+	void open_withTruncatedFile_shouldReturnNull() throws IOException {
+		Path file = directory.resolve("ref.idx");
+		write(file, "id:1,3");
+		byte[] content = Files.readAllBytes(file);
+
+		Files.write(file, Arrays.copyOf(content, content.length - 1));
+		assertNull(MappedReferenceIndex.open(file, "id:1,3"));
+
+		Files.write(file, Arrays.copyOf(content, 6));
+		assertNull(MappedReferenceIndex.open(file, "id:1,3"));
+	}
+
+
+
+	/**
+	 * Rows keyed {@code k0} and up, where every tenth key occurs again later with other values, some rows lack a key,
+	 * and projected values are missing, empty or non-ASCII.
+	 */
+	private static List<String[]> rows(int count) {
+		List<String[]> rows = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			String[] row = new String[WIDTH];
+			row[0] = 0 == i % 997 ? null : "k" + (0 == i % 10 && i >= count / 2 ? i - count / 2 : i);
+			for (int column = 1; column < WIDTH; column++)
+				row[column] = "value " + i + "-" + column;
+			if (0 == i % 7)
+				row[1] = null;
+			if (0 == i % 11)
+				row[3] = "";
+			if (0 == i % 13)
+				row[3] = "çà ü 漢字 " + i;
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private static String valueOf(String[] row, int column) {
+		return column < row.length ? row[column] : null;
+	}
+
+	private static void assertSameRow(String key, FieldSource expected, FieldSource actual) {
+		if (null == expected) {
+			assertNull(actual, key);
+			return;
+		}
+
+		assertNotNull(actual, key);
+		for (int column = -1; column <= WIDTH; column++)
+			assertEquals(expected.get(column), actual.get(column), key + " column " + column);
+	}
+
+	private static void write(Path file, String signature) throws IOException {
+		try (MappedReferenceIndex.Writer writer = MappedReferenceIndex.writer(file, signature, COLUMNS)) {
+			for (String[] row : rows(100))
+				writer.add(row[0], column -> valueOf(row, column));
+			writer.finish();
+		}
+	}
+
+}